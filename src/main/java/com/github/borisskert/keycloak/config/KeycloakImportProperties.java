@@ -24,6 +24,8 @@ public class KeycloakImportProperties {
     @Size(min = 1)
     private String url;
 
+    private String readUrl;
+
     @NotNull
     @Size(min = 1)
     private String user;
@@ -57,6 +59,14 @@ public class KeycloakImportProperties {
         this.url = url;
     }
 
+    public String getReadUrl() {
+        return readUrl;
+    }
+
+    public void setReadUrl(String readUrl) {
+        this.readUrl = readUrl;
+    }
+
     public String getUser() {
         return user;
     }
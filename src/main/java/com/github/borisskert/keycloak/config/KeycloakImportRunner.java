@@ -3,36 +3,137 @@ package com.github.borisskert.keycloak.config;
 import com.github.borisskert.keycloak.config.model.KeycloakImport;
 import com.github.borisskert.keycloak.config.model.RealmImport;
 import com.github.borisskert.keycloak.config.service.KeycloakImportProvider;
+import com.github.borisskert.keycloak.config.service.KeycloakImportWatcher;
+import com.github.borisskert.keycloak.config.service.KeycloakProvider;
+import com.github.borisskert.keycloak.config.service.RealmExportService;
 import com.github.borisskert.keycloak.config.service.RealmImportService;
+import com.github.borisskert.keycloak.config.service.format.ImportFileConverter;
+import com.github.borisskert.keycloak.config.service.report.ImportReport;
+import org.apache.logging.log4j.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
 import java.util.Map;
 
 @Component
 public class KeycloakImportRunner implements CommandLineRunner {
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakImportRunner.class);
 
     private final KeycloakImportProvider keycloakImportProvider;
     private final RealmImportService realmImportService;
+    private final KeycloakImportWatcher keycloakImportWatcher;
+    private final RealmExportService realmExportService;
+    private final ImportFileConverter importFileConverter;
+    private final KeycloakProvider keycloakProvider;
+    private final ImportReport importReport;
+
+    @Value("${import.watch:#{false}}")
+    private Boolean watchImport;
+
+    @Value("${export.realm:#{null}}")
+    private String exportRealm;
+
+    @Value("${export.file:#{null}}")
+    private String exportFile;
+
+    @Value("${convert.path:#{null}}")
+    private String convertPath;
+
+    @Value("${convert.format:smile}")
+    private String convertFormat;
 
     @Autowired
     public KeycloakImportRunner(
             KeycloakImportProvider keycloakImportProvider,
-            RealmImportService realmImportService
+            RealmImportService realmImportService,
+            KeycloakImportWatcher keycloakImportWatcher,
+            RealmExportService realmExportService,
+            ImportFileConverter importFileConverter,
+            KeycloakProvider keycloakProvider,
+            ImportReport importReport
     ) {
         this.keycloakImportProvider = keycloakImportProvider;
         this.realmImportService = realmImportService;
+        this.keycloakImportWatcher = keycloakImportWatcher;
+        this.realmExportService = realmExportService;
+        this.importFileConverter = importFileConverter;
+        this.keycloakProvider = keycloakProvider;
+        this.importReport = importReport;
     }
 
     @Override
     public void run(String... args) throws Exception {
+        try {
+            if (Strings.isNotBlank(exportRealm)) {
+                doExport();
+            } else if (Strings.isNotBlank(convertPath)) {
+                importFileConverter.convert(new File(convertPath), convertFormat);
+            } else {
+                doImport();
+            }
+        } finally {
+            keycloakProvider.close();
+        }
+    }
+
+    private void doImport() throws Exception {
+        importReport.startRun();
+
+        try {
+            importAll();
+        } catch (RuntimeException e) {
+            finishFailedRun(e);
+            throw e;
+        }
+
+        importReport.finishRun(null);
+
+        if (watchImport) {
+            keycloakImportWatcher.watch();
+        }
+    }
+
+    /**
+     * A report which cannot be written must not hide the cause of the failed run
+     */
+    private void finishFailedRun(RuntimeException cause) {
+        try {
+            importReport.finishRun(cause);
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void importAll() {
+        long loadStartTime = System.nanoTime();
         KeycloakImport keycloakImport = keycloakImportProvider.get();
+        long loadTimeInMillis = (System.nanoTime() - loadStartTime) / 1_000_000;
+
+        importReport.setLoadTimeMillis(loadTimeInMillis);
 
         Map<String, RealmImport> realmImports = keycloakImport.getRealmImports();
 
+        long importStartTime = System.nanoTime();
         for (Map.Entry<String, RealmImport> realmImport : realmImports.entrySet()) {
             realmImportService.doImport(realmImport.getValue());
         }
+        long importTimeInMillis = (System.nanoTime() - importStartTime) / 1_000_000;
+
+        logger.info(
+                "Imported {} realm import(s) in {} ms, reading the import files took {} ms",
+                realmImports.size(),
+                importTimeInMillis,
+                loadTimeInMillis
+        );
+    }
+
+    private void doExport() {
+        String filename = Strings.isNotBlank(exportFile) ? exportFile : exportRealm + ".json";
+        realmExportService.doExport(exportRealm, new File(filename));
     }
 }
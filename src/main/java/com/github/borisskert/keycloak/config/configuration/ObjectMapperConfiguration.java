@@ -1,16 +1,60 @@
 package com.github.borisskert.keycloak.config.configuration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.github.borisskert.keycloak.config.service.format.ImportFormat;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 @Configuration
 public class ObjectMapperConfiguration {
 
     @Bean
+    @Primary
     @Qualifier("json")
     public ObjectMapper createJsonObjectMapper() {
         return new ObjectMapper();
     }
+
+    @Bean
+    @Qualifier("smile")
+    public ObjectMapper createSmileObjectMapper() {
+        return new ObjectMapper(new SmileFactory());
+    }
+
+    @Bean
+    @Qualifier("cbor")
+    public ObjectMapper createCborObjectMapper() {
+        return new ObjectMapper(new CBORFactory());
+    }
+
+    @Bean
+    @Qualifier("yaml")
+    public ObjectMapper createYamlObjectMapper() {
+        return new ObjectMapper(new YAMLFactory());
+    }
+
+    @Bean
+    public ImportFormat createJsonImportFormat(@Qualifier("json") ObjectMapper objectMapper) {
+        return new ImportFormat(ImportFormat.JSON, objectMapper, "json");
+    }
+
+    @Bean
+    public ImportFormat createSmileImportFormat(@Qualifier("smile") ObjectMapper objectMapper) {
+        return new ImportFormat("smile", objectMapper, "smile", "sml");
+    }
+
+    @Bean
+    public ImportFormat createCborImportFormat(@Qualifier("cbor") ObjectMapper objectMapper) {
+        return new ImportFormat("cbor", objectMapper, "cbor");
+    }
+
+    @Bean
+    public ImportFormat createYamlImportFormat(@Qualifier("yaml") ObjectMapper objectMapper) {
+        return new ImportFormat("yaml", objectMapper, "yaml", "yml");
+    }
 }
@@ -0,0 +1,11 @@
+package com.github.borisskert.keycloak.config.exception;
+
+public class ExportProcessingException extends RuntimeException {
+    public ExportProcessingException(String message) {
+        super(message);
+    }
+
+    public ExportProcessingException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
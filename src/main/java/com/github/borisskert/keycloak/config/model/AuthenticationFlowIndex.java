@@ -0,0 +1,99 @@
+package com.github.borisskert.keycloak.config.model;
+
+import com.github.borisskert.keycloak.config.exception.InvalidImportException;
+import org.keycloak.representations.idm.AuthenticationExecutionExportRepresentation;
+import org.keycloak.representations.idm.AuthenticationFlowRepresentation;
+
+import java.util.*;
+
+/**
+ * Immutable lookup tables of the authentication flows of one realm import. Building the index fails if any
+ * execution-flow references a non-top-level flow which is not part of the import.
+ */
+public class AuthenticationFlowIndex {
+
+    private final List<AuthenticationFlowRepresentation> topLevelFlows;
+    private final Map<String, AuthenticationFlowRepresentation> nonTopLevelFlowsByAlias;
+    private final Map<String, List<AuthenticationExecutionExportRepresentation>> executionsByFlowAlias;
+    private final Map<String, List<AuthenticationFlowRepresentation>> childFlowsByFlowAlias;
+
+    public AuthenticationFlowIndex(List<AuthenticationFlowRepresentation> flows) {
+        List<AuthenticationFlowRepresentation> topLevelFlows = new ArrayList<>();
+        Map<String, AuthenticationFlowRepresentation> nonTopLevelFlowsByAlias = new HashMap<>();
+        Map<String, List<AuthenticationExecutionExportRepresentation>> executionsByFlowAlias = new HashMap<>();
+
+        for (AuthenticationFlowRepresentation flow : flows) {
+            if (flow.isTopLevel()) {
+                topLevelFlows.add(flow);
+            } else {
+                nonTopLevelFlowsByAlias.putIfAbsent(flow.getAlias(), flow);
+            }
+
+            List<AuthenticationExecutionExportRepresentation> executions = Optional.ofNullable(flow.getAuthenticationExecutions())
+                    .orElse(Collections.emptyList());
+            executionsByFlowAlias.putIfAbsent(flow.getAlias(), Collections.unmodifiableList(executions));
+        }
+
+        this.topLevelFlows = Collections.unmodifiableList(topLevelFlows);
+        this.nonTopLevelFlowsByAlias = Collections.unmodifiableMap(nonTopLevelFlowsByAlias);
+        this.executionsByFlowAlias = Collections.unmodifiableMap(executionsByFlowAlias);
+        this.childFlowsByFlowAlias = Collections.unmodifiableMap(indexChildFlows(flows));
+    }
+
+    public List<AuthenticationFlowRepresentation> getTopLevelFlows() {
+        return topLevelFlows;
+    }
+
+    public Optional<AuthenticationFlowRepresentation> tryToGetNonTopLevelFlow(String alias) {
+        return Optional.ofNullable(nonTopLevelFlowsByAlias.get(alias));
+    }
+
+    public List<AuthenticationExecutionExportRepresentation> getExecutions(String flowAlias) {
+        return executionsByFlowAlias.getOrDefault(flowAlias, Collections.emptyList());
+    }
+
+    /**
+     * @return the non-top-level flows referenced by the execution-flows of the flow in the order of its executions
+     */
+    public List<AuthenticationFlowRepresentation> getChildFlows(String flowAlias) {
+        return childFlowsByFlowAlias.getOrDefault(flowAlias, Collections.emptyList());
+    }
+
+    private Map<String, List<AuthenticationFlowRepresentation>> indexChildFlows(List<AuthenticationFlowRepresentation> flows) {
+        Map<String, List<AuthenticationFlowRepresentation>> childFlowsByFlowAlias = new HashMap<>();
+
+        for (AuthenticationFlowRepresentation flow : flows) {
+            if (childFlowsByFlowAlias.containsKey(flow.getAlias())) {
+                continue;
+            }
+
+            List<AuthenticationFlowRepresentation> childFlows = new ArrayList<>();
+
+            for (AuthenticationExecutionExportRepresentation execution : getExecutions(flow.getAlias())) {
+                if (execution.isAutheticatorFlow()) {
+                    childFlows.add(getReferencedFlow(flow, execution));
+                }
+            }
+
+            childFlowsByFlowAlias.put(flow.getAlias(), Collections.unmodifiableList(childFlows));
+        }
+
+        return childFlowsByFlowAlias;
+    }
+
+    private AuthenticationFlowRepresentation getReferencedFlow(
+            AuthenticationFlowRepresentation flow,
+            AuthenticationExecutionExportRepresentation execution
+    ) {
+        AuthenticationFlowRepresentation referencedFlow = nonTopLevelFlowsByAlias.get(execution.getFlowAlias());
+
+        if (referencedFlow == null) {
+            throw new InvalidImportException(
+                    "Execution-flow of flow '" + flow.getAlias()
+                            + "' references unknown non-top-level flow '" + execution.getFlowAlias() + "'"
+            );
+        }
+
+        return referencedFlow;
+    }
+}
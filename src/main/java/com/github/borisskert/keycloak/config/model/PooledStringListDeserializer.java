@@ -0,0 +1,47 @@
+package com.github.borisskert.keycloak.config.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+import com.github.borisskert.keycloak.config.util.StringPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a list of strings and canonicalizes every value by the {@link StringPool} attribute of the deserialization
+ * while reading, so repeated values never pile up in the heap. Without attribute the values are kept as they are.
+ */
+public class PooledStringListDeserializer extends StdDeserializer<List<String>> {
+
+    public PooledStringListDeserializer() {
+        super(List.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!parser.isExpectedStartArrayToken()) {
+            return (List<String>) context.handleUnexpectedToken(List.class, parser);
+        }
+
+        return readStrings(parser, context, (StringPool) context.getAttribute(StringPool.class));
+    }
+
+    static List<String> readStrings(JsonParser parser, DeserializationContext context, StringPool stringPool) throws IOException {
+        List<String> values = new ArrayList<>();
+
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            String value = parser.hasToken(JsonToken.VALUE_NULL)
+                    ? null
+                    : StringDeserializer.instance.deserialize(parser, context);
+
+            values.add(stringPool == null ? value : stringPool.intern(value));
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.borisskert.keycloak.config.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.github.borisskert.keycloak.config.util.StringPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a map of string lists, like the attributes or client roles of a user, and canonicalizes the keys and values by
+ * the {@link StringPool} attribute of the deserialization, see {@link PooledStringListDeserializer}.
+ */
+public class PooledStringListMapDeserializer extends StdDeserializer<Map<String, List<String>>> {
+
+    public PooledStringListMapDeserializer() {
+        super(Map.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, List<String>> deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        JsonToken token = parser.isExpectedStartObjectToken() ? parser.nextToken() : parser.getCurrentToken();
+
+        if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            return (Map<String, List<String>>) context.handleUnexpectedToken(Map.class, parser);
+        }
+
+        StringPool stringPool = (StringPool) context.getAttribute(StringPool.class);
+        Map<String, List<String>> values = new LinkedHashMap<>();
+
+        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String key = stringPool == null ? parser.getCurrentName() : stringPool.intern(parser.getCurrentName());
+            JsonToken valueToken = parser.nextToken();
+
+            if (valueToken == JsonToken.START_ARRAY) {
+                values.put(key, PooledStringListDeserializer.readStrings(parser, context, stringPool));
+            } else if (valueToken.isScalarValue()) {
+                // a single value is read as list, like keycloak's StringListMapDeserializer does
+                String value = valueToken == JsonToken.VALUE_NULL ? null : parser.getText();
+                values.put(key, new ArrayList<>(Collections.singletonList(stringPool == null ? value : stringPool.intern(value))));
+            } else {
+                return (Map<String, List<String>>) context.handleUnexpectedToken(List.class, parser);
+            }
+        }
+
+        return values;
+    }
+}
@@ -1,15 +1,16 @@
 package com.github.borisskert.keycloak.config.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import org.keycloak.common.util.MultivaluedHashMap;
 import org.keycloak.representations.idm.*;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 public class RealmImport extends RealmRepresentation {
 
@@ -17,12 +18,16 @@ public class RealmImport extends RealmRepresentation {
 
     private List<AuthenticationFlowImport> authenticationFlowImports;
 
+    private AuthenticationFlowIndex authenticationFlowIndex;
+
     private List<UserImport> userImports;
 
     private RolesImport rolesImport = new RolesImport();
 
     private String checksum;
 
+    private List<RealmImportShard> shards = Collections.emptyList();
+
     public Optional<CustomImport> getCustomImport() {
         return Optional.ofNullable(customImport);
     }
@@ -58,19 +63,33 @@ public class RealmImport extends RealmRepresentation {
         return (List) authenticationFlowImports;
     }
 
+    /**
+     * Spilled users are not serialized with the realm, see {@link SpilledUserList}
+     */
     @Override
+    @JsonInclude(value = JsonInclude.Include.CUSTOM, valueFilter = SpilledUserList.SerializationFilter.class)
     public List<UserRepresentation> getUsers() {
         return (List) userImports;
     }
 
     @JsonSetter("users")
+    @JsonDeserialize(using = UserImportsDeserializer.class)
     public void setUserImports(List<UserImport> users) {
         this.userImports = users;
     }
 
+    /**
+     * @return true if the users of this realm have been spilled to a temporary file while reading the import
+     */
+    @JsonIgnore
+    public boolean hasSpilledUsers() {
+        return userImports instanceof SpilledUserList;
+    }
+
     @JsonSetter("authenticationFlows")
     public void setAuthenticationFlowImports(List<AuthenticationFlowImport> authenticationFlowImports) {
         this.authenticationFlowImports = authenticationFlowImports;
+        this.authenticationFlowIndex = null;
     }
 
     @Override
@@ -93,27 +112,31 @@ public class RealmImport extends RealmRepresentation {
         return requiredActions;
     }
 
+    /**
+     * The index is built once and kept until the authentication flows are replaced
+     */
+    @JsonIgnore
+    public AuthenticationFlowIndex getAuthenticationFlowIndex() {
+        if (authenticationFlowIndex == null) {
+            authenticationFlowIndex = new AuthenticationFlowIndex(getAuthenticationFlows());
+        }
+
+        return authenticationFlowIndex;
+    }
+
     @JsonIgnore
     public List<AuthenticationFlowRepresentation> getTopLevelFlows() {
-        return this.getAuthenticationFlows()
-                .stream()
-                .filter(AuthenticationFlowRepresentation::isTopLevel)
-                .collect(Collectors.toList());
+        return getAuthenticationFlowIndex().getTopLevelFlows();
     }
 
     @JsonIgnore
     public List<AuthenticationFlowRepresentation> getNonTopLevelFlowsForTopLevelFlow(AuthenticationFlowRepresentation topLevelFlow) {
-        return topLevelFlow.getAuthenticationExecutions()
-                .stream()
-                .filter(AbstractAuthenticationExecutionRepresentation::isAutheticatorFlow)
-                .map(AuthenticationExecutionExportRepresentation::getFlowAlias)
-                .map(this::getNonTopLevelFlow)
-                .collect(Collectors.toList());
+        return getAuthenticationFlowIndex().getChildFlows(topLevelFlow.getAlias());
     }
 
     @JsonIgnore
     public AuthenticationFlowRepresentation getNonTopLevelFlow(String alias) {
-        Optional<AuthenticationFlowRepresentation> maybeNonTopLevelFlow = tryToGetNonTopLevelFlow(alias);
+        Optional<AuthenticationFlowRepresentation> maybeNonTopLevelFlow = getAuthenticationFlowIndex().tryToGetNonTopLevelFlow(alias);
 
         if (!maybeNonTopLevelFlow.isPresent()) {
             throw new RuntimeException("Non-toplevel flow not found: " + alias);
@@ -123,7 +146,7 @@ public class RealmImport extends RealmRepresentation {
     }
 
     @Override
-    public RolesRepresentation getRoles() {
+    public RolesImport getRoles() {
         return rolesImport;
     }
 
@@ -143,20 +166,6 @@ public class RealmImport extends RealmRepresentation {
         return clients;
     }
 
-    private Optional<AuthenticationFlowRepresentation> tryToGetNonTopLevelFlow(String alias) {
-        return this.getNonTopLevelFlows()
-                .stream()
-                .filter(f -> f.getAlias().equals(alias))
-                .findFirst();
-    }
-
-    private List<AuthenticationFlowRepresentation> getNonTopLevelFlows() {
-        return this.getAuthenticationFlows()
-                .stream()
-                .filter(f -> !f.isTopLevel())
-                .collect(Collectors.toList());
-    }
-
     @JsonIgnore
     public String getChecksum() {
         return checksum;
@@ -166,4 +175,17 @@ public class RealmImport extends RealmRepresentation {
     public void setChecksum(String checksum) {
         this.checksum = checksum;
     }
+
+    /**
+     * @return the files this realm has been merged from, empty if the realm has been read from a single file
+     */
+    @JsonIgnore
+    public List<RealmImportShard> getShards() {
+        return shards;
+    }
+
+    @JsonIgnore
+    public void setShards(List<RealmImportShard> shards) {
+        this.shards = shards;
+    }
 }
@@ -0,0 +1,45 @@
+package com.github.borisskert.keycloak.config.model;
+
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One file of a realm which is spread over several files. The users of a shard are the same instances as in the
+ * merged {@link RealmImport}.
+ */
+public class RealmImportShard {
+
+    private final String name;
+    private final String checksum;
+    private final Set<String> sections;
+    private final List<UserRepresentation> users;
+
+    public RealmImportShard(String name, String checksum, Set<String> sections, List<UserRepresentation> users) {
+        this.name = name;
+        this.checksum = checksum;
+        this.sections = Collections.unmodifiableSet(sections);
+        this.users = Collections.unmodifiableList(users);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @return the top-level properties defined in this shard, like `realm` or `users`
+     */
+    public Set<String> getSections() {
+        return sections;
+    }
+
+    public List<UserRepresentation> getUsers() {
+        return users;
+    }
+}
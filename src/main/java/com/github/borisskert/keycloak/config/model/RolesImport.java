@@ -1,5 +1,6 @@
 package com.github.borisskert.keycloak.config.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.keycloak.representations.idm.RoleRepresentation;
 import org.keycloak.representations.idm.RolesRepresentation;
 
@@ -26,4 +27,12 @@ public class RolesImport extends RolesRepresentation {
 
         return client;
     }
+
+    /**
+     * @return `true` if the import defines its realm-level roles, even if it defines an empty list
+     */
+    @JsonIgnore
+    public boolean hasRealmRoles() {
+        return realm != null;
+    }
 }
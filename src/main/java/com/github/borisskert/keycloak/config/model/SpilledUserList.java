@@ -0,0 +1,165 @@
+package com.github.borisskert.keycloak.config.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * The users of a huge realm import which have been spilled to a memory-mapped temporary file while the import file has
+ * been parsed. Every user is stored as Smile document of its own and read back on each access, so only the offsets
+ * of the users are kept on the heap. The temporary file is deleted as soon as it is mapped; the mapping is released
+ * with the list. The list is read-only: changes of the returned users are not written back.
+ */
+public class SpilledUserList extends AbstractList<UserImport> implements RandomAccess {
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private static final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory())
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private final List<ByteBuffer> segments;
+    private final long[] offsets;
+    private final int size;
+
+    private SpilledUserList(List<ByteBuffer> segments, long[] offsets, int size) {
+        this.segments = segments;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    public static Writer createWriter(File directory) throws IOException {
+        return new Writer(directory);
+    }
+
+    @Override
+    public UserImport get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        byte[] user = read(offsets[index], (int) (offsets[index + 1] - offsets[index]));
+
+        try {
+            return smileMapper.readValue(user, UserImport.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read spilled user #" + index, e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * A user may span two segments of the file
+     */
+    private byte[] read(long position, int length) {
+        byte[] bytes = new byte[length];
+        int copied = 0;
+
+        while (copied < length) {
+            long currentPosition = position + copied;
+            ByteBuffer segment = segments.get((int) (currentPosition / SEGMENT_SIZE)).duplicate();
+            segment.position((int) (currentPosition % SEGMENT_SIZE));
+
+            int chunk = Math.min(length - copied, segment.remaining());
+            segment.get(bytes, copied, chunk);
+            copied += chunk;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Appends the users to the temporary file one by one
+     */
+    public static class Writer implements Closeable {
+        private final Path file;
+        private final OutputStream output;
+
+        private long[] offsets = new long[1024];
+        private int size;
+        private long position;
+        private boolean finished;
+
+        private Writer(File directory) throws IOException {
+            this.file = File.createTempFile("users-", ".spill", directory).toPath();
+            this.output = new BufferedOutputStream(Files.newOutputStream(file));
+        }
+
+        public void write(UserImport user) throws IOException {
+            byte[] bytes = smileMapper.writeValueAsBytes(user);
+            output.write(bytes);
+
+            position += bytes.length;
+            size++;
+
+            if (size >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+
+            offsets[size] = position;
+        }
+
+        /**
+         * Maps the written users into memory and deletes the temporary file
+         */
+        public SpilledUserList finish() throws IOException {
+            output.close();
+
+            List<ByteBuffer> segments = new ArrayList<>();
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                for (long start = 0; start < position; start += SEGMENT_SIZE) {
+                    segments.add(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, position - start)));
+                }
+            } finally {
+                finished = true;
+                delete();
+            }
+
+            return new SpilledUserList(segments, Arrays.copyOf(offsets, size + 1), size);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                output.close();
+                delete();
+            }
+        }
+
+        private void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // some platforms don't allow to delete a mapped file
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Excludes the spilled users from the serialization of the realm import, so cloning the realm doesn't read all
+     * spilled users into memory
+     */
+    public static class SerializationFilter {
+        @Override
+        public boolean equals(Object value) {
+            return value == null || value instanceof SpilledUserList;
+        }
+
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+    }
+}
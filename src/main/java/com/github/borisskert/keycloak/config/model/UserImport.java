@@ -1,11 +1,16 @@
 package com.github.borisskert.keycloak.config.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import org.keycloak.representations.idm.UserRepresentation;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Every user of a huge realm import repeats the same role names, client-ids, attribute keys, groups and required
+ * actions, so these values are canonicalized while reading, see {@link PooledStringListDeserializer}
+ */
 public class UserImport extends UserRepresentation {
 
     @Override
@@ -17,6 +22,12 @@ public class UserImport extends UserRepresentation {
         return clientRoles;
     }
 
+    @Override
+    @JsonDeserialize(using = PooledStringListMapDeserializer.class)
+    public void setClientRoles(Map<String, List<String>> clientRoles) {
+        super.setClientRoles(clientRoles);
+    }
+
     @Override
     public List<String> getRealmRoles() {
         if (realmRoles == null) {
@@ -25,4 +36,28 @@ public class UserImport extends UserRepresentation {
 
         return realmRoles;
     }
+
+    @Override
+    @JsonDeserialize(using = PooledStringListDeserializer.class)
+    public void setRealmRoles(List<String> realmRoles) {
+        super.setRealmRoles(realmRoles);
+    }
+
+    @Override
+    @JsonDeserialize(using = PooledStringListMapDeserializer.class)
+    public void setAttributes(Map<String, List<String>> attributes) {
+        super.setAttributes(attributes);
+    }
+
+    @Override
+    @JsonDeserialize(using = PooledStringListDeserializer.class)
+    public void setGroups(List<String> groups) {
+        super.setGroups(groups);
+    }
+
+    @Override
+    @JsonDeserialize(using = PooledStringListDeserializer.class)
+    public void setRequiredActions(List<String> requiredActions) {
+        super.setRequiredActions(requiredActions);
+    }
 }
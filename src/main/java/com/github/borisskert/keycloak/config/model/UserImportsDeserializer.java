@@ -0,0 +1,61 @@
+package com.github.borisskert.keycloak.config.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the users of a realm import one by one. Without {@link UserSpillSettings} attribute, or as long as the number
+ * of users doesn't exceed its threshold, the users are kept in memory as usual. Otherwise all users are spilled into a
+ * {@link SpilledUserList}.
+ */
+public class UserImportsDeserializer extends StdDeserializer<List<UserImport>> {
+
+    public UserImportsDeserializer() {
+        super(List.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<UserImport> deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!parser.isExpectedStartArrayToken()) {
+            return (List<UserImport>) context.handleUnexpectedToken(List.class, parser);
+        }
+
+        UserSpillSettings settings = (UserSpillSettings) context.getAttribute(UserSpillSettings.class);
+        List<UserImport> users = new ArrayList<>();
+        SpilledUserList.Writer writer = null;
+
+        try {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                UserImport user = context.readValue(parser, UserImport.class);
+
+                if (writer != null) {
+                    writer.write(user);
+                } else if (settings != null && users.size() >= settings.getThreshold()) {
+                    writer = SpilledUserList.createWriter(settings.getDirectory());
+
+                    for (UserImport bufferedUser : users) {
+                        writer.write(bufferedUser);
+                    }
+
+                    writer.write(user);
+                    users = null;
+                } else {
+                    users.add(user);
+                }
+            }
+
+            return writer == null ? users : writer.finish();
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.borisskert.keycloak.config.model;
+
+import java.io.File;
+
+/**
+ * Decides when the users of a realm import are spilled to a temporary file while reading the import. Passed as
+ * attribute of the deserialization, see {@link UserImportsDeserializer}.
+ */
+public class UserSpillSettings {
+    private final int threshold;
+    private final File directory;
+
+    /**
+     * @param threshold the users are spilled as soon as the realm import contains more users than this
+     * @param directory the directory of the temporary file
+     */
+    public UserSpillSettings(int threshold, File directory) {
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+}
@@ -31,15 +31,22 @@ public class AuthenticationFlowRepository {
     public Optional<AuthenticationFlowRepresentation> tryToGetTopLevelFlow(String realm, String alias) {
         logger.trace("Try to get top-level-flow '{}' from realm '{}'", alias, realm);
 
-        // with `AuthenticationManagementResource.getFlows()` keycloak is NOT returning all so-called top-level-flows so
-        // we need a partial export
-        RealmRepresentation realmExport = realmRepository.partialExport(realm);
-        return realmExport.getAuthenticationFlows()
+        return exportFlows(realm)
                 .stream()
                 .filter(flow -> flow.getAlias().equals(alias))
                 .findFirst();
     }
 
+    /**
+     * @return all flows of the realm inclusive their executions
+     */
+    public List<AuthenticationFlowRepresentation> exportFlows(String realm) {
+        // with `AuthenticationManagementResource.getFlows()` keycloak is NOT returning all so-called top-level-flows so
+        // we need a partial export
+        RealmRepresentation realmExport = realmRepository.partialExport(realm);
+        return realmExport.getAuthenticationFlows();
+    }
+
     public AuthenticationFlowRepresentation getTopLevelFlow(String realm, String alias) throws KeycloakRepositoryException {
         Optional<AuthenticationFlowRepresentation> maybeTopLevelFlow = tryToGetTopLevelFlow(realm, alias);
 
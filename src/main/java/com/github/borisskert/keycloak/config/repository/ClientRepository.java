@@ -50,6 +50,14 @@ public class ClientRepository {
         return clientResource.getSecret().getValue();
     }
 
+    public String getClientSecretById(String realm, String id) {
+        return realmRepository.loadRealm(realm)
+                .clients()
+                .get(id)
+                .getSecret()
+                .getValue();
+    }
+
     public void create(String realm, ClientRepresentation clientToCreate) {
         RealmResource realmResource = realmRepository.loadRealm(realm);
         ClientsResource clientsResource = realmResource.clients();
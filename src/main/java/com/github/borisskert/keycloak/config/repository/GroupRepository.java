@@ -15,24 +15,15 @@ import javax.ws.rs.core.Response;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 public class GroupRepository {
 
     private final RealmRepository realmRepository;
-    private final RoleRepository roleRepository;
-    private final ClientRepository clientRepository;
 
     @Autowired
-    public GroupRepository(
-            RealmRepository realmRepository,
-            RoleRepository roleRepository,
-            ClientRepository clientRepository
-    ) {
+    public GroupRepository(RealmRepository realmRepository) {
         this.realmRepository = realmRepository;
-        this.roleRepository = roleRepository;
-        this.clientRepository = clientRepository;
     }
 
     public List<GroupRepresentation> getGroups(String realm) {
@@ -77,28 +68,20 @@ public class GroupRepository {
                 .get();
     }
 
-    public void addRealmRoles(String realm, String groupId, List<String> roleNames) {
+    public void addRealmRoles(String realm, String groupId, List<RoleRepresentation> realmRoles) {
         GroupResource groupResource = loadGroupById(realm, groupId);
         RoleMappingResource groupRoles = groupResource.roles();
         RoleScopeResource groupRealmRoles = groupRoles.realmLevel();
 
-        List<RoleRepresentation> existingRealmRoles = roleNames.stream()
-                .map(realmRole -> roleRepository.findRealmRole(realm, realmRole))
-                .collect(Collectors.toList());
-
-        groupRealmRoles.add(existingRealmRoles);
+        groupRealmRoles.add(realmRoles);
     }
 
-    public void removeRealmRoles(String realm, String groupId, List<String> roleNames) {
+    public void removeRealmRoles(String realm, String groupId, List<RoleRepresentation> realmRoles) {
         GroupResource groupResource = loadGroupById(realm, groupId);
         RoleMappingResource groupRoles = groupResource.roles();
         RoleScopeResource groupRealmRoles = groupRoles.realmLevel();
 
-        List<RoleRepresentation> existingRealmRoles = roleNames.stream()
-                .map(realmRole -> roleRepository.findRealmRole(realm, realmRole))
-                .collect(Collectors.toList());
-
-        groupRealmRoles.remove(existingRealmRoles);
+        groupRealmRoles.remove(realmRoles);
     }
 
     public void deleteGroup(String realm, String id) {
@@ -106,25 +89,19 @@ public class GroupRepository {
         groupResource.remove();
     }
 
-    public void addClientRoles(String realm, String groupId, String clientId, List<String> roleNames) {
+    public void addClientRoles(String realm, String groupId, ClientRepresentation client, List<RoleRepresentation> clientRoles) {
         GroupResource groupResource = loadGroupById(realm, groupId);
         RoleMappingResource rolesResource = groupResource.roles();
-
-        ClientRepresentation client = clientRepository.getClient(realm, clientId);
         RoleScopeResource groupClientRolesResource = rolesResource.clientLevel(client.getId());
 
-        List<RoleRepresentation> clientRoles = roleRepository.searchClientRoles(realm, clientId, roleNames);
         groupClientRolesResource.add(clientRoles);
     }
 
-    public void removeClientRoles(String realm, String groupId, String clientId, List<String> roleNames) {
+    public void removeClientRoles(String realm, String groupId, ClientRepresentation client, List<RoleRepresentation> clientRoles) {
         GroupResource groupResource = loadGroupById(realm, groupId);
         RoleMappingResource rolesResource = groupResource.roles();
-
-        ClientRepresentation client = clientRepository.getClient(realm, clientId);
         RoleScopeResource groupClientRolesResource = rolesResource.clientLevel(client.getId());
 
-        List<RoleRepresentation> clientRoles = roleRepository.searchClientRoles(realm, clientId, roleNames);
         groupClientRolesResource.remove(clientRoles);
     }
 
@@ -0,0 +1,159 @@
+package com.github.borisskert.keycloak.config.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.borisskert.keycloak.config.exception.KeycloakRepositoryException;
+import org.keycloak.representations.idm.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Creates entities in bulk by keycloak's partial import: the entities are sent in chunks of
+ * `import.bulk-create-chunk-size` entities, every chunk is created within one transaction. Already existing entities
+ * are skipped, so the callers only have to update the entities which have not been created.
+ */
+@Service
+public class PartialImportRepository {
+    private static final Logger logger = LoggerFactory.getLogger(PartialImportRepository.class);
+
+    private static final String SKIP_POLICY = "SKIP";
+    private static final String ADDED_ACTION = "ADDED";
+
+    private final RealmRepository realmRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${import.bulk-create:#{false}}")
+    private Boolean bulkCreate;
+
+    @Value("${import.bulk-create-chunk-size:#{100}}")
+    private Integer chunkSize;
+
+    @Autowired
+    public PartialImportRepository(RealmRepository realmRepository, @Qualifier("json") ObjectMapper objectMapper) {
+        this.realmRepository = realmRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    public boolean isEnabled() {
+        return bulkCreate;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return the lower-cased usernames of the created users
+     */
+    public Set<String> createUsers(String realm, List<UserRepresentation> users) {
+        return importInChunks(realm, "users", users, PartialImportRepresentation::setUsers)
+                .stream()
+                .map(username -> username.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * @return the names of the created top-level groups
+     */
+    public Set<String> createGroups(String realm, List<GroupRepresentation> groups) {
+        return importInChunks(realm, "groups", groups, PartialImportRepresentation::setGroups);
+    }
+
+    /**
+     * @return the client-ids of the created clients
+     */
+    public Set<String> createClients(String realm, List<ClientRepresentation> clients) {
+        return importInChunks(realm, "clients", clients, PartialImportRepresentation::setClients);
+    }
+
+    /**
+     * @return the names of the created realm-level roles
+     */
+    public Set<String> createRealmRoles(String realm, List<RoleRepresentation> roles) {
+        return importInChunks(realm, "realm-level roles", roles, (partialImport, chunk) -> {
+            RolesRepresentation rolesRepresentation = new RolesRepresentation();
+            rolesRepresentation.setRealm(chunk);
+
+            partialImport.setRoles(rolesRepresentation);
+        });
+    }
+
+    /**
+     * @return the names of the created client-level roles
+     */
+    public Set<String> createClientRoles(String realm, String clientId, List<RoleRepresentation> roles) {
+        return importInChunks(realm, "client-level roles of client '" + clientId + "'", roles, (partialImport, chunk) -> {
+            RolesRepresentation rolesRepresentation = new RolesRepresentation();
+            rolesRepresentation.setClient(Collections.singletonMap(clientId, chunk));
+
+            partialImport.setRoles(rolesRepresentation);
+        });
+    }
+
+    private <T> Set<String> importInChunks(
+            String realm,
+            String entities,
+            List<T> entitiesToCreate,
+            BiConsumer<PartialImportRepresentation, List<T>> setEntities
+    ) {
+        Set<String> createdEntities = new HashSet<>();
+
+        for (int first = 0; first < entitiesToCreate.size(); first += chunkSize) {
+            List<T> chunk = entitiesToCreate.subList(first, Math.min(first + chunkSize, entitiesToCreate.size()));
+
+            PartialImportRepresentation partialImport = new PartialImportRepresentation();
+            partialImport.setIfResourceExists(SKIP_POLICY);
+            setEntities.accept(partialImport, new ArrayList<>(chunk));
+
+            createdEntities.addAll(partialImport(realm, entities, partialImport));
+        }
+
+        logger.debug("Created {} of {} {} in realm '{}'", createdEntities.size(), entitiesToCreate.size(), entities, realm);
+
+        return createdEntities;
+    }
+
+    private Set<String> partialImport(String realm, String entities, PartialImportRepresentation partialImport) {
+        Response response = realmRepository.loadRealm(realm).partialImport(partialImport);
+
+        try {
+            String body = response.readEntity(String.class);
+
+            if (response.getStatus() >= 300) {
+                throw new KeycloakRepositoryException(
+                        "Cannot create " + entities + " in realm '" + realm + "': " + response.getStatus() + " " + body
+                );
+            }
+
+            return readAddedResourceNames(body);
+        } finally {
+            response.close();
+        }
+    }
+
+    private Set<String> readAddedResourceNames(String body) {
+        Set<String> addedResourceNames = new HashSet<>();
+
+        try {
+            for (JsonNode result : objectMapper.readTree(body).path("results")) {
+                if (ADDED_ACTION.equals(result.path("action").asText())) {
+                    addedResourceNames.add(result.path("resourceName").asText());
+                }
+            }
+        } catch (IOException e) {
+            throw new KeycloakRepositoryException("Cannot read result of partial import: " + body, e);
+        }
+
+        return addedResourceNames;
+    }
+}
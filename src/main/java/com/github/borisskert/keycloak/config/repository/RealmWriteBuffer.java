@@ -0,0 +1,98 @@
+package com.github.borisskert.keycloak.config.repository;
+
+import com.github.borisskert.keycloak.config.util.CloneUtils;
+import org.keycloak.representations.idm.RealmRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Collects changes of realm representations and writes them with as few requests as possible. Every PUT of a realm
+ * representation invalidates the realm cache of the whole keycloak cluster, so all collected changes are applied to
+ * a freshly loaded realm representation while flushing and the PUT will be skipped if nothing has changed.
+ */
+@Service
+public class RealmWriteBuffer {
+    private static final Logger logger = LoggerFactory.getLogger(RealmWriteBuffer.class);
+
+    private final RealmRepository realmRepository;
+
+    private final Map<String, List<UnaryOperator<RealmRepresentation>>> pendingChanges = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RealmWriteBuffer(RealmRepository realmRepository) {
+        this.realmRepository = realmRepository;
+    }
+
+    /**
+     * @return the stored realm representation with all pending changes applied
+     */
+    public RealmRepresentation get(String realm) {
+        RealmRepresentation existingRealm = realmRepository.get(realm);
+        return applyPendingChanges(realm, existingRealm);
+    }
+
+    /**
+     * Registers a change which will be applied to the realm representation with the next {@link #flush(String)}
+     *
+     * @param change has to return the changed realm representation, may modify and return its argument
+     */
+    public void update(String realm, UnaryOperator<RealmRepresentation> change) {
+        pendingChanges.computeIfAbsent(realm, k -> Collections.synchronizedList(new ArrayList<>()))
+                .add(change);
+    }
+
+    /**
+     * Applies all pending changes and updates the realm in keycloak, but only if any property has been changed
+     */
+    public void flush(String realm) {
+        if (!hasPendingChanges(realm)) {
+            return;
+        }
+
+        RealmRepresentation existingRealm = realmRepository.get(realm);
+        RealmRepresentation realmToUpdate = applyPendingChanges(realm, existingRealm);
+
+        pendingChanges.remove(realm);
+
+        if (CloneUtils.deepEquals(existingRealm, realmToUpdate)) {
+            logger.debug("No need to update realm '{}'", realm);
+        } else {
+            logger.trace("Update realm '{}'", realm);
+            realmRepository.update(realmToUpdate);
+        }
+    }
+
+    /**
+     * Drops all pending changes without writing them
+     */
+    public void discard(String realm) {
+        pendingChanges.remove(realm);
+    }
+
+    private boolean hasPendingChanges(String realm) {
+        List<UnaryOperator<RealmRepresentation>> changes = pendingChanges.get(realm);
+        return changes != null && !changes.isEmpty();
+    }
+
+    private RealmRepresentation applyPendingChanges(String realm, RealmRepresentation existingRealm) {
+        RealmRepresentation changedRealm = CloneUtils.deepClone(existingRealm);
+        List<UnaryOperator<RealmRepresentation>> changes = pendingChanges.getOrDefault(realm, Collections.emptyList());
+
+        synchronized (changes) {
+            for (UnaryOperator<RealmRepresentation> change : changes) {
+                changedRealm = change.apply(changedRealm);
+            }
+        }
+
+        return changedRealm;
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.borisskert.keycloak.config.repository;
+
+import com.github.borisskert.keycloak.config.exception.KeycloakRepositoryException;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.representations.idm.ClientRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory view of the realm-level roles, the clients and their client-level roles of one realm. Every container is
+ * loaded lazily by one single request and kept for the lifetime of the catalog, so the catalog should be used only
+ * during one import of one realm. The catalog may be shared by several threads.
+ */
+public class RoleCatalog {
+
+    private final String realm;
+    private final RealmResource realmResource;
+
+    private Map<String, RoleRepresentation> realmRoles;
+    private Map<String, ClientRepresentation> clients;
+    private final Map<String, Map<String, RoleRepresentation>> clientRoles = new HashMap<>();
+
+    RoleCatalog(String realm, RealmResource realmResource) {
+        this.realm = realm;
+        this.realmResource = realmResource;
+    }
+
+    public RoleRepresentation findRealmRole(String roleName) {
+        RoleRepresentation realmRole = getRealmRoles().get(roleName);
+
+        if (realmRole == null) {
+            throw new KeycloakRepositoryException(
+                    "Cannot find realm role '" + roleName + "' within realm '" + realm + "'"
+            );
+        }
+
+        return realmRole;
+    }
+
+    public List<RoleRepresentation> findRealmRoles(Collection<String> roleNames) {
+        return roleNames.stream()
+                .map(this::findRealmRole)
+                .collect(Collectors.toList());
+    }
+
+    public ClientRepresentation findClient(String clientId) {
+        ClientRepresentation client = getClients().get(clientId);
+
+        if (client == null) {
+            throw new KeycloakRepositoryException(
+                    "Cannot find client by clientId '" + clientId + "' within realm '" + realm + "'"
+            );
+        }
+
+        return client;
+    }
+
+    public RoleRepresentation findClientRole(String clientId, String roleName) {
+        RoleRepresentation clientRole = getClientRoles(clientId).get(roleName);
+
+        if (clientRole == null) {
+            throw new KeycloakRepositoryException(
+                    "Cannot find client role '" + roleName + "' for client '" + clientId + "' within realm '" + realm + "'"
+            );
+        }
+
+        return clientRole;
+    }
+
+    public List<RoleRepresentation> findClientRoles(String clientId, Collection<String> roleNames) {
+        return roleNames.stream()
+                .map(roleName -> findClientRole(clientId, roleName))
+                .collect(Collectors.toList());
+    }
+
+    private synchronized Map<String, RoleRepresentation> getRealmRoles() {
+        if (realmRoles == null) {
+            realmRoles = byName(realmResource.roles().list());
+        }
+
+        return realmRoles;
+    }
+
+    private synchronized Map<String, ClientRepresentation> getClients() {
+        if (clients == null) {
+            clients = realmResource.clients()
+                    .findAll()
+                    .stream()
+                    .collect(Collectors.toMap(ClientRepresentation::getClientId, Function.identity()));
+        }
+
+        return clients;
+    }
+
+    private synchronized Map<String, RoleRepresentation> getClientRoles(String clientId) {
+        return clientRoles.computeIfAbsent(clientId, this::loadClientRoles);
+    }
+
+    private Map<String, RoleRepresentation> loadClientRoles(String clientId) {
+        ClientRepresentation client = findClient(clientId);
+
+        List<RoleRepresentation> roles = realmResource.clients()
+                .get(client.getId())
+                .roles()
+                .list();
+
+        return byName(roles);
+    }
+
+    private static Map<String, RoleRepresentation> byName(List<RoleRepresentation> roles) {
+        return roles.stream()
+                .collect(Collectors.toMap(RoleRepresentation::getName, Function.identity()));
+    }
+}
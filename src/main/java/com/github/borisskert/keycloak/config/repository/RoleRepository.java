@@ -32,6 +32,10 @@ public class RoleRepository {
         this.userRepository = userRepository;
     }
 
+    public RoleCatalog loadCatalog(String realm) {
+        return new RoleCatalog(realm, realmRepository.loadRealm(realm));
+    }
+
     public Optional<RoleRepresentation> tryToFindRealmRole(String realm, String name) {
         Optional<RoleRepresentation> maybeRole;
 
@@ -47,6 +51,12 @@ public class RoleRepository {
         return maybeRole;
     }
 
+    public List<RoleRepresentation> getRealmRoles(String realm) {
+        return realmRepository.loadRealm(realm)
+                .roles()
+                .list(false);
+    }
+
     public void createRealmRole(String realm, RoleRepresentation role) {
         RolesResource rolesResource = realmRepository.loadRealm(realm).roles();
         rolesResource.create(role);
@@ -60,6 +70,12 @@ public class RoleRepository {
         roleResource.update(roleToUpdate);
     }
 
+    public void deleteRealmRole(String realm, String roleName) {
+        realmRepository.loadRealm(realm)
+                .roles()
+                .deleteRole(roleName);
+    }
+
     public RoleRepresentation findRealmRole(String realm, String roleName) {
         return tryToFindRealmRole(realm, roleName)
                 .orElseThrow(
@@ -123,6 +139,24 @@ public class RoleRepository {
         roleResource.update(roleToUpdate);
     }
 
+    public List<RoleRepresentation> getClientRolesByClientId(String realm, String id) {
+        return loadClientRolesById(realm, id).list(false);
+    }
+
+    public void createClientRoleByClientId(String realm, String id, RoleRepresentation role) {
+        loadClientRolesById(realm, id).create(role);
+    }
+
+    public void updateClientRoleByClientId(String realm, String id, RoleRepresentation roleToUpdate) {
+        loadClientRolesById(realm, id)
+                .get(roleToUpdate.getName())
+                .update(roleToUpdate);
+    }
+
+    public void deleteClientRoleByClientId(String realm, String id, String roleName) {
+        loadClientRolesById(realm, id).deleteRole(roleName);
+    }
+
     public List<RoleRepresentation> searchRealmRoles(String realm, List<String> roles) {
         return roles.stream()
                 .map(role -> realmRepository.loadRealm(realm)
@@ -196,6 +230,13 @@ public class RoleRepository {
                 .get(roleName);
     }
 
+    private RolesResource loadClientRolesById(String realm, String id) {
+        return realmRepository.loadRealm(realm)
+                .clients()
+                .get(id)
+                .roles();
+    }
+
     final RoleResource loadClientRole(String realm, String roleClientId, String roleName) {
         ClientRepresentation client = clientRepository.getClient(realm, roleClientId);
 
@@ -1,10 +1,14 @@
 package com.github.borisskert.keycloak.config.repository;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.github.borisskert.keycloak.config.exception.KeycloakRepositoryException;
+import com.github.borisskert.keycloak.config.service.http.AsyncAdminClient;
 import com.github.borisskert.keycloak.config.util.ResponseUtil;
 import org.keycloak.admin.client.resource.RealmResource;
 import org.keycloak.admin.client.resource.UserResource;
 import org.keycloak.admin.client.resource.UsersResource;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.MappingsRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -12,15 +16,27 @@ import org.springframework.stereotype.Service;
 import javax.ws.rs.core.Response;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static com.github.borisskert.keycloak.config.service.http.AsyncAdminClient.encode;
 
 @Service
 public class UserRepository {
 
     private final RealmRepository realmRepository;
+    private final AsyncAdminClient asyncAdminClient;
 
     @Autowired
-    public UserRepository(RealmRepository realmRepository) {
+    public UserRepository(RealmRepository realmRepository, AsyncAdminClient asyncAdminClient) {
         this.realmRepository = realmRepository;
+        this.asyncAdminClient = asyncAdminClient;
+    }
+
+    /**
+     * @return `true` if the `*Async` methods should be used to keep many requests in flight without blocking threads
+     */
+    public boolean isNonBlocking() {
+        return asyncAdminClient.isEnabled();
     }
 
     public Optional<UserRepresentation> tryToFindUser(String realm, String username) {
@@ -64,4 +80,75 @@ public class UserRepository {
         UserResource userResource = getUserResource(realm, user.getUsername());
         userResource.update(user);
     }
+
+    public void delete(String realm, String userId) throws KeycloakRepositoryException {
+        Response response = realmRepository.loadRealm(realm)
+                .users()
+                .delete(userId);
+
+        ResponseUtil.throwOnError(response);
+    }
+
+    public List<UserRepresentation> getUsers(String realm, int first, int max) {
+        return realmRepository.loadRealm(realm)
+                .users()
+                .list(first, max);
+    }
+
+    public MappingsRepresentation getRoleMappings(String realm, String userId) {
+        return realmRepository.loadRealm(realm)
+                .users()
+                .get(userId)
+                .roles()
+                .getAll();
+    }
+
+    public List<GroupRepresentation> getGroups(String realm, String userId) {
+        return realmRepository.loadRealm(realm)
+                .users()
+                .get(userId)
+                .groups();
+    }
+
+    public void joinGroup(String realm, String userId, String groupId) {
+        realmRepository.loadRealm(realm)
+                .users()
+                .get(userId)
+                .joinGroup(groupId);
+    }
+
+    public void leaveGroup(String realm, String userId, String groupId) {
+        realmRepository.loadRealm(realm)
+                .users()
+                .get(userId)
+                .leaveGroup(groupId);
+    }
+
+    public CompletableFuture<Void> deleteAsync(String realm, String userId) {
+        return asyncAdminClient.delete("/realms/" + encode(realm) + "/users/" + encode(userId));
+    }
+
+    public CompletableFuture<List<UserRepresentation>> getUsersAsync(String realm, int first, int max) {
+        return asyncAdminClient.get(
+                "/realms/" + encode(realm) + "/users?first=" + first + "&max=" + max,
+                new TypeReference<List<UserRepresentation>>() {
+                }
+        );
+    }
+
+    public CompletableFuture<MappingsRepresentation> getRoleMappingsAsync(String realm, String userId) {
+        return asyncAdminClient.get(
+                "/realms/" + encode(realm) + "/users/" + encode(userId) + "/role-mappings",
+                new TypeReference<MappingsRepresentation>() {
+                }
+        );
+    }
+
+    public CompletableFuture<List<GroupRepresentation>> getGroupsAsync(String realm, String userId) {
+        return asyncAdminClient.get(
+                "/realms/" + encode(realm) + "/users/" + encode(userId) + "/groups",
+                new TypeReference<List<GroupRepresentation>>() {
+                }
+        );
+    }
 }
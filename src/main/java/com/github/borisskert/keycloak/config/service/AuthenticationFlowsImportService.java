@@ -4,6 +4,9 @@ import com.github.borisskert.keycloak.config.exception.InvalidImportException;
 import com.github.borisskert.keycloak.config.model.RealmImport;
 import com.github.borisskert.keycloak.config.repository.AuthenticationFlowRepository;
 import com.github.borisskert.keycloak.config.repository.ExecutionFlowRepository;
+import com.github.borisskert.keycloak.config.service.report.ImportReport;
+import com.github.borisskert.keycloak.config.service.trace.Span;
+import com.github.borisskert.keycloak.config.service.trace.Tracer;
 import com.github.borisskert.keycloak.config.util.CloneUtils;
 import org.keycloak.representations.idm.AuthenticationExecutionInfoRepresentation;
 import org.keycloak.representations.idm.AuthenticationFlowRepresentation;
@@ -13,7 +16,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * We have to import authentication-flows separately because in case of an existing realm, keycloak is ignoring or
@@ -31,18 +37,24 @@ public class AuthenticationFlowsImportService {
     private final ExecutionFlowsImportService executionFlowsImportService;
     private final ExecutionFlowRepository executionFlowRepository;
     private final UsedAuthenticationFlowWorkaroundFactory workaroundFactory;
+    private final Tracer tracer;
+    private final ImportReport importReport;
 
     @Autowired
     public AuthenticationFlowsImportService(
             AuthenticationFlowRepository authenticationFlowRepository,
             ExecutionFlowsImportService executionFlowsImportService,
             ExecutionFlowRepository executionFlowRepository,
-            UsedAuthenticationFlowWorkaroundFactory workaroundFactory
+            UsedAuthenticationFlowWorkaroundFactory workaroundFactory,
+            Tracer tracer,
+            ImportReport importReport
     ) {
         this.authenticationFlowRepository = authenticationFlowRepository;
         this.executionFlowsImportService = executionFlowsImportService;
         this.executionFlowRepository = executionFlowRepository;
         this.workaroundFactory = workaroundFactory;
+        this.tracer = tracer;
+        this.importReport = importReport;
     }
 
     /**
@@ -59,11 +71,22 @@ public class AuthenticationFlowsImportService {
     }
 
     /**
-     * creates or updates only the top-level flows and its executions or execution-flows
+     * creates or updates only the top-level flows and its executions or execution-flows. The existing top-level flows
+     * are exported once, creating or recreating one flow doesn't change the existence of the other flows.
      */
     private void createOrUpdateTopLevelFlows(RealmImport realmImport, List<AuthenticationFlowRepresentation> topLevelFlowsToImport) {
+        if (topLevelFlowsToImport.isEmpty()) {
+            return;
+        }
+
+        Map<String, AuthenticationFlowRepresentation> existingTopLevelFlows = authenticationFlowRepository.exportFlows(realmImport.getRealm())
+                .stream()
+                .collect(Collectors.toMap(AuthenticationFlowRepresentation::getAlias, Function.identity()));
+
         for (AuthenticationFlowRepresentation topLevelFlowToImport : topLevelFlowsToImport) {
-            createOrUpdateTopLevelFlow(realmImport, topLevelFlowToImport);
+            try (Span ignored = tracer.startSpan("flow").setAttribute("realm", realmImport.getRealm()).setAttribute("flow", topLevelFlowToImport.getAlias())) {
+                createOrUpdateTopLevelFlow(realmImport, topLevelFlowToImport, existingTopLevelFlows.get(topLevelFlowToImport.getAlias()));
+            }
         }
     }
 
@@ -72,14 +95,10 @@ public class AuthenticationFlowsImportService {
      */
     private void createOrUpdateTopLevelFlow(
             RealmImport realm,
-            AuthenticationFlowRepresentation topLevelFlowToImport
+            AuthenticationFlowRepresentation topLevelFlowToImport,
+            AuthenticationFlowRepresentation existingTopLevelFlow
     ) {
-        String alias = topLevelFlowToImport.getAlias();
-
-        Optional<AuthenticationFlowRepresentation> maybeTopLevelFlow = authenticationFlowRepository.tryToGetTopLevelFlow(realm.getRealm(), alias);
-
-        if (maybeTopLevelFlow.isPresent()) {
-            AuthenticationFlowRepresentation existingTopLevelFlow = maybeTopLevelFlow.get();
+        if (existingTopLevelFlow != null) {
             updateTopLevelFlowIfNeeded(realm, topLevelFlowToImport, existingTopLevelFlow);
         } else {
             createTopLevelFlow(realm, topLevelFlowToImport);
@@ -92,6 +111,7 @@ public class AuthenticationFlowsImportService {
 
         AuthenticationFlowRepresentation createdTopLevelFlow = authenticationFlowRepository.getTopLevelFlow(realm.getRealm(), topLevelFlowToImport.getAlias());
         executionFlowsImportService.createExecutionsAndExecutionFlows(realm, topLevelFlowToImport, createdTopLevelFlow);
+        importReport.created();
     }
 
     private void updateTopLevelFlowIfNeeded(
@@ -105,8 +125,10 @@ public class AuthenticationFlowsImportService {
         if (hasToBeUpdated) {
             logger.debug("Updating top-level flow: {}", topLevelFlowToImport.getAlias());
             recreateTopLevelFlow(realm, topLevelFlowToImport, existingAuthenticationFlow);
+            importReport.updated();
         } else {
             logger.debug("No need to update flow: {}", topLevelFlowToImport.getAlias());
+            importReport.unchanged();
         }
     }
 
@@ -1,28 +1,60 @@
 package com.github.borisskert.keycloak.config.service;
 
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
 import com.github.borisskert.keycloak.config.model.RealmImport;
 import com.github.borisskert.keycloak.config.repository.ClientRepository;
+import com.github.borisskert.keycloak.config.repository.PartialImportRepository;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import com.github.borisskert.keycloak.config.service.report.ImportReport;
+import com.github.borisskert.keycloak.config.service.report.SectionReport;
+import com.github.borisskert.keycloak.config.service.trace.Span;
+import com.github.borisskert.keycloak.config.service.trace.Tracer;
 import com.github.borisskert.keycloak.config.util.CloneUtils;
 import org.keycloak.representations.idm.ClientRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
+/**
+ * Creates and updates the clients of a realm. The existing clients are read once per import and compared with the
+ * imported clients, the client secret is only fetched for confidential clients whose import defines a secret. The
+ * missing clients are created in bulk by partial import if enabled, all other clients are created and updated
+ * concurrently.
+ */
 @Service
 public class ClientImportService {
     private static final Logger logger = LoggerFactory.getLogger(ClientImportService.class);
 
     private final ClientRepository clientRepository;
+    private final PartialImportRepository partialImportRepository;
+    private final ImportExecutors importExecutors;
+    private final Tracer tracer;
+    private final ImportReport importReport;
+
+    @Value("${import.client-parallelism:#{4}}")
+    private Integer parallelism;
 
     @Autowired
     public ClientImportService(
-            ClientRepository clientRepository
+            ClientRepository clientRepository,
+            PartialImportRepository partialImportRepository,
+            ImportExecutors importExecutors,
+            Tracer tracer,
+            ImportReport importReport
     ) {
         this.clientRepository = clientRepository;
+        this.partialImportRepository = partialImportRepository;
+        this.importExecutors = importExecutors;
+        this.tracer = tracer;
+        this.importReport = importReport;
     }
 
     public void doImport(RealmImport realmImport) {
@@ -31,41 +63,135 @@ public class ClientImportService {
     }
 
     private void createOrUpdateClients(RealmImport realmImport, List<ClientRepresentation> clients) {
-        for (ClientRepresentation client : clients) {
-            createOrUpdateClient(realmImport, client);
+        String realm = realmImport.getRealm();
+
+        Map<String, ClientRepresentation> existingClients = new HashMap<>();
+        for (ClientRepresentation existingClient : clientRepository.getClients(realm)) {
+            existingClients.put(existingClient.getClientId(), existingClient);
+        }
+
+        Set<String> createdClientIds = createMissingClients(realm, clients, existingClients);
+
+        Span parentSpan = tracer.currentSpan();
+        SectionReport section = importReport.currentSection();
+        ExecutorService executor = importExecutors.newExecutor(parallelism);
+        List<String> failedClientIds = new ArrayList<>();
+
+        try {
+            Map<String, Future<?>> pendingClients = new LinkedHashMap<>();
+
+            for (ClientRepresentation client : clients) {
+                if (createdClientIds.contains(client.getClientId())) {
+                    continue;
+                }
+
+                ClientRepresentation existingClient = existingClients.get(client.getClientId());
+
+                pendingClients.put(client.getClientId(), executor.submit(() -> {
+                    try (Span ignored = tracer.startSpan("client", parentSpan).setAttribute("realm", realm).setAttribute("client", client.getClientId())) {
+                        createOrUpdateClient(realm, client, existingClient, section);
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Map.Entry<String, Future<?>> pendingClient : pendingClients.entrySet()) {
+                try {
+                    pendingClient.getValue().get();
+                } catch (ExecutionException e) {
+                    logger.error("Cannot import client '{}' in realm '{}'", pendingClient.getKey(), realm, e.getCause());
+                    failedClientIds.add(pendingClient.getKey());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImportProcessingException("Interrupted while importing clients of realm '" + realm + "'", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!failedClientIds.isEmpty()) {
+            throw new ImportProcessingException("Cannot import clients " + failedClientIds + " in realm '" + realm + "'");
         }
     }
 
-    private void createOrUpdateClient(RealmImport realmImport, ClientRepresentation client) {
-        String clientId = client.getClientId();
-        String realm = realmImport.getRealm();
+    /**
+     * @return the client-ids of the clients created in bulk
+     */
+    private Set<String> createMissingClients(
+            String realm,
+            List<ClientRepresentation> clients,
+            Map<String, ClientRepresentation> existingClients
+    ) {
+        if (!partialImportRepository.isEnabled()) {
+            return Collections.emptySet();
+        }
+
+        List<ClientRepresentation> missingClients = clients.stream()
+                .filter(client -> !existingClients.containsKey(client.getClientId()))
+                .collect(Collectors.toList());
+
+        if (missingClients.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> createdClientIds = partialImportRepository.createClients(realm, missingClients);
+        importReport.created(createdClientIds.size());
 
-        Optional<ClientRepresentation> maybeClient = clientRepository.tryToFindClient(realm, clientId);
+        return createdClientIds;
+    }
 
-        if (maybeClient.isPresent()) {
-            updateClientIfNeeded(realm, client, maybeClient.get());
+    private void createOrUpdateClient(
+            String realm,
+            ClientRepresentation client,
+            ClientRepresentation existingClient,
+            SectionReport section
+    ) {
+        if (existingClient != null) {
+            updateClientIfNeeded(realm, client, existingClient, section);
         } else {
-            logger.debug("Create client '{}' in realm '{}'", clientId, realm);
+            logger.debug("Create client '{}' in realm '{}'", client.getClientId(), realm);
             clientRepository.create(realm, client);
+            section.created();
         }
     }
 
-    private void updateClientIfNeeded(String realm, ClientRepresentation clientToUpdate, ClientRepresentation existingClient) {
+    private void updateClientIfNeeded(
+            String realm,
+            ClientRepresentation clientToUpdate,
+            ClientRepresentation existingClient,
+            SectionReport section
+    ) {
         if (!areClientsEqual(realm, clientToUpdate, existingClient)) {
             logger.debug("Update client '{}' in realm '{}'", clientToUpdate.getClientId(), realm);
             updateClient(realm, existingClient, clientToUpdate);
+            section.updated();
         } else {
             logger.debug("No need to update client '{}' in realm '{}'", clientToUpdate.getClientId(), realm);
+            section.unchanged();
         }
     }
 
     private boolean areClientsEqual(String realm, ClientRepresentation clientToUpdate, ClientRepresentation existingClient) {
-        if (CloneUtils.deepEquals(clientToUpdate, existingClient, "id", "secret")) {
-            String clientSecret = clientRepository.getClientSecret(realm, clientToUpdate.getClientId());
-            return clientSecret.equals(clientToUpdate.getSecret());
+        if (!CloneUtils.deepEquals(clientToUpdate, existingClient, "id", "secret")) {
+            return false;
         }
 
-        return false;
+        if (!hasSecretToCompare(clientToUpdate, existingClient)) {
+            return true;
+        }
+
+        String clientSecret = clientRepository.getClientSecretById(realm, existingClient.getId());
+        return clientToUpdate.getSecret().equals(clientSecret);
+    }
+
+    /**
+     * Public clients don't have a secret and a client without a secret in its import keeps its current secret, so
+     * only confidential clients with an imported secret need their secret to be fetched.
+     */
+    private boolean hasSecretToCompare(ClientRepresentation clientToUpdate, ClientRepresentation existingClient) {
+        return clientToUpdate.getSecret() != null && !Boolean.TRUE.equals(existingClient.isPublicClient());
     }
 
     private void updateClient(String realm, ClientRepresentation existingClient, ClientRepresentation clientToImport) {
@@ -39,7 +39,7 @@ public class ExecutionFlowsImportService {
             AuthenticationFlowRepresentation topLevelFlowToImport,
             AuthenticationFlowRepresentation existingTopLevelFlow
     ) {
-        for (AuthenticationExecutionExportRepresentation executionToImport : topLevelFlowToImport.getAuthenticationExecutions()) {
+        for (AuthenticationExecutionExportRepresentation executionToImport : realm.getAuthenticationFlowIndex().getExecutions(topLevelFlowToImport.getAlias())) {
             createExecutionOrExecutionFlow(realm, topLevelFlowToImport, existingTopLevelFlow, executionToImport);
         }
     }
@@ -161,7 +161,7 @@ public class ExecutionFlowsImportService {
 
     private void createExecutionAndExecutionFlowsForNonTopLevelFlows(RealmImport realm, AuthenticationFlowRepresentation nonTopLevelFlow) {
 
-        for (AuthenticationExecutionExportRepresentation executionOrExecutionFlowToImport : nonTopLevelFlow.getAuthenticationExecutions()) {
+        for (AuthenticationExecutionExportRepresentation executionOrExecutionFlowToImport : realm.getAuthenticationFlowIndex().getExecutions(nonTopLevelFlow.getAlias())) {
 
             if (executionOrExecutionFlowToImport.isAutheticatorFlow()) {
                 createAndConfigureExecutionFlow(realm, nonTopLevelFlow, executionOrExecutionFlowToImport);
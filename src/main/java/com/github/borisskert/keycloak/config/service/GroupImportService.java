@@ -1,23 +1,65 @@
 package com.github.borisskert.keycloak.config.service;
 
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
 import com.github.borisskert.keycloak.config.model.RealmImport;
 import com.github.borisskert.keycloak.config.repository.GroupRepository;
+import com.github.borisskert.keycloak.config.repository.PartialImportRepository;
+import com.github.borisskert.keycloak.config.repository.RoleCatalog;
+import com.github.borisskert.keycloak.config.repository.RoleRepository;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import com.github.borisskert.keycloak.config.service.report.ImportReport;
+import com.github.borisskert.keycloak.config.service.report.SectionReport;
+import com.github.borisskert.keycloak.config.service.trace.Span;
+import com.github.borisskert.keycloak.config.service.trace.Tracer;
 import com.github.borisskert.keycloak.config.util.CloneUtils;
+import org.keycloak.representations.idm.ClientRepresentation;
 import org.keycloak.representations.idm.GroupRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Creates, updates and deletes the groups of a realm. The top-level groups don't depend on each other, so every
+ * top-level group is reconciled with its subgroups by one of `import.group-parallelism` threads. A failing group
+ * doesn't stop the other groups; the import fails after all groups have been reconciled.
+ */
 @Service
 public class GroupImportService {
     private static final Logger logger = LoggerFactory.getLogger(GroupImportService.class);
 
     private final GroupRepository groupRepository;
-
-    public GroupImportService(GroupRepository groupRepository) {
+    private final RoleRepository roleRepository;
+    private final PartialImportRepository partialImportRepository;
+    private final Tracer tracer;
+    private final ImportReport importReport;
+    private final ImportExecutors importExecutors;
+
+    @Value("${import.group-parallelism:#{4}}")
+    private Integer parallelism;
+
+    @Autowired
+    public GroupImportService(
+            GroupRepository groupRepository,
+            RoleRepository roleRepository,
+            PartialImportRepository partialImportRepository,
+            Tracer tracer,
+            ImportReport importReport,
+            ImportExecutors importExecutors
+    ) {
         this.groupRepository = groupRepository;
+        this.roleRepository = roleRepository;
+        this.partialImportRepository = partialImportRepository;
+        this.tracer = tracer;
+        this.importReport = importReport;
+        this.importExecutors = importExecutors;
     }
 
     public void importGroups(RealmImport realmImport) {
@@ -27,309 +69,351 @@ public class GroupImportService {
         if (groups == null) {
             logger.debug("No groups to import into realm '{}'", realm);
         } else {
-            importGroups(realm, groups);
+            GroupsImport groupsImport = new GroupsImport(realm);
+            groupsImport.importGroups(groups);
         }
     }
 
-    private void importGroups(String realm, List<GroupRepresentation> groups) {
-        List<GroupRepresentation> existingGroups = groupRepository.getGroups(realm);
-
-        if (groups.isEmpty()) {
-            deleteAllExistingGroups(realm, existingGroups);
-        } else {
-            deleteGroupsMissingInImport(realm, groups, existingGroups);
+    private static boolean hasGroupWithName(List<GroupRepresentation> groups, String groupName) {
+        return groups.stream().anyMatch(g -> Objects.equals(g.getName(), groupName));
+    }
 
-            for (GroupRepresentation group : groups) {
-                createOrUpdateRealmGroup(realm, group);
-            }
+    private static List<String> searchForMissingRoles(List<String> rolesToBeSearchedFor, List<String> rolesToBeTrawled) {
+        if (rolesToBeSearchedFor == null) {
+            return Collections.emptyList();
         }
-    }
 
-    private void deleteGroupsMissingInImport(String realm, List<GroupRepresentation> groups, List<GroupRepresentation> existingGroups) {
-        for (GroupRepresentation existingGroup : existingGroups) {
-            if (!hasGroupWithName(groups, existingGroup.getName())) {
-                logger.debug("Delete group '{}' in realm '{}'", existingGroup.getName(), realm);
-                groupRepository.deleteGroup(realm, existingGroup.getId());
-            }
+        if (rolesToBeTrawled == null) {
+            return new ArrayList<>(rolesToBeSearchedFor);
         }
+
+        Set<String> rolesToBeTrawledAsSet = new HashSet<>(rolesToBeTrawled);
+
+        return rolesToBeSearchedFor.stream()
+                .filter(role -> !rolesToBeTrawledAsSet.contains(role))
+                .collect(Collectors.toList());
     }
 
-    private void deleteAllExistingGroups(String realm, List<GroupRepresentation> existingGroups) {
-        for (GroupRepresentation existingGroup : existingGroups) {
-            logger.debug("Delete group '{}' in realm '{}'", existingGroup.getName(), realm);
-            groupRepository.deleteGroup(realm, existingGroup.getId());
+    /**
+     * Imports the groups of one realm. All role mappings are resolved by one {@link RoleCatalog} which is shared by
+     * all groups and subgroups of this import.
+     */
+    private class GroupsImport {
+        private final String realm;
+        private final RoleCatalog roleCatalog;
+
+        private GroupsImport(String realm) {
+            this.realm = realm;
+            this.roleCatalog = roleRepository.loadCatalog(realm);
         }
-    }
 
-    private boolean hasGroupWithName(List<GroupRepresentation> groups, String groupName) {
-        return groups.stream().anyMatch(g -> Objects.equals(g.getName(), groupName));
-    }
+        public void importGroups(List<GroupRepresentation> groups) {
+            List<GroupRepresentation> existingGroups = groupRepository.getGroups(realm);
+
+            if (groups.isEmpty()) {
+                deleteAllExistingGroups(existingGroups);
+            } else {
+                deleteGroupsMissingInImport(groups, existingGroups);
 
-    private void createOrUpdateRealmGroup(String realm, GroupRepresentation group) {
-        String groupName = group.getName();
+                Set<String> createdGroupNames = createMissingGroups(groups, existingGroups);
 
-        Optional<GroupRepresentation> maybeGroup = groupRepository.tryToFindGroupByName(realm, groupName);
+                List<GroupRepresentation> groupsToImport = groups.stream()
+                        .filter(group -> !createdGroupNames.contains(group.getName()))
+                        .collect(Collectors.toList());
 
-        if (maybeGroup.isPresent()) {
-            updateGroupIfNecessary(realm, group);
-        } else {
-            logger.debug("Create group '{}' in realm '{}'", groupName, realm);
-            createGroup(realm, group);
+                createOrUpdateRealmGroups(groupsToImport);
+            }
         }
-    }
 
-    private void createGroup(String realm, GroupRepresentation group) {
-        groupRepository.createGroup(realm, group);
+        private void createOrUpdateRealmGroups(List<GroupRepresentation> groups) {
+            Span parentSpan = tracer.currentSpan();
+            SectionReport section = importReport.currentSection();
+            ExecutorService executor = importExecutors.newExecutor(parallelism);
+            List<String> failedGroupNames = new ArrayList<>();
 
-        GroupRepresentation existingGroup = groupRepository.getGroupByName(realm, group.getName());
-        GroupRepresentation patchedGroup = CloneUtils.patch(existingGroup, group);
+            try {
+                Map<String, Future<?>> pendingGroups = new LinkedHashMap<>();
 
-        addRealmRoles(realm, patchedGroup);
-        addClientRoles(realm, patchedGroup);
-        addSubGroups(realm, patchedGroup);
-    }
+                for (GroupRepresentation group : groups) {
+                    pendingGroups.put(group.getName(), executor.submit(() -> {
+                        try (Span ignored = tracer.startSpan("group", parentSpan).setAttribute("realm", realm).setAttribute("group", group.getName())) {
+                            createOrUpdateRealmGroup(group, section);
+                        }
 
-    private void addRealmRoles(String realm, GroupRepresentation existingGroup) {
-        List<String> realmRoles = existingGroup.getRealmRoles();
+                        return null;
+                    }));
+                }
 
-        if (realmRoles != null && !realmRoles.isEmpty()) {
-            groupRepository.addRealmRoles(realm, existingGroup.getId(), realmRoles);
+                for (Map.Entry<String, Future<?>> pendingGroup : pendingGroups.entrySet()) {
+                    try {
+                        pendingGroup.getValue().get();
+                    } catch (ExecutionException e) {
+                        logger.error("Cannot import group '{}' in realm '{}'", pendingGroup.getKey(), realm, e.getCause());
+                        failedGroupNames.add(pendingGroup.getKey());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ImportProcessingException("Interrupted while importing groups of realm '" + realm + "'", e);
+            } finally {
+                executor.shutdownNow();
+            }
+
+            if (!failedGroupNames.isEmpty()) {
+                throw new ImportProcessingException("Cannot import groups " + failedGroupNames + " in realm '" + realm + "'");
+            }
         }
-    }
 
-    private void addClientRoles(String realm, GroupRepresentation existingGroup) {
-        Map<String, List<String>> existingClientRoles = existingGroup.getClientRoles();
-        String groupId = existingGroup.getId();
+        /**
+         * Creates all not existing groups inclusive their subgroups and role mappings in bulk, if enabled
+         *
+         * @return the names of the created groups
+         */
+        private Set<String> createMissingGroups(List<GroupRepresentation> groups, List<GroupRepresentation> existingGroups) {
+            if (!partialImportRepository.isEnabled()) {
+                return Collections.emptySet();
+            }
 
-        if (existingClientRoles != null && !existingClientRoles.isEmpty()) {
-            for (Map.Entry<String, List<String>> existingClientRolesEntry : existingClientRoles.entrySet()) {
-                String clientId = existingClientRolesEntry.getKey();
-                List<String> clientRoleNames = existingClientRolesEntry.getValue();
+            List<GroupRepresentation> missingGroups = groups.stream()
+                    .filter(group -> !hasGroupWithName(existingGroups, group.getName()))
+                    .collect(Collectors.toList());
 
-                groupRepository.addClientRoles(realm, groupId, clientId, clientRoleNames);
+            if (missingGroups.isEmpty()) {
+                return Collections.emptySet();
             }
-        }
-    }
 
-    private void addSubGroups(String realm, GroupRepresentation existingGroup) {
-        List<GroupRepresentation> subGroups = existingGroup.getSubGroups();
-        String groupId = existingGroup.getId();
+            Set<String> createdGroupNames = partialImportRepository.createGroups(realm, missingGroups);
+            importReport.created(createdGroupNames.size());
 
-        if (subGroups != null && !subGroups.isEmpty()) {
-            for (GroupRepresentation subGroup : subGroups) {
-                addSubGroup(realm, groupId, subGroup);
-            }
+            return createdGroupNames;
         }
-    }
 
-    public void addSubGroup(String realm, String parentGroupId, GroupRepresentation subGroup) {
-        groupRepository.addSubGroup(realm, parentGroupId, subGroup);
+        private void deleteGroupsMissingInImport(List<GroupRepresentation> groups, List<GroupRepresentation> existingGroups) {
+            for (GroupRepresentation existingGroup : existingGroups) {
+                if (!hasGroupWithName(groups, existingGroup.getName())) {
+                    logger.debug("Delete group '{}' in realm '{}'", existingGroup.getName(), realm);
+                    groupRepository.deleteGroup(realm, existingGroup.getId());
+                    importReport.deleted();
+                }
+            }
+        }
 
-        GroupRepresentation existingSubGroup = groupRepository.getSubGroupByName(realm, parentGroupId, subGroup.getName());
-        GroupRepresentation patchedGroup = CloneUtils.patch(existingSubGroup, subGroup);
+        private void deleteAllExistingGroups(List<GroupRepresentation> existingGroups) {
+            for (GroupRepresentation existingGroup : existingGroups) {
+                logger.debug("Delete group '{}' in realm '{}'", existingGroup.getName(), realm);
+                groupRepository.deleteGroup(realm, existingGroup.getId());
+                importReport.deleted();
+            }
+        }
 
-        addRealmRoles(realm, patchedGroup);
-        addClientRoles(realm, patchedGroup);
-        addSubGroups(realm, patchedGroup);
-    }
+        private void createOrUpdateRealmGroup(GroupRepresentation group, SectionReport section) {
+            String groupName = group.getName();
 
-    private void updateGroupIfNecessary(String realm, GroupRepresentation group) {
-        GroupRepresentation existingGroup = groupRepository.getGroupByName(realm, group.getName());
-        GroupRepresentation patchedGroup = CloneUtils.patch(existingGroup, group);
-        String groupName = existingGroup.getName();
+            Optional<GroupRepresentation> maybeGroup = groupRepository.tryToFindGroupByName(realm, groupName);
 
-        if (CloneUtils.deepEquals(existingGroup, patchedGroup)) {
-            logger.debug("No need to update group '{}' in realm '{}'", groupName, realm);
-        } else {
-            logger.debug("Update group '{}' in realm '{}'", groupName, realm);
-            updateGroup(realm, group, patchedGroup);
+            if (maybeGroup.isPresent()) {
+                updateGroupIfNecessary(group, section);
+            } else {
+                logger.debug("Create group '{}' in realm '{}'", groupName, realm);
+                createGroup(group);
+                section.created();
+            }
         }
-    }
 
-    private void updateGroup(String realm, GroupRepresentation group, GroupRepresentation patchedGroup) {
-        groupRepository.update(realm, patchedGroup);
+        private void createGroup(GroupRepresentation group) {
+            groupRepository.createGroup(realm, group);
 
-        String groupId = patchedGroup.getId();
+            GroupRepresentation existingGroup = groupRepository.getGroupByName(realm, group.getName());
 
-        List<String> realmRoles = group.getRealmRoles();
-        if (realmRoles != null) {
-            updateGroupRealmRoles(realm, groupId, realmRoles);
+            updateRoleMappings(existingGroup, group);
+            addSubGroups(existingGroup.getId(), group.getSubGroups());
         }
 
-        Map<String, List<String>> clientRoles = group.getClientRoles();
-        if (clientRoles != null) {
-            updateGroupClientRoles(realm, groupId, clientRoles);
-        }
-
-        List<GroupRepresentation> subGroups = group.getSubGroups();
-        if (subGroups != null) {
-            updateSubGroups(realm, patchedGroup.getId(), subGroups);
+        private void addSubGroups(String groupId, List<GroupRepresentation> subGroups) {
+            if (subGroups != null && !subGroups.isEmpty()) {
+                for (GroupRepresentation subGroup : subGroups) {
+                    addSubGroup(groupId, subGroup);
+                }
+            }
         }
-    }
-
-    private void updateGroupRealmRoles(String realm, String groupId, List<String> realmRoles) {
-        GroupRepresentation existingGroup = groupRepository.getGroupById(realm, groupId);
 
-        List<String> existingRealmRolesNames = existingGroup.getRealmRoles();
+        private void addSubGroup(String parentGroupId, GroupRepresentation subGroup) {
+            groupRepository.addSubGroup(realm, parentGroupId, subGroup);
 
-        List<String> realmRoleNamesToAdd = estimateRealmRolesToAdd(realmRoles, existingRealmRolesNames);
-        List<String> realmRoleNamesToRemove = estimateRealmRolesToRemove(realmRoles, existingRealmRolesNames);
+            GroupRepresentation existingSubGroup = groupRepository.getSubGroupByName(realm, parentGroupId, subGroup.getName());
 
-        groupRepository.addRealmRoles(realm, groupId, realmRoleNamesToAdd);
-        groupRepository.removeRealmRoles(realm, groupId, realmRoleNamesToRemove);
-    }
+            updateRoleMappings(existingSubGroup, subGroup);
+            addSubGroups(existingSubGroup.getId(), subGroup.getSubGroups());
+        }
 
-    private List<String> estimateRealmRolesToRemove(List<String> realmRoles, List<String> existingRealmRolesNames) {
-        List<String> realmRoleNamesToRemove = new ArrayList<>();
+        private void updateGroupIfNecessary(GroupRepresentation group, SectionReport section) {
+            GroupRepresentation existingGroup = groupRepository.getGroupByName(realm, group.getName());
+            GroupRepresentation patchedGroup = CloneUtils.patch(existingGroup, group);
+            String groupName = existingGroup.getName();
 
-        for (String existingRealmRolesName : existingRealmRolesNames) {
-            if (!realmRoles.contains(existingRealmRolesName)) {
-                realmRoleNamesToRemove.add(existingRealmRolesName);
+            if (CloneUtils.deepEquals(existingGroup, patchedGroup)) {
+                logger.debug("No need to update group '{}' in realm '{}'", groupName, realm);
+                section.unchanged();
+            } else {
+                logger.debug("Update group '{}' in realm '{}'", groupName, realm);
+                updateGroup(group, existingGroup, patchedGroup);
+                section.updated();
             }
         }
 
-        return realmRoleNamesToRemove;
-    }
+        private void updateGroup(GroupRepresentation group, GroupRepresentation existingGroup, GroupRepresentation patchedGroup) {
+            groupRepository.update(realm, patchedGroup);
 
-    private List<String> estimateRealmRolesToAdd(List<String> realmRoles, List<String> existingRealmRolesNames) {
-        List<String> realmRoleNamesToAdd = new ArrayList<>();
+            updateRoleMappings(existingGroup, group);
 
-        for (String realmRoleName : realmRoles) {
-            if (!existingRealmRolesNames.contains(realmRoleName)) {
-                realmRoleNamesToAdd.add(realmRoleName);
+            List<GroupRepresentation> subGroups = group.getSubGroups();
+            if (subGroups != null) {
+                updateSubGroups(patchedGroup.getId(), subGroups);
             }
         }
 
-        return realmRoleNamesToAdd;
-    }
-
-    private void updateGroupClientRoles(String realm, String groupId, Map<String, List<String>> groupClientRoles) {
-        GroupRepresentation existingGroup = groupRepository.getGroupById(realm, groupId);
+        private void updateSubGroups(String parentGroupId, List<GroupRepresentation> subGroups) {
+            GroupRepresentation existingGroup = groupRepository.getGroupById(realm, parentGroupId);
+            List<GroupRepresentation> existingSubGroups = existingGroup.getSubGroups();
 
-        Map<String, List<String>> existingClientRoleNames = existingGroup.getClientRoles();
+            deleteAllSubGroupsMissingInImport(subGroups, existingSubGroups);
 
-        deleteClientRolesMissingInImport(realm, groupId, existingClientRoleNames, groupClientRoles);
-        updateClientRoles(realm, groupId, existingClientRoleNames, groupClientRoles);
-    }
-
-    private void updateClientRoles(
-            String realm,
-            String groupId,
-            Map<String, List<String>> existingClientRoleNames,
-            Map<String, List<String>> groupClientRoles
-    ) {
-        for (Map.Entry<String, List<String>> clientRole : groupClientRoles.entrySet()) {
-            String clientId = clientRole.getKey();
-            List<String> clientRoleNames = clientRole.getValue();
+            for (GroupRepresentation subGroup : subGroups) {
+                if (!hasGroupWithName(existingSubGroups, subGroup.getName())) {
+                    addSubGroup(parentGroupId, subGroup);
+                } else {
+                    updateSubGroupIfNecessary(parentGroupId, subGroup);
+                }
+            }
+        }
 
-            List<String> existingClientRoleNamesForClient = existingClientRoleNames.get(clientId);
+        private void deleteAllSubGroupsMissingInImport(List<GroupRepresentation> subGroups, List<GroupRepresentation> existingSubGroups) {
+            for (GroupRepresentation existingSubGroup : existingSubGroups) {
+                if (!hasGroupWithName(subGroups, existingSubGroup.getName())) {
+                    groupRepository.deleteGroup(realm, existingSubGroup.getId());
+                }
+            }
+        }
 
-            List<String> clientRoleNamesToAdd = estimateClientRolesToAdd(existingClientRoleNamesForClient, clientRoleNames);
-            List<String> clientRoleNamesToRemove = estimateClientRolesToRemove(existingClientRoleNamesForClient, clientRoleNames);
+        private void updateSubGroupIfNecessary(String parentGroupId, GroupRepresentation subGroup) {
+            String subGroupName = subGroup.getName();
+            GroupRepresentation existingSubGroup = groupRepository.getSubGroupByName(realm, parentGroupId, subGroupName);
 
-            groupRepository.addClientRoles(realm, groupId, clientId, clientRoleNamesToAdd);
-            groupRepository.removeClientRoles(realm, groupId, clientId, clientRoleNamesToRemove);
-        }
-    }
+            GroupRepresentation patchedSubGroup = CloneUtils.patch(existingSubGroup, subGroup);
 
-    private void deleteClientRolesMissingInImport(
-            String realm,
-            String groupId,
-            Map<String, List<String>> existingClientRoleNames,
-            Map<String, List<String>> groupClientRoles
-    ) {
-        for (Map.Entry<String, List<String>> existingClientRoleNamesEntry : existingClientRoleNames.entrySet()) {
-            String clientId = existingClientRoleNamesEntry.getKey();
-            List<String> clientRoleNames = existingClientRoleNamesEntry.getValue();
+            if (CloneUtils.deepEquals(existingSubGroup, patchedSubGroup)) {
+                logger.debug("No need to update subGroup '{}' in group with id '{}' in realm '{}'", subGroupName, parentGroupId, realm);
+            } else {
+                logger.debug("Update subGroup '{}' in group with id '{}' in realm '{}'", subGroupName, parentGroupId, realm);
 
-            if (!clientRoleNames.isEmpty() && !groupClientRoles.containsKey(clientId)) {
-                groupRepository.removeClientRoles(realm, groupId, clientId, clientRoleNames);
+                updateGroup(subGroup, existingSubGroup, patchedSubGroup);
             }
         }
-    }
 
-    private List<String> estimateClientRolesToRemove(List<String> existingClientRoleNamesForClient, List<String> clientRoleNamesFromImport) {
-        List<String> clientRoleNamesToRemove = new ArrayList<>();
+        /**
+         * Computes the complete role mapping delta of the group first and sends one add and one remove request per
+         * role container afterwards. Containers without any changes will not cause any request.
+         */
+        private void updateRoleMappings(GroupRepresentation existingGroup, GroupRepresentation group) {
+            RoleMappingDelta delta = new RoleMappingDelta(existingGroup, group);
 
-        if (existingClientRoleNamesForClient != null) {
-            for (String existingClientRoleNameForClient : existingClientRoleNamesForClient) {
-                if (!clientRoleNamesFromImport.contains(existingClientRoleNameForClient)) {
-                    clientRoleNamesToRemove.add(existingClientRoleNameForClient);
-                }
+            if (delta.isEmpty()) {
+                logger.trace("No need to update role mappings of group '{}' in realm '{}'", existingGroup.getName(), realm);
+            } else {
+                applyRealmRoleMappings(existingGroup, delta);
+                applyClientRoleMappings(existingGroup, delta);
             }
         }
 
-        return clientRoleNamesToRemove;
-    }
+        private void applyRealmRoleMappings(GroupRepresentation existingGroup, RoleMappingDelta delta) {
+            String groupId = existingGroup.getId();
 
-    private List<String> estimateClientRolesToAdd(List<String> existingClientRoleNamesForClient, List<String> clientRoleNamesFromImport) {
-        List<String> clientRoleNamesToAdd = new ArrayList<>();
+            if (!delta.realmRolesToAdd.isEmpty()) {
+                logger.debug("Add realm-level roles {} to group '{}' in realm '{}'", delta.realmRolesToAdd, existingGroup.getName(), realm);
+                groupRepository.addRealmRoles(realm, groupId, roleCatalog.findRealmRoles(delta.realmRolesToAdd));
+            }
 
-        for (String clientRoleName : clientRoleNamesFromImport) {
-            if (existingClientRoleNamesForClient == null || !existingClientRoleNamesForClient.contains(clientRoleName)) {
-                clientRoleNamesToAdd.add(clientRoleName);
+            if (!delta.realmRolesToRemove.isEmpty()) {
+                logger.debug("Remove realm-level roles {} from group '{}' in realm '{}'", delta.realmRolesToRemove, existingGroup.getName(), realm);
+                groupRepository.removeRealmRoles(realm, groupId, roleCatalog.findRealmRoles(delta.realmRolesToRemove));
             }
         }
 
-        return clientRoleNamesToAdd;
-    }
-
-    private void updateSubGroups(String realm, String parentGroupId, List<GroupRepresentation> subGroups) {
-        GroupRepresentation existingGroup = groupRepository.getGroupById(realm, parentGroupId);
-        List<GroupRepresentation> existingSubGroups = existingGroup.getSubGroups();
+        private void applyClientRoleMappings(GroupRepresentation existingGroup, RoleMappingDelta delta) {
+            String groupId = existingGroup.getId();
 
-        deleteAllSubGroupsMissingInImport(realm, subGroups, existingSubGroups);
+            for (Map.Entry<String, List<String>> clientRolesToAdd : delta.clientRolesToAdd.entrySet()) {
+                String clientId = clientRolesToAdd.getKey();
+                ClientRepresentation client = roleCatalog.findClient(clientId);
 
-        for (GroupRepresentation subGroup : subGroups) {
-            if (!hasGroupWithName(existingSubGroups, subGroup.getName())) {
-                addSubGroup(realm, parentGroupId, subGroup);
-            } else {
-                updateSubGroupIfNecessary(realm, parentGroupId, subGroup);
+                logger.debug("Add client-level roles {} for client '{}' to group '{}' in realm '{}'", clientRolesToAdd.getValue(), clientId, existingGroup.getName(), realm);
+                groupRepository.addClientRoles(realm, groupId, client, roleCatalog.findClientRoles(clientId, clientRolesToAdd.getValue()));
             }
-        }
-    }
 
-    private void deleteAllSubGroupsMissingInImport(String realm, List<GroupRepresentation> subGroups, List<GroupRepresentation> existingSubGroups) {
-        for (GroupRepresentation existingSubGroup : existingSubGroups) {
-            if (!hasGroupWithName(subGroups, existingSubGroup.getName())) {
-                groupRepository.deleteGroup(realm, existingSubGroup.getId());
+            for (Map.Entry<String, List<String>> clientRolesToRemove : delta.clientRolesToRemove.entrySet()) {
+                String clientId = clientRolesToRemove.getKey();
+                ClientRepresentation client = roleCatalog.findClient(clientId);
+
+                logger.debug("Remove client-level roles {} for client '{}' from group '{}' in realm '{}'", clientRolesToRemove.getValue(), clientId, existingGroup.getName(), realm);
+                groupRepository.removeClientRoles(realm, groupId, client, roleCatalog.findClientRoles(clientId, clientRolesToRemove.getValue()));
             }
         }
     }
 
-    public void updateSubGroupIfNecessary(String realm, String parentGroupId, GroupRepresentation subGroup) {
-        String subGroupName = subGroup.getName();
-        GroupRepresentation existingSubGroup = groupRepository.getSubGroupByName(realm, parentGroupId, subGroupName);
+    /**
+     * The realm-level and client-level role names which have to be added to or removed from a group. Omitted
+     * `realmRoles` or `clientRoles` properties in the import will leave the existing role mappings untouched.
+     */
+    private static class RoleMappingDelta {
+        private final List<String> realmRolesToAdd;
+        private final List<String> realmRolesToRemove;
+        private final Map<String, List<String>> clientRolesToAdd = new HashMap<>();
+        private final Map<String, List<String>> clientRolesToRemove = new HashMap<>();
+
+        private RoleMappingDelta(GroupRepresentation existingGroup, GroupRepresentation group) {
+            List<String> realmRoles = group.getRealmRoles();
+
+            if (realmRoles != null) {
+                realmRolesToAdd = searchForMissingRoles(realmRoles, existingGroup.getRealmRoles());
+                realmRolesToRemove = searchForMissingRoles(existingGroup.getRealmRoles(), realmRoles);
+            } else {
+                realmRolesToAdd = Collections.emptyList();
+                realmRolesToRemove = Collections.emptyList();
+            }
 
-        GroupRepresentation patchedSubGroup = CloneUtils.patch(existingSubGroup, subGroup);
+            Map<String, List<String>> clientRoles = group.getClientRoles();
 
-        if (CloneUtils.deepEquals(existingSubGroup, patchedSubGroup)) {
-            logger.debug("No need to update subGroup '{}' in group with id '{}' in realm '{}'", subGroupName, parentGroupId, realm);
-        } else {
-            logger.debug("Update subGroup '{}' in group with id '{}' in realm '{}'", subGroupName, parentGroupId, realm);
+            if (clientRoles != null) {
+                Map<String, List<String>> existingClientRoles = Optional.ofNullable(existingGroup.getClientRoles())
+                        .orElse(Collections.emptyMap());
 
-            updateSubGroup(realm, subGroup, patchedSubGroup);
-        }
-    }
-
-    private void updateSubGroup(String realm, GroupRepresentation subGroup, GroupRepresentation patchedSubGroup) {
-        groupRepository.update(realm, patchedSubGroup);
+                for (Map.Entry<String, List<String>> existingClientRolesEntry : existingClientRoles.entrySet()) {
+                    if (!clientRoles.containsKey(existingClientRolesEntry.getKey())) {
+                        putIfNotEmpty(clientRolesToRemove, existingClientRolesEntry.getKey(), searchForMissingRoles(existingClientRolesEntry.getValue(), null));
+                    }
+                }
 
-        String subGroupId = patchedSubGroup.getId();
+                for (Map.Entry<String, List<String>> clientRolesEntry : clientRoles.entrySet()) {
+                    String clientId = clientRolesEntry.getKey();
+                    List<String> existingClientRoleNames = existingClientRoles.get(clientId);
 
-        List<String> realmRoles = subGroup.getRealmRoles();
-        if (realmRoles != null) {
-            updateGroupRealmRoles(realm, subGroupId, realmRoles);
+                    putIfNotEmpty(clientRolesToAdd, clientId, searchForMissingRoles(clientRolesEntry.getValue(), existingClientRoleNames));
+                    putIfNotEmpty(clientRolesToRemove, clientId, searchForMissingRoles(existingClientRoleNames, clientRolesEntry.getValue()));
+                }
+            }
         }
 
-        Map<String, List<String>> clientRoles = subGroup.getClientRoles();
-        if (clientRoles != null) {
-            updateGroupClientRoles(realm, subGroupId, clientRoles);
+        private boolean isEmpty() {
+            return realmRolesToAdd.isEmpty()
+                    && realmRolesToRemove.isEmpty()
+                    && clientRolesToAdd.isEmpty()
+                    && clientRolesToRemove.isEmpty();
         }
 
-        List<GroupRepresentation> subGroups = subGroup.getSubGroups();
-        if (subGroups != null) {
-            updateSubGroups(realm, subGroupId, subGroups);
+        private static void putIfNotEmpty(Map<String, List<String>> rolesPerClient, String clientId, List<String> roleNames) {
+            if (!roleNames.isEmpty()) {
+                rolesPerClient.put(clientId, roleNames);
+            }
         }
     }
 }
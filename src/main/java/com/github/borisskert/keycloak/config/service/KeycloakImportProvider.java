@@ -1,23 +1,57 @@
 package com.github.borisskert.keycloak.config.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.borisskert.keycloak.config.exception.InvalidImportException;
 import com.github.borisskert.keycloak.config.model.KeycloakImport;
 import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.model.RealmImportShard;
+import com.github.borisskert.keycloak.config.model.UserImport;
+import com.github.borisskert.keycloak.config.model.UserSpillSettings;
+import com.github.borisskert.keycloak.config.service.checksum.ChecksumOutputStream;
 import com.github.borisskert.keycloak.config.service.checksum.ChecksumService;
+import com.github.borisskert.keycloak.config.service.format.ImportFormat;
+import com.github.borisskert.keycloak.config.service.format.ImportFormats;
+import com.github.borisskert.keycloak.config.util.StringPool;
 import org.apache.logging.log4j.util.Strings;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
+/**
+ * Reads the realm imports from the import file or the import directory. Every file in the import directory is a
+ * realm import on its own, every sub-directory contains one realm which is spread over several files (like
+ * `realm.json`, `users-0001.json`, `users-0002.json`). The files of a sub-directory are merged into one realm import:
+ * objects are merged and arrays are concatenated in the order of the file names. The format of every file is chosen
+ * by its file extension (see {@link ImportFormats}).
+ * <p>
+ * All files of the import directory are read and checksummed concurrently by `import.load-parallelism` threads, the
+ * realm imports are ordered by their file names and all invalid files are reported at once.
+ * <p>
+ * The users of a realm import containing more than `import.spill-users-threshold` users (default: `10000`, `0`
+ * disables spilling) are spilled to a temporary file in `import.spill-directory` while reading the import.
+ */
 @Component
 public class KeycloakImportProvider {
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakImportProvider.class);
 
     @Value("${import.path:#{null}}")
     private String importDirectoryPath;
@@ -25,15 +59,27 @@ public class KeycloakImportProvider {
     @Value("${import.file:#{null}}")
     private String importFilePath;
 
+    @Value("${import.load-parallelism:#{4}}")
+    private Integer loadParallelism;
+
+    @Value("${import.spill-users-threshold:#{10000}}")
+    private Integer spillUsersThreshold;
+
+    @Value("${import.spill-directory:#{null}}")
+    private String spillDirectory;
+
+    private final ImportFormats importFormats;
+
     private final ObjectMapper objectMapper;
 
     private final ChecksumService checksumService;
 
     public KeycloakImportProvider(
-            @Qualifier("json") ObjectMapper objectMapper,
+            ImportFormats importFormats,
             ChecksumService checksumService
     ) {
-        this.objectMapper = objectMapper;
+        this.importFormats = importFormats;
+        this.objectMapper = importFormats.json().getObjectMapper();
         this.checksumService = checksumService;
     }
 
@@ -78,14 +124,114 @@ public class KeycloakImportProvider {
     }
 
     public KeycloakImport readRealmImportsFromDirectory(File importFilesDirectory) {
-        Map<String, RealmImport> realmImports = Optional.ofNullable(importFilesDirectory.listFiles())
+        long startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(loadParallelism);
+
+        try {
+            Map<String, RealmImport> realmImports = readRealmImports(executor, listFilesSortedByName(importFilesDirectory, file -> true));
+
+            logger.debug(
+                    "Read {} realm imports from '{}' in {} ms",
+                    realmImports.size(),
+                    importFilesDirectory,
+                    (System.nanoTime() - startTime) / 1_000_000
+            );
+
+            return new KeycloakImport(realmImports);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits all files (inclusive the files of the sub-directories) before any realm is merged, so the merging never
+     * waits for files queued behind itself.
+     */
+    private Map<String, RealmImport> readRealmImports(ExecutorService executor, List<File> importFiles) {
+        List<String> errors = new ArrayList<>();
+
+        Map<String, Future<RealmImport>> pendingRealmImports = new LinkedHashMap<>();
+        Map<File, List<Future<ParsedShard>>> pendingShards = new LinkedHashMap<>();
+
+        for (File importFile : importFiles) {
+            if (importFile.isDirectory()) {
+                pendingShards.put(importFile, submitShards(executor, importFile));
+            } else {
+                pendingRealmImports.put(importFile.getName(), executor.submit(() -> readRealmImport(importFile)));
+            }
+        }
+
+        for (Map.Entry<File, List<Future<ParsedShard>>> shards : pendingShards.entrySet()) {
+            File realmDirectory = shards.getKey();
+            List<ParsedShard> parsedShards = awaitShards(realmDirectory, shards.getValue(), errors);
+
+            if (parsedShards != null) {
+                pendingRealmImports.put(realmDirectory.getName(), executor.submit(() -> mergeShards(realmDirectory, parsedShards)));
+            }
+        }
+
+        Map<String, RealmImport> realmImports = new TreeMap<>();
+
+        for (Map.Entry<String, Future<RealmImport>> pendingRealmImport : pendingRealmImports.entrySet()) {
+            await(pendingRealmImport.getKey(), pendingRealmImport.getValue(), errors)
+                    .ifPresent(realmImport -> realmImports.put(pendingRealmImport.getKey(), realmImport));
+        }
+
+        if (!errors.isEmpty()) {
+            throw new InvalidImportException("Cannot read " + errors.size() + " import file(s):\n" + String.join("\n", errors));
+        }
+
+        return realmImports;
+    }
+
+    /**
+     * @return the parsed shards or null if any shard could not be read
+     */
+    private List<ParsedShard> awaitShards(File realmDirectory, List<Future<ParsedShard>> pendingShards, List<String> errors) {
+        if (pendingShards.isEmpty()) {
+            errors.add(realmDirectory.getName() + ": does not contain any import file");
+            return null;
+        }
+
+        List<ParsedShard> parsedShards = new ArrayList<>();
+        boolean hasErrors = false;
+
+        for (Future<ParsedShard> pendingShard : pendingShards) {
+            Optional<ParsedShard> parsedShard = await(realmDirectory.getName(), pendingShard, errors);
+
+            if (parsedShard.isPresent()) {
+                parsedShards.add(parsedShard.get());
+            } else {
+                hasErrors = true;
+            }
+        }
+
+        return hasErrors ? null : parsedShards;
+    }
+
+    private <T> Optional<T> await(String filename, Future<T> pending, List<String> errors) {
+        try {
+            return Optional.of(pending.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvalidImportException("Interrupted while reading import files", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof InvalidImportException && e.getCause().getCause() != null
+                    ? e.getCause().getCause()
+                    : e.getCause();
+
+            errors.add(filename + ": " + cause.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private List<File> listFilesSortedByName(File directory, FileFilter filter) {
+        return Optional.ofNullable(directory.listFiles(filter))
                 .map(Arrays::asList)
                 .orElse(Collections.emptyList())
                 .stream()
-                .filter(File::isFile)
-                .collect(Collectors.toMap(File::getName, this::readRealmImport));
-
-        return new KeycloakImport(realmImports);
+                .sorted(Comparator.comparing(File::getName))
+                .collect(Collectors.toList());
     }
 
     private KeycloakImport readRealmImportFromFile(File importFile) {
@@ -99,20 +245,31 @@ public class KeycloakImportProvider {
         return new KeycloakImport(realmImports);
     }
 
-    private RealmImport readRealmImport(File importFile) {
+    public RealmImport readRealmImport(File importFile) {
         RealmImport realmImport = readToRealmImport(importFile);
 
         String checksum = calculateChecksum(importFile);
         realmImport.setChecksum(checksum);
 
+        buildIndices(realmImport);
+
         return realmImport;
     }
 
+    /**
+     * Builds the lookup tables of the realm import while reading the files, so any dangling reference is reported
+     * before the import sends any request to keycloak
+     */
+    private void buildIndices(RealmImport realmImport) {
+        realmImport.getAuthenticationFlowIndex();
+    }
+
     private RealmImport readToRealmImport(File importFile) {
         RealmImport realmImport;
+        ObjectMapper formatObjectMapper = importFormats.forFile(importFile).getObjectMapper();
 
         try {
-            realmImport = objectMapper.readValue(importFile, RealmImport.class);
+            realmImport = createRealmImportReader(formatObjectMapper).readValue(importFile);
         } catch (IOException e) {
             throw new InvalidImportException(e);
         }
@@ -120,20 +277,182 @@ public class KeycloakImportProvider {
         return realmImport;
     }
 
+    /**
+     * Every user of a huge realm import repeats the same role names, client-ids, attribute keys and groups, so these
+     * values are canonicalized to one instance per realm import while reading, see {@link UserImport}
+     */
+    private ObjectReader createRealmImportReader(ObjectMapper formatObjectMapper) {
+        ObjectReader reader = formatObjectMapper.readerFor(RealmImport.class)
+                .withAttribute(StringPool.class, new StringPool());
+
+        if (spillUsersThreshold == null || spillUsersThreshold <= 0) {
+            return reader;
+        }
+
+        File directory = Strings.isBlank(spillDirectory) ? null : new File(spillDirectory);
+        return reader.withAttribute(UserSpillSettings.class, new UserSpillSettings(spillUsersThreshold, directory));
+    }
+
+    /**
+     * JSON files are checksummed as they are, so the checksums stay the same as before there have been other formats.
+     * Files of any other format are checksummed by their content written as compact JSON, so the checksum does not
+     * depend on the format the content is encoded in.
+     */
     private String calculateChecksum(File importFile) {
-        byte[] importFileInBytes = readRealmImportToBytes(importFile);
-        return checksumService.checksum(importFileInBytes);
+        ImportFormat format = importFormats.forFile(importFile);
+
+        try {
+            if (format.isJson()) {
+                return checksumService.checksum(importFile.toPath());
+            }
+
+            return calculateContentChecksum(importFile, format);
+        } catch (UncheckedIOException e) {
+            throw new InvalidImportException(e.getCause());
+        } catch (IOException e) {
+            throw new InvalidImportException(e);
+        }
+    }
+
+    private String calculateContentChecksum(File importFile, ImportFormat format) throws IOException {
+        ChecksumOutputStream checksumStream = checksumService.createOutputStream();
+
+        try (
+                JsonParser parser = format.getObjectMapper().getFactory().createParser(importFile);
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(checksumStream)
+        ) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+
+        return checksumStream.getChecksum();
     }
 
-    private byte[] readRealmImportToBytes(File importFile) {
-        byte[] importFileInBytes;
+    /**
+     * Reads all files of the directory concurrently and merges them into one realm import
+     */
+    public RealmImport readShardedRealmImport(File realmDirectory) {
+        ExecutorService executor = Executors.newFixedThreadPool(loadParallelism);
 
         try {
-            importFileInBytes = Files.readAllBytes(importFile.toPath());
+            return readRealmImports(executor, Collections.singletonList(realmDirectory))
+                    .get(realmDirectory.getName());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Future<ParsedShard>> submitShards(ExecutorService executor, File realmDirectory) {
+        return listFilesSortedByName(realmDirectory, File::isFile)
+                .stream()
+                .map(shardFile -> executor.submit(() -> readShard(shardFile)))
+                .collect(Collectors.toList());
+    }
+
+    private RealmImport mergeShards(File realmDirectory, List<ParsedShard> parsedShards) {
+        ObjectNode mergedRealm = objectMapper.createObjectNode();
+        for (ParsedShard parsedShard : parsedShards) {
+            mergeShard(parsedShard.name, mergedRealm, parsedShard.content, "");
+        }
+
+        RealmImport realmImport = toRealmImport(realmDirectory, mergedRealm);
+        realmImport.setShards(createShards(parsedShards, realmImport.getUsers()));
+        realmImport.setChecksum(calculateShardedChecksum(parsedShards));
+
+        buildIndices(realmImport);
+
+        return realmImport;
+    }
+
+    private ParsedShard readShard(File shardFile) {
+        JsonNode content;
+
+        try {
+            content = importFormats.forFile(shardFile).getObjectMapper().readTree(shardFile);
         } catch (IOException e) {
             throw new InvalidImportException(e);
         }
 
-        return importFileInBytes;
+        if (content == null || !content.isObject()) {
+            throw new InvalidImportException("Does not contain a realm: " + shardFile);
+        }
+
+        return new ParsedShard(shardFile.getName(), calculateChecksum(shardFile), (ObjectNode) content);
+    }
+
+    private void mergeShard(String shardName, ObjectNode target, ObjectNode shard, String path) {
+        Iterator<Map.Entry<String, JsonNode>> fields = shard.fields();
+
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode existingValue = target.get(field.getKey());
+            JsonNode value = field.getValue();
+
+            if (existingValue == null) {
+                target.set(field.getKey(), value);
+            } else if (existingValue.isObject() && value.isObject()) {
+                mergeShard(shardName, (ObjectNode) existingValue, (ObjectNode) value, path + field.getKey() + ".");
+            } else if (existingValue.isArray() && value.isArray()) {
+                ((ArrayNode) existingValue).addAll((ArrayNode) value);
+            } else if (!existingValue.equals(value)) {
+                throw new InvalidImportException("Shard '" + shardName + "' redefines '" + path + field.getKey() + "'");
+            }
+        }
+    }
+
+    private RealmImport toRealmImport(File realmDirectory, ObjectNode mergedRealm) {
+        try {
+            return createRealmImportReader(objectMapper).readValue(objectMapper.treeAsTokens(mergedRealm));
+        } catch (IOException e) {
+            throw new InvalidImportException("Cannot read realm from directory: " + realmDirectory, e);
+        }
+    }
+
+    /**
+     * The users of the merged realm are in the order of the shards, so every shard gets its slice of the users
+     */
+    private List<RealmImportShard> createShards(List<ParsedShard> parsedShards, List<UserRepresentation> users) {
+        List<RealmImportShard> shards = new ArrayList<>();
+        int firstUser = 0;
+
+        for (ParsedShard parsedShard : parsedShards) {
+            int lastUser = firstUser + parsedShard.userCount;
+            List<UserRepresentation> usersOfShard = users == null ? Collections.emptyList() : users.subList(firstUser, lastUser);
+
+            shards.add(new RealmImportShard(parsedShard.name, parsedShard.checksum, parsedShard.sections, usersOfShard));
+            firstUser = lastUser;
+        }
+
+        return shards;
+    }
+
+    private String calculateShardedChecksum(List<ParsedShard> parsedShards) {
+        StringBuilder shardChecksums = new StringBuilder();
+
+        for (ParsedShard parsedShard : parsedShards) {
+            shardChecksums.append(parsedShard.name).append('\t').append(parsedShard.checksum).append('\n');
+        }
+
+        return checksumService.checksum(shardChecksums.toString());
+    }
+
+    private static class ParsedShard {
+        private final String name;
+        private final String checksum;
+        private final ObjectNode content;
+        private final Set<String> sections;
+        private final int userCount;
+
+        private ParsedShard(String name, String checksum, ObjectNode content) {
+            this.name = name;
+            this.checksum = checksum;
+            this.content = content;
+            this.sections = new HashSet<>();
+            content.fieldNames().forEachRemaining(sections::add);
+
+            JsonNode users = content.get("users");
+            this.userCount = users != null && users.isArray() ? users.size() : 0;
+        }
     }
 }
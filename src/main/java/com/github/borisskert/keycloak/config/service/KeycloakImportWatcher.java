@@ -0,0 +1,240 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.github.borisskert.keycloak.config.exception.InvalidImportException;
+import com.github.borisskert.keycloak.config.model.KeycloakImport;
+import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.service.format.ImportFormats;
+import org.apache.logging.log4j.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the import file or the import directory and re-imports every changed file as long as the application is
+ * running. A change of any file within a sub-directory of the import directory, including its removal, re-imports the
+ * realm of the whole sub-directory. Only files with the extension of a known import format are watched, so editor swap
+ * or backup files are ignored. A removed import file or realm directory keeps its realm as it is. All changes are
+ * collected until no further change has been detected within the debounce time, so a burst of changes (like a
+ * `git pull`) will cause only one import per changed file.
+ */
+@Component
+public class KeycloakImportWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakImportWatcher.class);
+
+    @Value("${import.path:#{null}}")
+    private String importDirectoryPath;
+
+    @Value("${import.file:#{null}}")
+    private String importFilePath;
+
+    @Value("${import.watch-debounce:#{500}}")
+    private Long debounceInMillis;
+
+    private final KeycloakImportProvider keycloakImportProvider;
+    private final RealmImportService realmImportService;
+    private final ImportFormats importFormats;
+
+    @Autowired
+    public KeycloakImportWatcher(
+            KeycloakImportProvider keycloakImportProvider,
+            RealmImportService realmImportService,
+            ImportFormats importFormats
+    ) {
+        this.keycloakImportProvider = keycloakImportProvider;
+        this.realmImportService = realmImportService;
+        this.importFormats = importFormats;
+    }
+
+    /**
+     * Blocks until the current thread is interrupted
+     */
+    public void watch() throws IOException {
+        Path watchedDirectory = getWatchedDirectory();
+
+        try (WatchService watchService = newWatchService()) {
+            register(watchService, watchedDirectory);
+            registerRealmDirectories(watchService, watchedDirectory);
+            logger.info("Watching '{}' for changed import files...", watchedDirectory);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changedFiles = new LinkedHashSet<>();
+                boolean hasOverflow = collectChangedFiles(watchService, watchService.take(), watchedDirectory, changedFiles);
+
+                WatchKey nextWatchKey;
+                while ((nextWatchKey = watchService.poll(debounceInMillis, TimeUnit.MILLISECONDS)) != null) {
+                    hasOverflow |= collectChangedFiles(watchService, nextWatchKey, watchedDirectory, changedFiles);
+                }
+
+                if (hasOverflow) {
+                    importAllFiles();
+                } else {
+                    importChangedFiles(changedFiles);
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.info("Stop watching '{}'", watchedDirectory);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Path getWatchedDirectory() {
+        if (Strings.isNotBlank(importFilePath)) {
+            return Paths.get(importFilePath).toAbsolutePath().getParent();
+        } else if (Strings.isNotBlank(importDirectoryPath)) {
+            return Paths.get(importDirectoryPath).toAbsolutePath();
+        } else {
+            throw new InvalidImportException("Either 'import.path' or 'import.file' has to be defined");
+        }
+    }
+
+    private void registerRealmDirectories(WatchService watchService, Path watchedDirectory) throws IOException {
+        if (Strings.isNotBlank(importFilePath)) {
+            return;
+        }
+
+        try (DirectoryStream<Path> realmDirectories = Files.newDirectoryStream(watchedDirectory, Files::isDirectory)) {
+            for (Path realmDirectory : realmDirectories) {
+                register(watchService, realmDirectory);
+            }
+        }
+    }
+
+    /**
+     * @return true if events have been lost, so we don't know which files have been changed
+     */
+    private boolean collectChangedFiles(
+            WatchService watchService,
+            WatchKey watchKey,
+            Path watchedDirectory,
+            Set<Path> changedFiles
+    ) {
+        Path directory = (Path) watchKey.watchable();
+        boolean hasOverflow = false;
+
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                hasOverflow = true;
+                continue;
+            }
+
+            Path changedFile = directory.resolve((Path) event.context());
+
+            if (!directory.equals(watchedDirectory)) {
+                // any change of a shard within a realm directory, including its removal, re-imports the whole realm
+                if (isImportFile(changedFile, event.kind())) {
+                    changedFiles.add(directory);
+                }
+            } else if (event.kind() == ENTRY_DELETE) {
+                if (isImportFile(changedFile, event.kind())) {
+                    logger.info("Import file '{}' has been removed, its realm is kept as it is", changedFile);
+                }
+            } else if (isRealmDirectory(changedFile)) {
+                hasOverflow |= registerRealmDirectory(watchService, changedFile);
+                changedFiles.add(changedFile);
+            } else if (isImportFile(changedFile, event.kind())) {
+                changedFiles.add(changedFile);
+            }
+        }
+
+        watchKey.reset();
+
+        return hasOverflow;
+    }
+
+    /**
+     * @return true if the directory cannot be watched, so we may miss changes
+     */
+    private boolean registerRealmDirectory(WatchService watchService, Path realmDirectory) {
+        try {
+            register(watchService, realmDirectory);
+            return false;
+        } catch (IOException e) {
+            logger.warn("Cannot watch directory '{}'", realmDirectory, e);
+            return true;
+        }
+    }
+
+    WatchService newWatchService() throws IOException {
+        return FileSystems.getDefault().newWatchService();
+    }
+
+    void register(WatchService watchService, Path directory) throws IOException {
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+    }
+
+    private boolean isRealmDirectory(Path file) {
+        return Strings.isBlank(importFilePath) && Files.isDirectory(file);
+    }
+
+    /**
+     * A removed file cannot be checked to be a regular file anymore, so it is only checked by its name
+     */
+    private boolean isImportFile(Path file, WatchEvent.Kind<?> kind) {
+        if (kind != ENTRY_DELETE && !Files.isRegularFile(file)) {
+            return false;
+        }
+
+        if (Strings.isNotBlank(importFilePath)) {
+            return file.equals(Paths.get(importFilePath).toAbsolutePath());
+        }
+
+        return importFormats.hasKnownFileExtension(file.toFile());
+    }
+
+    private void importAllFiles() {
+        logger.info("Lost track of changed files, re-importing all files");
+
+        try {
+            KeycloakImport keycloakImport = keycloakImportProvider.get();
+
+            for (Map.Entry<String, RealmImport> realmImport : keycloakImport.getRealmImports().entrySet()) {
+                importRealm(realmImport.getKey(), realmImport.getValue());
+            }
+        } catch (RuntimeException e) {
+            logger.error("Cannot re-import files", e);
+        }
+    }
+
+    private void importChangedFiles(Set<Path> changedFiles) {
+        for (Path changedFile : changedFiles) {
+            File importFile = changedFile.toFile();
+
+            // like a realm directory removed after the removal of its shards
+            if (!importFile.exists()) {
+                logger.info("Changed file '{}' has been removed, its realm is kept as it is", changedFile);
+                continue;
+            }
+
+            try {
+                RealmImport realmImport = importFile.isDirectory()
+                        ? keycloakImportProvider.readShardedRealmImport(importFile)
+                        : keycloakImportProvider.readRealmImport(importFile);
+                importRealm(importFile.getName(), realmImport);
+            } catch (RuntimeException e) {
+                logger.error("Cannot import changed file '{}'", changedFile, e);
+            }
+        }
+    }
+
+    private void importRealm(String filename, RealmImport realmImport) {
+        logger.info("Importing realm '{}' from changed file '{}'", realmImport.getRealm(), filename);
+
+        try {
+            realmImportService.doImport(realmImport);
+        } catch (RuntimeException e) {
+            logger.error("Cannot import realm '{}' from file '{}'", realmImport.getRealm(), filename, e);
+        }
+    }
+}
@@ -1,9 +1,22 @@
 package com.github.borisskert.keycloak.config.service;
 
 import com.github.borisskert.keycloak.config.KeycloakImportProperties;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import com.github.borisskert.keycloak.config.service.http.KeycloakNodes;
+import com.github.borisskert.keycloak.config.service.http.LoadBalancingHttpEngine;
+import com.github.borisskert.keycloak.config.service.http.RequestCountingFilter;
+import com.github.borisskert.keycloak.config.service.http.RequestStatistics;
+import com.github.borisskert.keycloak.config.service.http.TracingFilter;
+import com.github.borisskert.keycloak.config.service.trace.Tracer;
 import org.apache.http.client.utils.URIBuilder;
+import org.jboss.resteasy.client.jaxrs.ClientHttpEngine;
+import org.jboss.resteasy.client.jaxrs.ClientHttpEngineBuilder43;
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
 import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.KeycloakBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.net.URISyntaxException;
@@ -16,16 +29,33 @@ import java.net.URISyntaxException;
 public class KeycloakProvider {
 
     private final KeycloakImportProperties properties;
+    private final RequestStatistics requestStatistics;
+    private final Tracer tracer;
+    private final KeycloakNodes keycloakNodes;
+    private final ImportExecutors importExecutors;
+
+    @Value("${keycloak.connection-pool-size:#{10}}")
+    private Integer connectionPoolSize;
 
     private Keycloak keycloak;
     private boolean isClosed = true;
 
     @Autowired
-    public KeycloakProvider(KeycloakImportProperties properties) {
+    public KeycloakProvider(
+            KeycloakImportProperties properties,
+            RequestStatistics requestStatistics,
+            Tracer tracer,
+            KeycloakNodes keycloakNodes,
+            ImportExecutors importExecutors
+    ) {
         this.properties = properties;
+        this.requestStatistics = requestStatistics;
+        this.tracer = tracer;
+        this.keycloakNodes = keycloakNodes;
+        this.importExecutors = importExecutors;
     }
 
-    public Keycloak get() {
+    public synchronized Keycloak get() {
         if (keycloak == null || isClosed) {
             keycloak = createKeycloak(properties);
             isClosed = false;
@@ -34,7 +64,7 @@ public class KeycloakProvider {
         return keycloak;
     }
 
-    public void close() {
+    public synchronized void close() {
         if (!isClosed && keycloak != null) {
             keycloak.close();
         }
@@ -45,13 +75,48 @@ public class KeycloakProvider {
     private Keycloak createKeycloak(
             KeycloakImportProperties properties
     ) {
-        return Keycloak.getInstance(
-                buildUri(properties.getUrl()),
-                properties.getRealm(),
-                properties.getUser(),
-                properties.getPassword(),
-                properties.getClientId()
-        );
+        return KeycloakBuilder.builder()
+                .serverUrl(buildUri(keycloakNodes.getUrl()))
+                .realm(properties.getRealm())
+                .username(properties.getUser())
+                .password(properties.getPassword())
+                .clientId(properties.getClientId())
+                .resteasyClient(createResteasyClient())
+                .build();
+    }
+
+    /**
+     * Same client as created by {@link Keycloak#getInstance}, but every request is counted and traced and, with
+     * several keycloak nodes, spread over the nodes
+     */
+    private ResteasyClient createResteasyClient() {
+        int poolSize = getConnectionPoolSize();
+
+        ResteasyClientBuilder builder = new ResteasyClientBuilder()
+                .connectionPoolSize(poolSize)
+                .maxPooledPerRoute(poolSize)
+                .register(new RequestCountingFilter(requestStatistics))
+                .register(new TracingFilter(tracer));
+
+        if (keycloakNodes.isBalanced()) {
+            ClientHttpEngine engine = new ClientHttpEngineBuilder43().resteasyClientBuilder(builder).build();
+            builder.httpEngine(new LoadBalancingHttpEngine(engine, keycloakNodes));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Every admin request needs a pooled connection, so the pool limits the concurrent requests. With virtual threads
+     * the pool is enlarged to `import.virtual-threads-max-concurrency`, otherwise most virtual threads would only wait
+     * for a connection.
+     */
+    int getConnectionPoolSize() {
+        if (importExecutors.useVirtualThreads()) {
+            return Math.max(connectionPoolSize, importExecutors.getMaxConcurrency());
+        }
+
+        return connectionPoolSize;
     }
 
     private String buildUri(String baseUri) {
@@ -0,0 +1,232 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.borisskert.keycloak.config.exception.ExportProcessingException;
+import com.github.borisskert.keycloak.config.repository.RealmRepository;
+import com.github.borisskert.keycloak.config.repository.UserRepository;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import org.keycloak.representations.idm.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Exports a realm into a file which can be imported by keycloak-tool again. The realm is exported by keycloak's
+ * partial-export, the users are loaded page by page concurrently and are written into the file directly, so only a
+ * limited number of pages is held in memory at once.
+ * <p>
+ * Keycloak masks the client secrets within a partial export. The masked secrets are removed from the export, so
+ * importing the exported file keeps the current client secrets instead of setting them to the mask.
+ */
+@Service
+public class RealmExportService {
+    private static final Logger logger = LoggerFactory.getLogger(RealmExportService.class);
+
+    private static final String MASKED_SECRET = "**********";
+
+    private final RealmRepository realmRepository;
+    private final UserRepository userRepository;
+    private final ImportExecutors importExecutors;
+    private final ObjectMapper objectMapper;
+
+    @Value("${export.page-size:#{100}}")
+    private Integer pageSize;
+
+    @Value("${export.parallelism:#{4}}")
+    private Integer parallelism;
+
+    @Autowired
+    public RealmExportService(
+            RealmRepository realmRepository,
+            UserRepository userRepository,
+            ImportExecutors importExecutors,
+            @Qualifier("json") ObjectMapper objectMapper
+    ) {
+        this.realmRepository = realmRepository;
+        this.userRepository = userRepository;
+        this.importExecutors = importExecutors;
+        this.objectMapper = objectMapper.copy()
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    public void doExport(String realm, File exportFile) {
+        logger.debug("Exporting realm '{}' into '{}'...", realm, exportFile);
+
+        RealmRepresentation exportedRealm = realmRepository.partialExport(realm);
+
+        ObjectNode exportedRealmAsNode = objectMapper.valueToTree(exportedRealm);
+        exportedRealmAsNode.remove("users");
+        removeMaskedClientSecrets(exportedRealmAsNode);
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(exportFile, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+
+            Iterator<Map.Entry<String, JsonNode>> fields = exportedRealmAsNode.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+
+                generator.writeFieldName(field.getKey());
+                objectMapper.writeTree(generator, field.getValue());
+            }
+
+            generator.writeArrayFieldStart("users");
+            long exportedUsers = writeUsers(realm, generator);
+            generator.writeEndArray();
+
+            generator.writeEndObject();
+
+            logger.debug("Exported realm '{}' with {} users into '{}'", realm, exportedUsers, exportFile);
+        } catch (IOException e) {
+            throw new ExportProcessingException("Cannot export realm '" + realm + "' into '" + exportFile + "'", e);
+        }
+    }
+
+    private void removeMaskedClientSecrets(ObjectNode exportedRealm) {
+        for (JsonNode client : exportedRealm.path("clients")) {
+            if (MASKED_SECRET.equals(client.path("secret").asText())) {
+                ((ObjectNode) client).remove("secret");
+            }
+        }
+    }
+
+    /**
+     * Loads up to {@link #parallelism} pages concurrently and writes them in their order. With a non-blocking user
+     * repository the role mappings and groups of all users of these pages are loaded concurrently, too.
+     */
+    private long writeUsers(String realm, JsonGenerator generator) throws IOException {
+        ExecutorService executor = importExecutors.newExecutor(parallelism);
+        Deque<Future<List<UserRepresentation>>> pendingPages = new ArrayDeque<>();
+
+        long exportedUsers = 0;
+        int nextFirst = 0;
+        boolean isLastPageReached = false;
+
+        try {
+            while (true) {
+                while (!isLastPageReached && pendingPages.size() < parallelism) {
+                    int first = nextFirst;
+                    pendingPages.add(
+                            userRepository.isNonBlocking()
+                                    ? loadUsersAsync(realm, first)
+                                    : executor.submit(() -> loadUsers(realm, first))
+                    );
+                    nextFirst += pageSize;
+                }
+
+                if (pendingPages.isEmpty()) {
+                    break;
+                }
+
+                List<UserRepresentation> users = awaitPage(realm, pendingPages.poll());
+
+                for (UserRepresentation user : users) {
+                    objectMapper.writeValue(generator, user);
+                }
+
+                exportedUsers += users.size();
+                isLastPageReached |= users.size() < pageSize;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return exportedUsers;
+    }
+
+    private List<UserRepresentation> awaitPage(String realm, Future<List<UserRepresentation>> page) {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExportProcessingException("Interrupted while exporting users of realm '" + realm + "'", e);
+        } catch (ExecutionException e) {
+            throw new ExportProcessingException("Cannot export users of realm '" + realm + "'", e.getCause());
+        }
+    }
+
+    private List<UserRepresentation> loadUsers(String realm, int first) {
+        logger.trace("Load users {} to {} of realm '{}'", first, first + pageSize, realm);
+
+        List<UserRepresentation> users = userRepository.getUsers(realm, first, pageSize);
+
+        for (UserRepresentation user : users) {
+            setupRoleMappings(realm, user);
+            setupGroups(realm, user);
+        }
+
+        return users;
+    }
+
+    private CompletableFuture<List<UserRepresentation>> loadUsersAsync(String realm, int first) {
+        logger.trace("Load users {} to {} of realm '{}'", first, first + pageSize, realm);
+
+        return userRepository.getUsersAsync(realm, first, pageSize)
+                .thenCompose(users -> {
+                    CompletableFuture<?>[] pendingUsers = users.stream()
+                            .map(user -> CompletableFuture.allOf(
+                                    userRepository.getRoleMappingsAsync(realm, user.getId())
+                                            .thenAccept(roleMappings -> setupRoleMappings(user, roleMappings)),
+                                    userRepository.getGroupsAsync(realm, user.getId())
+                                            .thenAccept(groups -> setupGroups(user, groups))
+                            ))
+                            .toArray(CompletableFuture[]::new);
+
+                    return CompletableFuture.allOf(pendingUsers)
+                            .thenApply(ignored -> users);
+                });
+    }
+
+    private void setupRoleMappings(String realm, UserRepresentation user) {
+        setupRoleMappings(user, userRepository.getRoleMappings(realm, user.getId()));
+    }
+
+    private void setupRoleMappings(UserRepresentation user, MappingsRepresentation roleMappings) {
+        List<RoleRepresentation> realmMappings = Optional.ofNullable(roleMappings.getRealmMappings())
+                .orElse(Collections.emptyList());
+        user.setRealmRoles(toRoleNames(realmMappings));
+
+        Map<String, ClientMappingsRepresentation> clientMappings = Optional.ofNullable(roleMappings.getClientMappings())
+                .orElse(Collections.emptyMap());
+
+        Map<String, List<String>> clientRoles = new HashMap<>();
+        for (ClientMappingsRepresentation clientMapping : clientMappings.values()) {
+            clientRoles.put(clientMapping.getClient(), toRoleNames(clientMapping.getMappings()));
+        }
+
+        user.setClientRoles(clientRoles);
+    }
+
+    private void setupGroups(String realm, UserRepresentation user) {
+        setupGroups(user, userRepository.getGroups(realm, user.getId()));
+    }
+
+    private void setupGroups(UserRepresentation user, List<GroupRepresentation> groups) {
+        List<String> groupPaths = groups.stream()
+                .map(GroupRepresentation::getPath)
+                .collect(Collectors.toList());
+
+        user.setGroups(groupPaths);
+    }
+
+    private List<String> toRoleNames(List<RoleRepresentation> roles) {
+        return roles.stream()
+                .map(RoleRepresentation::getName)
+                .collect(Collectors.toList());
+    }
+}
@@ -1,8 +1,17 @@
 package com.github.borisskert.keycloak.config.service;
 
 import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.model.RealmImportShard;
 import com.github.borisskert.keycloak.config.repository.RealmRepository;
+import com.github.borisskert.keycloak.config.repository.RealmWriteBuffer;
+import com.github.borisskert.keycloak.config.service.journal.ImportJournal;
+import com.github.borisskert.keycloak.config.service.report.ImportReport;
+import com.github.borisskert.keycloak.config.service.report.RealmReport;
+import com.github.borisskert.keycloak.config.service.report.SectionReport;
+import com.github.borisskert.keycloak.config.service.trace.Span;
+import com.github.borisskert.keycloak.config.service.trace.Tracer;
 import com.github.borisskert.keycloak.config.util.CloneUtils;
+import org.apache.logging.log4j.util.Strings;
 import org.keycloak.representations.idm.RealmRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,13 +19,28 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
+import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 public class RealmImportService {
     private static final Logger logger = LoggerFactory.getLogger(RealmImportService.class);
 
     private static final String REALM_CHECKSUM_ATTRIBUTE_KEY = "com.github.borisskert.keycloak.config.import-checksum";
+    private static final String SHARD_CHECKSUM_ATTRIBUTE_KEY_PREFIX = REALM_CHECKSUM_ATTRIBUTE_KEY + ".";
+
+    /**
+     * A changed shard containing nothing else than these properties can be imported without importing the whole realm
+     */
+    private static final Set<String> SEPARATELY_IMPORTABLE_SHARD_SECTIONS = new HashSet<>(Arrays.asList("realm", "users"));
+
+    /**
+     * A new realm is empty, so keycloak can create these entities within the creation of the realm
+     */
+    private final String[] embeddedPropertiesForCreation = new String[]{
+            "users",
+            "groups"
+    };
 
     private final String[] ignoredPropertiesForCreation = new String[]{
             "users",
@@ -56,10 +80,12 @@ public class RealmImportService {
             "resetCredentialsFlow",
     };
 
-    private final KeycloakProvider keycloakProvider;
     private final RealmRepository realmRepository;
+    private final RealmWriteBuffer realmWriteBuffer;
+    private final ImportJournal importJournal;
 
     private final UserImportService userImportService;
+    private final UserPruningService userPruningService;
     private final RoleImportService roleImportService;
     private final ClientImportService clientImportService;
     private final GroupImportService groupImportService;
@@ -68,16 +94,23 @@ public class RealmImportService {
     private final RequiredActionsImportService requiredActionsImportService;
     private final CustomImportService customImportService;
     private final ScopeMappingImportService scopeMappingImportService;
+    private final Tracer tracer;
+    private final ImportReport importReport;
 
     @Value("${import.force:#{false}}")
     private Boolean forceImport;
 
+    @Value("${import.fresh-realm-fast-path:#{false}}")
+    private Boolean freshRealmFastPath;
+
 
     @Autowired
     public RealmImportService(
-            KeycloakProvider keycloakProvider,
             RealmRepository realmRepository,
+            RealmWriteBuffer realmWriteBuffer,
+            ImportJournal importJournal,
             UserImportService userImportService,
+            UserPruningService userPruningService,
             RoleImportService roleImportService,
             ClientImportService clientImportService,
             GroupImportService groupImportService,
@@ -85,11 +118,15 @@ public class RealmImportService {
             AuthenticationFlowsImportService authenticationFlowsImportService,
             RequiredActionsImportService requiredActionsImportService,
             CustomImportService customImportService,
-            ScopeMappingImportService scopeMappingImportService
+            ScopeMappingImportService scopeMappingImportService,
+            Tracer tracer,
+            ImportReport importReport
     ) {
-        this.keycloakProvider = keycloakProvider;
         this.realmRepository = realmRepository;
+        this.realmWriteBuffer = realmWriteBuffer;
+        this.importJournal = importJournal;
         this.userImportService = userImportService;
+        this.userPruningService = userPruningService;
         this.roleImportService = roleImportService;
         this.clientImportService = clientImportService;
         this.groupImportService = groupImportService;
@@ -98,39 +135,125 @@ public class RealmImportService {
         this.requiredActionsImportService = requiredActionsImportService;
         this.customImportService = customImportService;
         this.scopeMappingImportService = scopeMappingImportService;
+        this.tracer = tracer;
+        this.importReport = importReport;
     }
 
     public void doImport(RealmImport realmImport) {
-        boolean realmExists = realmRepository.exists(realmImport.getRealm());
+        try (
+                Span ignored = tracer.startSpan("import realm").setAttribute("realm", realmImport.getRealm());
+                RealmReport realmReport = importReport.startRealm(realmImport.getRealm())
+        ) {
+            boolean realmExists = realmRepository.exists(realmImport.getRealm());
 
-        if (realmExists) {
-            updateRealmIfNecessary(realmImport);
-        } else {
-            createRealm(realmImport);
+            try {
+                if (realmExists) {
+                    updateRealmIfNecessary(realmImport, realmReport);
+                } else {
+                    realmReport.setAction(RealmReport.ACTION_CREATED);
+                    createRealm(realmImport);
+                }
+            } finally {
+                realmWriteBuffer.discard(realmImport.getRealm());
+                importJournal.close(realmImport.getRealm());
+            }
         }
-
-        keycloakProvider.close();
     }
 
     private void createRealm(RealmImport realmImport) {
         logger.debug("Creating realm '{}' ...", realmImport.getRealm());
+        importJournal.open(realmImport.getRealm(), realmImport.getChecksum());
 
-        RealmRepresentation realmForCreation = CloneUtils.deepClone(realmImport, RealmRepresentation.class, ignoredPropertiesForCreation);
-        realmRepository.create(realmForCreation);
+        RealmRepresentation realmForCreation = createRealmForCreation(realmImport);
+        runPhase("create realm", realmImport, () -> realmRepository.create(realmForCreation));
 
-        userImportService.doImport(realmImport);
-        groupImportService.importGroups(realmImport);
-        authenticationFlowsImportService.doImport(realmImport);
+        if (freshRealmFastPath) {
+            reportEmbeddedEntities(realmForCreation);
+        }
+
+        // the groups have to exist before the users join them
+        if (!freshRealmFastPath) {
+            runPhase("groups", realmImport, () -> groupImportService.importGroups(realmImport));
+        }
+
+        // spilled users are not embedded into the realm to be created, see `RealmImport.getUsers()`
+        if (!freshRealmFastPath || realmImport.hasSpilledUsers()) {
+            runPhase("users", realmImport, () -> userImportService.doImport(realmImport));
+        }
+
+        runPhase("authentication flows", realmImport, () -> authenticationFlowsImportService.doImport(realmImport));
         setupFlows(realmImport);
-        componentImportService.doImport(realmImport);
-        customImportService.doImport(realmImport);
+        runPhase("components", realmImport, () -> componentImportService.doImport(realmImport));
+        runPhase("custom import", realmImport, () -> customImportService.doImport(realmImport));
         setupImportChecksum(realmImport);
+
+        runPhase("flush realm", realmImport, () -> realmWriteBuffer.flush(realmImport.getRealm()));
+        importJournal.complete(realmImport.getRealm());
     }
 
-    private void updateRealmIfNecessary(RealmImport realmImport) {
-        if (forceImport || hasToBeUpdated(realmImport)) {
+    /**
+     * With `import.fresh-realm-fast-path` the users and groups are embedded into the realm to be created, so keycloak
+     * creates them within one request instead of looking up and creating every entity on its own
+     */
+    private RealmRepresentation createRealmForCreation(RealmImport realmImport) {
+        if (!freshRealmFastPath) {
+            return CloneUtils.deepClone(realmImport, RealmRepresentation.class, ignoredPropertiesForCreation);
+        }
+
+        Set<String> ignoredProperties = new HashSet<>(Arrays.asList(ignoredPropertiesForCreation));
+        ignoredProperties.removeAll(Arrays.asList(embeddedPropertiesForCreation));
+
+        RealmRepresentation realmForCreation = CloneUtils.deepClone(
+                realmImport,
+                RealmRepresentation.class,
+                ignoredProperties.toArray(new String[0])
+        );
+
+        if (realmForCreation.getUsers() != null) {
+            realmForCreation.setUsers(userImportService.prepareForRealmCreation(realmForCreation.getUsers()));
+        }
+
+        return realmForCreation;
+    }
+
+    /**
+     * The users and groups embedded into the created realm are reported as created within their usual sections, the
+     * groups counted by top-level group like the groups section does
+     */
+    private void reportEmbeddedEntities(RealmRepresentation createdRealm) {
+        if (createdRealm.getGroups() != null) {
+            try (SectionReport ignored = importReport.startSection("groups")) {
+                importReport.created(createdRealm.getGroups().size());
+            }
+        }
+
+        if (createdRealm.getUsers() != null) {
+            try (SectionReport ignored = importReport.startSection("users")) {
+                importReport.created(createdRealm.getUsers().size());
+            }
+        }
+    }
+
+    private void updateRealmIfNecessary(RealmImport realmImport, RealmReport realmReport) {
+        RealmRepresentation existingRealm = realmRepository.get(realmImport.getRealm());
+        Map<String, String> existingAttributes = Optional.ofNullable(existingRealm.getAttributes())
+                .orElse(Collections.emptyMap());
+
+        if (forceImport) {
+            realmReport.setAction(RealmReport.ACTION_UPDATED);
             updateRealm(realmImport);
+        } else if (hasToBeUpdated(realmImport, existingAttributes)) {
+            List<RealmImportShard> changedShards = findChangedShards(realmImport, existingAttributes);
+
+            if (canBeImportedSeparately(realmImport, changedShards, existingAttributes)) {
+                realmReport.setAction(RealmReport.ACTION_UPDATED_SHARDS);
+                updateChangedShards(realmImport, changedShards);
+            } else {
+                realmReport.setAction(RealmReport.ACTION_UPDATED);
+                updateRealm(realmImport);
+            }
         } else {
+            realmReport.setAction(RealmReport.ACTION_SKIPPED);
             logger.debug(
                     "No need to update realm '{}', import checksum same: '{}'",
                     realmImport.getRealm(),
@@ -141,21 +264,126 @@ public class RealmImportService {
 
     private void updateRealm(RealmImport realmImport) {
         logger.debug("Updating realm '{}'...", realmImport.getRealm());
+        importJournal.open(realmImport.getRealm(), realmImport.getChecksum());
 
         RealmRepresentation realmToUpdate = CloneUtils.deepClone(realmImport, RealmRepresentation.class, ignoredPropertiesForUpdate);
-        realmRepository.update(realmToUpdate);
-
-        clientImportService.doImport(realmImport);
-        roleImportService.doImport(realmImport);
-        groupImportService.importGroups(realmImport);
-        userImportService.doImport(realmImport);
-        importRequiredActions(realmImport);
-        authenticationFlowsImportService.doImport(realmImport);
+        realmWriteBuffer.update(realmImport.getRealm(), existingRealm -> patchRealm(existingRealm, realmToUpdate));
+
+        // the realm settings (like password-policy) have to be stored before the import of the other entities
+        runPhase("update realm", realmImport, () -> realmWriteBuffer.flush(realmImport.getRealm()));
+
+        runPhase("clients", realmImport, () -> clientImportService.doImport(realmImport));
+        runPhase("roles", realmImport, () -> roleImportService.doImport(realmImport));
+        runPhase("groups", realmImport, () -> groupImportService.importGroups(realmImport));
+        runPhase("users", realmImport, () -> userImportService.doImport(realmImport));
+        runPhase("prune users", realmImport, () -> userPruningService.doPrune(realmImport));
+        runPhase("required actions", realmImport, () -> importRequiredActions(realmImport));
+        runPhase("authentication flows", realmImport, () -> authenticationFlowsImportService.doImport(realmImport));
         setupFlows(realmImport);
-        componentImportService.doImport(realmImport);
-        scopeMappingImportService.doImport(realmImport);
-        customImportService.doImport(realmImport);
+        runPhase("components", realmImport, () -> componentImportService.doImport(realmImport));
+        runPhase("scope mappings", realmImport, () -> scopeMappingImportService.doImport(realmImport));
+        runPhase("custom import", realmImport, () -> customImportService.doImport(realmImport));
         setupImportChecksum(realmImport);
+
+        runPhase("flush realm", realmImport, () -> realmWriteBuffer.flush(realmImport.getRealm()));
+        importJournal.complete(realmImport.getRealm());
+    }
+
+    /**
+     * Imports only the users of the changed shards, the rest of the realm is the same as within the previous import
+     */
+    private void updateChangedShards(RealmImport realmImport, List<RealmImportShard> changedShards) {
+        logger.debug(
+                "Updating users of changed shards {} in realm '{}'...",
+                changedShards.stream().map(RealmImportShard::getName).collect(Collectors.toList()),
+                realmImport.getRealm()
+        );
+        importJournal.open(realmImport.getRealm(), realmImport.getChecksum());
+
+        try (SectionReport ignored = importReport.startSection("users")) {
+            UserImportService.RealmUsersImport usersImport = userImportService.startImport(realmImport.getRealm());
+
+            for (RealmImportShard changedShard : changedShards) {
+                try (Span ignoredSpan = tracer.startSpan("users").setAttribute("realm", realmImport.getRealm()).setAttribute("shard", changedShard.getName())) {
+                    usersImport.importUsers(changedShard.getUsers());
+                }
+            }
+
+            try (Span ignoredSpan = tracer.startSpan("user groups").setAttribute("realm", realmImport.getRealm())) {
+                usersImport.importGroupMemberships();
+            }
+        }
+
+        runPhase("prune users", realmImport, () -> userPruningService.doPrune(realmImport));
+
+        setupImportChecksum(realmImport);
+
+        runPhase("flush realm", realmImport, () -> realmWriteBuffer.flush(realmImport.getRealm()));
+        importJournal.complete(realmImport.getRealm());
+    }
+
+    private List<RealmImportShard> findChangedShards(RealmImport realmImport, Map<String, String> existingAttributes) {
+        return realmImport.getShards()
+                .stream()
+                .filter(shard -> !shard.getChecksum().equals(existingAttributes.get(SHARD_CHECKSUM_ATTRIBUTE_KEY_PREFIX + shard.getName())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * A removed shard may have contained anything, so all shards of the previous import have to be still present
+     */
+    private boolean canBeImportedSeparately(
+            RealmImport realmImport,
+            List<RealmImportShard> changedShards,
+            Map<String, String> existingAttributes
+    ) {
+        if (realmImport.getShards().isEmpty() || changedShards.isEmpty()) {
+            return false;
+        }
+
+        Set<String> shardNames = realmImport.getShards()
+                .stream()
+                .map(RealmImportShard::getName)
+                .collect(Collectors.toSet());
+
+        boolean hasRemovedShards = existingAttributes.entrySet()
+                .stream()
+                .filter(attribute -> attribute.getKey().startsWith(SHARD_CHECKSUM_ATTRIBUTE_KEY_PREFIX))
+                .filter(attribute -> Strings.isNotEmpty(attribute.getValue()))
+                .map(attribute -> attribute.getKey().substring(SHARD_CHECKSUM_ATTRIBUTE_KEY_PREFIX.length()))
+                .anyMatch(shardName -> !shardNames.contains(shardName));
+
+        return !hasRemovedShards && changedShards.stream()
+                .allMatch(shard -> SEPARATELY_IMPORTABLE_SHARD_SECTIONS.containsAll(shard.getSections()));
+    }
+
+    /**
+     * Keycloak is merging the realm attributes while updating a realm, so we do the same here
+     */
+    private RealmRepresentation patchRealm(RealmRepresentation existingRealm, RealmRepresentation realmToUpdate) {
+        Map<String, String> attributes = new HashMap<>();
+
+        if (existingRealm.getAttributes() != null) {
+            attributes.putAll(existingRealm.getAttributes());
+        }
+
+        if (realmToUpdate.getAttributes() != null) {
+            attributes.putAll(realmToUpdate.getAttributes());
+        }
+
+        RealmRepresentation patchedRealm = CloneUtils.patch(existingRealm, realmToUpdate);
+        patchedRealm.setAttributes(attributes);
+
+        return patchedRealm;
+    }
+
+    private void runPhase(String phase, RealmImport realmImport, Runnable step) {
+        try (
+                Span ignoredSpan = tracer.startSpan(phase).setAttribute("realm", realmImport.getRealm());
+                SectionReport ignoredSection = importReport.startSection(phase)
+        ) {
+            step.run();
+        }
     }
 
     private void importRequiredActions(RealmImport realmImport) {
@@ -163,28 +391,40 @@ public class RealmImportService {
     }
 
     private void setupFlows(RealmImport realmImport) {
-        RealmRepresentation existingRealm = realmRepository.get(realmImport.getRealm());
-        RealmRepresentation realmToUpdate = CloneUtils.deepPatchFieldsOnly(existingRealm, realmImport, patchingPropertiesForFlowImport);
-
-        realmRepository.update(realmToUpdate);
+        realmWriteBuffer.update(
+                realmImport.getRealm(),
+                existingRealm -> CloneUtils.deepPatchFieldsOnly(existingRealm, realmImport, patchingPropertiesForFlowImport)
+        );
     }
 
-    private boolean hasToBeUpdated(RealmImport realmImport) {
-        RealmRepresentation existingRealm = realmRepository.get(realmImport.getRealm());
-        Map<String, String> customAttributes = existingRealm.getAttributes();
-        String readChecksum = customAttributes.get(REALM_CHECKSUM_ATTRIBUTE_KEY);
+    private boolean hasToBeUpdated(RealmImport realmImport, Map<String, String> existingAttributes) {
+        String readChecksum = existingAttributes.get(REALM_CHECKSUM_ATTRIBUTE_KEY);
 
         return !realmImport.getChecksum().equals(readChecksum);
     }
 
     private void setupImportChecksum(RealmImport realmImport) {
-        RealmRepresentation existingRealm = realmRepository.get(realmImport.getRealm());
-        Map<String, String> customAttributes = existingRealm.getAttributes();
-
         String importChecksum = realmImport.getChecksum();
-        customAttributes.put(REALM_CHECKSUM_ATTRIBUTE_KEY, importChecksum);
-        realmRepository.update(existingRealm);
 
-        logger.debug("Updated import checksum of realm '{}' to '{}'", realmImport.getRealm(), importChecksum);
+        realmWriteBuffer.update(realmImport.getRealm(), existingRealm -> {
+            Map<String, String> customAttributes = new HashMap<>();
+
+            if (existingRealm.getAttributes() != null) {
+                customAttributes.putAll(existingRealm.getAttributes());
+            }
+
+            customAttributes.put(REALM_CHECKSUM_ATTRIBUTE_KEY, importChecksum);
+
+            // keycloak never removes realm attributes, so the checksums of removed shards are cleared instead
+            customAttributes.replaceAll((key, value) -> key.startsWith(SHARD_CHECKSUM_ATTRIBUTE_KEY_PREFIX) ? "" : value);
+            for (RealmImportShard shard : realmImport.getShards()) {
+                customAttributes.put(SHARD_CHECKSUM_ATTRIBUTE_KEY_PREFIX + shard.getName(), shard.getChecksum());
+            }
+            existingRealm.setAttributes(customAttributes);
+
+            return existingRealm;
+        });
+
+        logger.debug("Set import checksum of realm '{}' to '{}'", realmImport.getRealm(), importChecksum);
     }
 }
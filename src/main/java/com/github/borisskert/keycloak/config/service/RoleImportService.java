@@ -1,119 +1,330 @@
 package com.github.borisskert.keycloak.config.service;
 
+import com.github.borisskert.keycloak.config.exception.KeycloakRepositoryException;
 import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.model.RolesImport;
+import com.github.borisskert.keycloak.config.repository.ClientRepository;
+import com.github.borisskert.keycloak.config.repository.PartialImportRepository;
 import com.github.borisskert.keycloak.config.repository.RoleRepository;
+import com.github.borisskert.keycloak.config.service.report.ImportReport;
 import com.github.borisskert.keycloak.config.service.rolecomposites.client.ClientRoleCompositeImportService;
 import com.github.borisskert.keycloak.config.service.rolecomposites.realm.RealmRoleCompositeImportService;
 import com.github.borisskert.keycloak.config.util.CloneUtils;
+import org.keycloak.representations.idm.ClientRepresentation;
 import org.keycloak.representations.idm.RoleRepresentation;
-import org.keycloak.representations.idm.RolesRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * Creates, updates and optionally deletes the realm-level and client-level roles of a realm. The realm-level roles and
+ * the client-level roles of every imported client are listed once, so the roles to create, update and delete are
+ * determined in memory. Missing roles are created in bulk by partial import if enabled.
+ */
 @Service
 public class RoleImportService {
     private static final Logger logger = LoggerFactory.getLogger(RoleImportService.class);
 
+    /**
+     * The composites of the roles are imported by the role-composite import services
+     */
+    private static final String[] IGNORED_PROPERTIES_FOR_UPDATE = {"composite", "composites"};
+
+    /**
+     * Realm-level roles created by keycloak for every realm
+     */
+    private static final Set<String> BUILT_IN_REALM_ROLES = new HashSet<>(Arrays.asList("offline_access", "uma_authorization"));
+
+    /**
+     * Realm-level roles created by keycloak for the master realm only, they grant the administration of all realms
+     */
+    private static final Set<String> BUILT_IN_MASTER_REALM_ROLES = new HashSet<>(Arrays.asList("admin", "create-realm"));
+
+    private static final String MASTER_REALM = "master";
+
+    /**
+     * The client of the master realm holding the roles to administrate another realm is named `<realm>-realm`
+     */
+    private static final String MASTER_REALM_MANAGEMENT_CLIENT_SUFFIX = "-realm";
+
+    /**
+     * Client-level roles created by keycloak to administrate a realm
+     */
+    private static final Set<String> REALM_MANAGEMENT_ROLES = new HashSet<>(Arrays.asList(
+            "realm-admin", "create-client", "impersonation",
+            "manage-authorization", "manage-clients", "manage-events", "manage-identity-providers", "manage-realm", "manage-users",
+            "query-clients", "query-groups", "query-realms", "query-users",
+            "view-authorization", "view-clients", "view-events", "view-identity-providers", "view-realm", "view-users"
+    ));
+
+    /**
+     * Client-level roles created by keycloak for the built-in clients of every realm
+     */
+    private static final Map<String, Set<String>> BUILT_IN_CLIENT_ROLES = new HashMap<>();
+
+    static {
+        BUILT_IN_CLIENT_ROLES.put("account", new HashSet<>(Arrays.asList(
+                "manage-account", "manage-account-links", "view-profile", "view-applications", "view-consent", "manage-consent"
+        )));
+        BUILT_IN_CLIENT_ROLES.put("broker", Collections.singleton("read-token"));
+        BUILT_IN_CLIENT_ROLES.put("realm-management", REALM_MANAGEMENT_ROLES);
+    }
+
     private final RealmRoleCompositeImportService realmRoleCompositeImport;
     private final ClientRoleCompositeImportService clientRoleCompositeImport;
 
     private final RoleRepository roleRepository;
+    private final ClientRepository clientRepository;
+    private final PartialImportRepository partialImportRepository;
+    private final ImportReport importReport;
+
+    @Value("${import.prune-roles:#{false}}")
+    private Boolean pruneRoles;
 
     @Autowired
     public RoleImportService(
             RealmRoleCompositeImportService realmRoleCompositeImportService,
             ClientRoleCompositeImportService clientRoleCompositeImportService,
-            RoleRepository roleRepository
+            RoleRepository roleRepository,
+            ClientRepository clientRepository,
+            PartialImportRepository partialImportRepository,
+            ImportReport importReport
     ) {
         this.realmRoleCompositeImport = realmRoleCompositeImportService;
         this.clientRoleCompositeImport = clientRoleCompositeImportService;
         this.roleRepository = roleRepository;
+        this.clientRepository = clientRepository;
+        this.partialImportRepository = partialImportRepository;
+        this.importReport = importReport;
     }
 
     public void doImport(RealmImport realmImport) {
-        createOrUpdateRealmRoles(realmImport);
-        createOrUpdateClientRoles(realmImport);
+        Set<String> realmRolesToDelete = createOrUpdateRealmRoles(realmImport);
+        Map<ClientRepresentation, Set<String>> clientRolesToDelete = createOrUpdateClientRoles(realmImport);
 
         realmRoleCompositeImport.update(realmImport);
         clientRoleCompositeImport.update(realmImport);
+
+        if (pruneRoles) {
+            deleteRealmRoles(realmImport.getRealm(), realmRolesToDelete);
+            deleteClientRoles(realmImport.getRealm(), clientRolesToDelete);
+        }
     }
 
-    private void createOrUpdateRealmRoles(RealmImport realmImport) {
-        RolesRepresentation roles = realmImport.getRoles();
-        List<RoleRepresentation> realmRoles = roles.getRealm();
+    /**
+     * @return the names of the existing realm-level roles which are not part of the import
+     */
+    private Set<String> createOrUpdateRealmRoles(RealmImport realmImport) {
+        String realm = realmImport.getRealm();
+        RolesImport roles = realmImport.getRoles();
+
+        Map<String, RoleRepresentation> existingRoles = byName(roleRepository.getRealmRoles(realm));
+        List<RoleRepresentation> missingRoles = new ArrayList<>();
+
+        for (RoleRepresentation role : roles.getRealm()) {
+            RoleRepresentation existingRole = existingRoles.remove(role.getName());
 
-        for (RoleRepresentation role : realmRoles) {
-            createOrUpdateRealmRole(realmImport, role);
+            if (existingRole == null) {
+                missingRoles.add(role);
+            } else {
+                updateRealmRoleIfNecessary(realm, existingRole, role);
+            }
         }
+
+        createRealmRoles(realm, missingRoles);
+
+        // a realm import without realm-level roles doesn't manage any realm-level roles
+        if (!roles.hasRealmRoles()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> rolesToDelete = new TreeSet<>(existingRoles.keySet());
+        rolesToDelete.removeAll(BUILT_IN_REALM_ROLES);
+
+        if (MASTER_REALM.equals(realm)) {
+            rolesToDelete.removeAll(BUILT_IN_MASTER_REALM_ROLES);
+        }
+
+        if (realmImport.getDefaultRoles() != null) {
+            rolesToDelete.removeAll(realmImport.getDefaultRoles());
+        }
+
+        return rolesToDelete;
     }
 
-    private void createOrUpdateRealmRole(RealmImport realmImport, RoleRepresentation role) {
-        String roleName = role.getName();
+    /**
+     * @return the names of the existing client-level roles which are not part of the import per imported client
+     */
+    private Map<ClientRepresentation, Set<String>> createOrUpdateClientRoles(RealmImport realmImport) {
         String realm = realmImport.getRealm();
+        Map<String, List<RoleRepresentation>> clientRolesPerClient = realmImport.getRoles().getClient();
 
-        Optional<RoleRepresentation> maybeRole = roleRepository.tryToFindRealmRole(realm, roleName);
+        Map<ClientRepresentation, Set<String>> rolesToDelete = new LinkedHashMap<>();
 
-        if (maybeRole.isPresent()) {
-            logger.debug("Update realm-level role '{}' in realm '{}'", roleName, realm);
-            updateRealmRole(realm, maybeRole.get(), role);
-        } else {
-            logger.debug("Create realm-level role '{}' in realm '{}'", roleName, realm);
-            roleRepository.createRealmRole(realm, role);
+        if (clientRolesPerClient.isEmpty()) {
+            return rolesToDelete;
         }
-    }
 
-    private void createOrUpdateClientRoles(RealmImport realmImport) {
-        RolesRepresentation roles = realmImport.getRoles();
-        Map<String, List<RoleRepresentation>> clientRolesPerClient = roles.getClient();
+        Map<String, ClientRepresentation> clients = clientRepository.getClients(realm)
+                .stream()
+                .collect(Collectors.toMap(ClientRepresentation::getClientId, Function.identity()));
 
         for (Map.Entry<String, List<RoleRepresentation>> clientRoles : clientRolesPerClient.entrySet()) {
-            createOrUpdateClientRoles(realmImport, clientRoles);
+            String clientId = clientRoles.getKey();
+            ClientRepresentation client = clients.get(clientId);
+
+            if (client == null) {
+                throw new KeycloakRepositoryException(
+                        "Cannot find client by clientId '" + clientId + "' within realm '" + realm + "'"
+                );
+            }
+
+            rolesToDelete.put(client, createOrUpdateClientRoles(realm, client, clientRoles.getValue()));
         }
+
+        return rolesToDelete;
     }
 
-    private void createOrUpdateClientRoles(RealmImport realmImport, Map.Entry<String, List<RoleRepresentation>> clientRolesForClient) {
-        String clientId = clientRolesForClient.getKey();
-        List<RoleRepresentation> clientRoles = clientRolesForClient.getValue();
+    private Set<String> createOrUpdateClientRoles(String realm, ClientRepresentation client, List<RoleRepresentation> clientRoles) {
+        Map<String, RoleRepresentation> existingRoles = byName(roleRepository.getClientRolesByClientId(realm, client.getId()));
+        List<RoleRepresentation> missingRoles = new ArrayList<>();
 
         for (RoleRepresentation role : clientRoles) {
-            createOrUpdateClientRole(realmImport, clientId, role);
+            RoleRepresentation existingRole = existingRoles.remove(role.getName());
+
+            if (existingRole == null) {
+                missingRoles.add(role);
+            } else {
+                updateClientRoleIfNecessary(realm, client, existingRole, role);
+            }
+        }
+
+        createClientRoles(realm, client, missingRoles);
+
+        Set<String> rolesToDelete = new TreeSet<>(existingRoles.keySet());
+        rolesToDelete.removeAll(getBuiltInClientRoles(realm, client.getClientId()));
+
+        if (client.getDefaultRoles() != null) {
+            rolesToDelete.removeAll(Arrays.asList(client.getDefaultRoles()));
         }
+
+        return rolesToDelete;
     }
 
-    private void createOrUpdateClientRole(RealmImport realmImport, String clientId, RoleRepresentation role) {
-        String roleName = role.getName();
-        String realm = realmImport.getRealm();
+    private static Set<String> getBuiltInClientRoles(String realm, String clientId) {
+        if (MASTER_REALM.equals(realm) && clientId.endsWith(MASTER_REALM_MANAGEMENT_CLIENT_SUFFIX)) {
+            return REALM_MANAGEMENT_ROLES;
+        }
 
-        Optional<RoleRepresentation> maybeRole = roleRepository.tryToFindClientRole(realmImport.getRealm(), clientId, roleName);
+        return BUILT_IN_CLIENT_ROLES.getOrDefault(clientId, Collections.emptySet());
+    }
 
-        if (maybeRole.isPresent()) {
-            updateClientRoleIfNecessary(realmImport.getRealm(), clientId, maybeRole.get(), role);
-        } else {
-            logger.debug("Create client-level role '{}' for client '{}' in realm '{}'", roleName, clientId, realm);
-            roleRepository.createClientRole(realmImport.getRealm(), clientId, role);
+    private void createRealmRoles(String realm, List<RoleRepresentation> missingRoles) {
+        Set<String> createdRoleNames = Collections.emptySet();
+
+        if (partialImportRepository.isEnabled() && !missingRoles.isEmpty()) {
+            createdRoleNames = partialImportRepository.createRealmRoles(realm, withoutComposites(missingRoles));
+            importReport.created(createdRoleNames.size());
+        }
+
+        for (RoleRepresentation role : missingRoles) {
+            if (!createdRoleNames.contains(role.getName())) {
+                logger.debug("Create realm-level role '{}' in realm '{}'", role.getName(), realm);
+                roleRepository.createRealmRole(realm, role);
+                importReport.created();
+            }
+        }
+    }
+
+    private void createClientRoles(String realm, ClientRepresentation client, List<RoleRepresentation> missingRoles) {
+        Set<String> createdRoleNames = Collections.emptySet();
+
+        if (partialImportRepository.isEnabled() && !missingRoles.isEmpty()) {
+            createdRoleNames = partialImportRepository.createClientRoles(realm, client.getClientId(), withoutComposites(missingRoles));
+            importReport.created(createdRoleNames.size());
+        }
+
+        for (RoleRepresentation role : missingRoles) {
+            if (!createdRoleNames.contains(role.getName())) {
+                logger.debug("Create client-level role '{}' for client '{}' in realm '{}'", role.getName(), client.getClientId(), realm);
+                roleRepository.createClientRoleByClientId(realm, client.getId(), role);
+                importReport.created();
+            }
         }
     }
 
-    private void updateRealmRole(String realm, RoleRepresentation existingRole, RoleRepresentation roleToImport) {
+    /**
+     * The composites may refer to roles which are not created yet, they are imported by the role-composite import
+     * services afterwards
+     */
+    private static List<RoleRepresentation> withoutComposites(List<RoleRepresentation> roles) {
+        return roles.stream()
+                .map(role -> {
+                    RoleRepresentation roleWithoutComposites = CloneUtils.deepClone(role);
+                    roleWithoutComposites.setComposite(false);
+                    roleWithoutComposites.setComposites(null);
+
+                    return roleWithoutComposites;
+                })
+                .collect(Collectors.toList());
+    }
+
+    private void updateRealmRoleIfNecessary(String realm, RoleRepresentation existingRole, RoleRepresentation roleToImport) {
         RoleRepresentation patchedRole = CloneUtils.deepPatch(existingRole, roleToImport);
-        roleRepository.updateRealmRole(realm, patchedRole);
+        String roleName = existingRole.getName();
+
+        if (CloneUtils.deepEquals(existingRole, patchedRole, IGNORED_PROPERTIES_FOR_UPDATE)) {
+            logger.debug("No need to update realm-level role '{}' in realm '{}'", roleName, realm);
+            importReport.unchanged();
+        } else {
+            logger.debug("Update realm-level role '{}' in realm '{}'", roleName, realm);
+            roleRepository.updateRealmRole(realm, patchedRole);
+            importReport.updated();
+        }
     }
 
-    private void updateClientRoleIfNecessary(String realm, String clientId, RoleRepresentation existingRole, RoleRepresentation roleToImport) {
+    private void updateClientRoleIfNecessary(String realm, ClientRepresentation client, RoleRepresentation existingRole, RoleRepresentation roleToImport) {
         RoleRepresentation patchedRole = CloneUtils.deepPatch(existingRole, roleToImport);
         String roleName = existingRole.getName();
 
-        if (CloneUtils.deepEquals(existingRole, patchedRole)) {
-            logger.debug("No need to update client-level role '{}' for client '{}' in realm '{}'", roleName, clientId, realm);
+        if (CloneUtils.deepEquals(existingRole, patchedRole, IGNORED_PROPERTIES_FOR_UPDATE)) {
+            logger.debug("No need to update client-level role '{}' for client '{}' in realm '{}'", roleName, client.getClientId(), realm);
+            importReport.unchanged();
         } else {
-            logger.debug("Update client-level role '{}' for client '{}' in realm '{}'", roleName, clientId, realm);
-            roleRepository.updateClientRole(realm, clientId, patchedRole);
+            logger.debug("Update client-level role '{}' for client '{}' in realm '{}'", roleName, client.getClientId(), realm);
+            roleRepository.updateClientRoleByClientId(realm, client.getId(), patchedRole);
+            importReport.updated();
+        }
+    }
+
+    private void deleteRealmRoles(String realm, Set<String> rolesToDelete) {
+        for (String roleName : rolesToDelete) {
+            logger.debug("Delete realm-level role '{}' in realm '{}'", roleName, realm);
+            roleRepository.deleteRealmRole(realm, roleName);
+            importReport.deleted();
+        }
+    }
+
+    private void deleteClientRoles(String realm, Map<ClientRepresentation, Set<String>> rolesToDeletePerClient) {
+        for (Map.Entry<ClientRepresentation, Set<String>> rolesToDelete : rolesToDeletePerClient.entrySet()) {
+            ClientRepresentation client = rolesToDelete.getKey();
+
+            for (String roleName : rolesToDelete.getValue()) {
+                logger.debug("Delete client-level role '{}' for client '{}' in realm '{}'", roleName, client.getClientId(), realm);
+                roleRepository.deleteClientRoleByClientId(realm, client.getId(), roleName);
+                importReport.deleted();
+            }
         }
     }
+
+    private static Map<String, RoleRepresentation> byName(List<RoleRepresentation> roles) {
+        return roles.stream()
+                .collect(Collectors.toMap(RoleRepresentation::getName, Function.identity()));
+    }
 }
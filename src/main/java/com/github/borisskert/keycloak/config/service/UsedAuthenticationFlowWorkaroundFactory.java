@@ -2,7 +2,7 @@ package com.github.borisskert.keycloak.config.service;
 
 import com.github.borisskert.keycloak.config.model.RealmImport;
 import com.github.borisskert.keycloak.config.repository.AuthenticationFlowRepository;
-import com.github.borisskert.keycloak.config.repository.RealmRepository;
+import com.github.borisskert.keycloak.config.repository.RealmWriteBuffer;
 import org.apache.logging.log4j.util.Strings;
 import org.keycloak.representations.idm.AuthenticationFlowRepresentation;
 import org.keycloak.representations.idm.RealmRepresentation;
@@ -18,12 +18,12 @@ import java.util.Optional;
 @Service
 public class UsedAuthenticationFlowWorkaroundFactory {
 
-    private final RealmRepository realmRepository;
+    private final RealmWriteBuffer realmWriteBuffer;
     private final AuthenticationFlowRepository authenticationFlowRepository;
 
     @Autowired
-    public UsedAuthenticationFlowWorkaroundFactory(RealmRepository realmRepository, AuthenticationFlowRepository authenticationFlowRepository) {
-        this.realmRepository = realmRepository;
+    public UsedAuthenticationFlowWorkaroundFactory(RealmWriteBuffer realmWriteBuffer, AuthenticationFlowRepository authenticationFlowRepository) {
+        this.realmWriteBuffer = realmWriteBuffer;
         this.authenticationFlowRepository = authenticationFlowRepository;
     }
 
@@ -56,7 +56,7 @@ public class UsedAuthenticationFlowWorkaroundFactory {
         }
 
         public void unuseTopLevelFlowIfNeeded(String topLevelFlowAlias) {
-            RealmRepresentation existingRealm = realmRepository.get(realmImport.getRealm());
+            RealmRepresentation existingRealm = realmWriteBuffer.get(realmImport.getRealm());
 
             unuseBrowserFlowIfNeeded(topLevelFlowAlias, existingRealm);
             unuseDirectGrantFlowIfNeeded(topLevelFlowAlias, existingRealm);
@@ -64,6 +64,9 @@ public class UsedAuthenticationFlowWorkaroundFactory {
             unuseDockerAuthenticationFlowIfNeeded(topLevelFlowAlias, existingRealm);
             unuseRegistrationFlowIfNeeded(topLevelFlowAlias, existingRealm);
             unuseResetCredentialsFlowIfNeeded(topLevelFlowAlias, existingRealm);
+
+            // the flow has to be unused in keycloak before it can be deleted
+            realmWriteBuffer.flush(realmImport.getRealm());
         }
 
         private void unuseBrowserFlowIfNeeded(String topLevelFlowAlias, RealmRepresentation existingRealm) {
@@ -113,8 +116,10 @@ public class UsedAuthenticationFlowWorkaroundFactory {
 
             browserFlow = existingRealm.getBrowserFlow();
 
-            existingRealm.setBrowserFlow(otherFlowAlias);
-            realmRepository.update(existingRealm);
+            realmWriteBuffer.update(realmImport.getRealm(), realm -> {
+                realm.setBrowserFlow(otherFlowAlias);
+                return realm;
+            });
         }
 
         private void unuseDirectGrantFlow(RealmRepresentation existingRealm) {
@@ -122,8 +127,10 @@ public class UsedAuthenticationFlowWorkaroundFactory {
 
             directGrantFlow = existingRealm.getDirectGrantFlow();
 
-            existingRealm.setDirectGrantFlow(otherFlowAlias);
-            realmRepository.update(existingRealm);
+            realmWriteBuffer.update(realmImport.getRealm(), realm -> {
+                realm.setDirectGrantFlow(otherFlowAlias);
+                return realm;
+            });
         }
 
         private void unuseClientAuthenticationFlow(RealmRepresentation existingRealm) {
@@ -131,8 +138,10 @@ public class UsedAuthenticationFlowWorkaroundFactory {
 
             clientAuthenticationFlow = existingRealm.getClientAuthenticationFlow();
 
-            existingRealm.setClientAuthenticationFlow(otherFlowAlias);
-            realmRepository.update(existingRealm);
+            realmWriteBuffer.update(realmImport.getRealm(), realm -> {
+                realm.setClientAuthenticationFlow(otherFlowAlias);
+                return realm;
+            });
         }
 
         private void unuseDockerAuthenticationFlow(RealmRepresentation existingRealm) {
@@ -140,8 +149,10 @@ public class UsedAuthenticationFlowWorkaroundFactory {
 
             dockerAuthenticationFlow = existingRealm.getDockerAuthenticationFlow();
 
-            existingRealm.setDockerAuthenticationFlow(otherFlowAlias);
-            realmRepository.update(existingRealm);
+            realmWriteBuffer.update(realmImport.getRealm(), realm -> {
+                realm.setDockerAuthenticationFlow(otherFlowAlias);
+                return realm;
+            });
         }
 
         private void unuseRegistrationFlow(RealmRepresentation existingRealm) {
@@ -149,8 +160,10 @@ public class UsedAuthenticationFlowWorkaroundFactory {
 
             registrationFlow = existingRealm.getRegistrationFlow();
 
-            existingRealm.setRegistrationFlow(otherFlowAlias);
-            realmRepository.update(existingRealm);
+            realmWriteBuffer.update(realmImport.getRealm(), realm -> {
+                realm.setRegistrationFlow(otherFlowAlias);
+                return realm;
+            });
         }
 
         private void unuseResetCredentialsFlow(RealmRepresentation existingRealm) {
@@ -158,8 +171,10 @@ public class UsedAuthenticationFlowWorkaroundFactory {
 
             resetCredentialsFlow = existingRealm.getResetCredentialsFlow();
 
-            existingRealm.setResetCredentialsFlow(otherFlowAlias);
-            realmRepository.update(existingRealm);
+            realmWriteBuffer.update(realmImport.getRealm(), realm -> {
+                realm.setResetCredentialsFlow(otherFlowAlias);
+                return realm;
+            });
         }
 
         private String searchTemporaryCreatedTopLevelFlowForReplacement() {
@@ -190,10 +205,13 @@ public class UsedAuthenticationFlowWorkaroundFactory {
 
         public void resetFlowIfNeeded() {
             if (hasToResetFlows()) {
-                RealmRepresentation existingRealm = realmRepository.get(realmImport.getRealm());
+                realmWriteBuffer.update(realmImport.getRealm(), existingRealm -> {
+                    resetFlows(existingRealm);
+                    return existingRealm;
+                });
 
-                resetFlows(existingRealm);
-                realmRepository.update(existingRealm);
+                // the temporary flow has to be unused in keycloak before it can be deleted
+                realmWriteBuffer.flush(realmImport.getRealm());
 
                 deleteTemporaryCreatedFlow();
             }
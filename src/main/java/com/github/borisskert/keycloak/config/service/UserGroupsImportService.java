@@ -0,0 +1,214 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
+import com.github.borisskert.keycloak.config.exception.KeycloakRepositoryException;
+import com.github.borisskert.keycloak.config.repository.GroupRepository;
+import com.github.borisskert.keycloak.config.repository.UserRepository;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Reconciles the group memberships of the imported users with their `groups`, a list of group paths like
+ * `/parent/child`. Users without `groups` keep their memberships. The group tree is read once per realm import to
+ * resolve the group paths and the ids of the users are taken from the listing of the existing users of the realm
+ * import. The current groups of every imported user are read by the user, so the users leave groups not referenced by
+ * the import as well. The users join and leave their groups concurrently by `import.user-groups-parallelism` threads.
+ */
+@Service
+public class UserGroupsImportService {
+    private static final Logger logger = LoggerFactory.getLogger(UserGroupsImportService.class);
+
+    private final UserRepository userRepository;
+    private final GroupRepository groupRepository;
+    private final ImportExecutors importExecutors;
+
+    @Value("${import.user-groups-parallelism:#{4}}")
+    private Integer parallelism;
+
+    @Autowired
+    public UserGroupsImportService(
+            UserRepository userRepository,
+            GroupRepository groupRepository,
+            ImportExecutors importExecutors
+    ) {
+        this.userRepository = userRepository;
+        this.groupRepository = groupRepository;
+        this.importExecutors = importExecutors;
+    }
+
+    /**
+     * Reconciles the group memberships of the users of all lists of one realm import, like the users of all changed
+     * shards, by one {@link GroupPaths}
+     *
+     * @param existingUserIds the ids of the existing users by lower-cased username, only read if at least one user
+     *                        manages its groups. A user missing here is looked up by its username.
+     */
+    public void importGroupMemberships(
+            String realm,
+            Collection<List<UserRepresentation>> userLists,
+            Supplier<Map<String, String>> existingUserIds
+    ) {
+        List<UserRepresentation> usersWithGroups = new ArrayList<>();
+
+        for (List<UserRepresentation> users : userLists) {
+            for (UserRepresentation user : users) {
+                if (user.getGroups() != null) {
+                    usersWithGroups.add(user);
+                }
+            }
+        }
+
+        // the memberships are only read if at least one user manages its groups
+        if (usersWithGroups.isEmpty()) {
+            logger.trace("No group memberships to import into realm '{}'", realm);
+            return;
+        }
+
+        // resolves the group paths of all imported users, so an unknown group fails before any membership is changed
+        GroupPaths groupPaths = new GroupPaths(realm);
+        List<UserMemberships> memberships = new ArrayList<>();
+
+        for (UserRepresentation user : usersWithGroups) {
+            memberships.add(new UserMemberships(user.getUsername(), groupPaths.resolveGroupIds(user.getUsername(), user.getGroups())));
+        }
+
+        applyMemberships(realm, existingUserIds.get(), memberships);
+    }
+
+    private void applyMemberships(String realm, Map<String, String> existingUserIds, List<UserMemberships> memberships) {
+        ExecutorService executor = importExecutors.newExecutor(parallelism);
+        List<String> failedUsernames = new ArrayList<>();
+
+        try {
+            Map<String, Future<?>> pendingMemberships = new LinkedHashMap<>();
+
+            for (UserMemberships userMemberships : memberships) {
+                pendingMemberships.put(userMemberships.username, executor.submit(() -> {
+                    applyMemberships(realm, existingUserIds, userMemberships);
+                    return null;
+                }));
+            }
+
+            for (Map.Entry<String, Future<?>> pendingMembership : pendingMemberships.entrySet()) {
+                try {
+                    pendingMembership.getValue().get();
+                } catch (ExecutionException e) {
+                    logger.error("Cannot update group memberships of user '{}' in realm '{}'", pendingMembership.getKey(), realm, e.getCause());
+                    failedUsernames.add(pendingMembership.getKey());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImportProcessingException("Interrupted while updating group memberships of realm '" + realm + "'", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        logger.debug("Reconciled group memberships of {} users in realm '{}'", memberships.size() - failedUsernames.size(), realm);
+
+        if (!failedUsernames.isEmpty()) {
+            throw new ImportProcessingException("Cannot update group memberships of users " + failedUsernames + " in realm '" + realm + "'");
+        }
+    }
+
+    private void applyMemberships(String realm, Map<String, String> existingUserIds, UserMemberships userMemberships) {
+        String username = userMemberships.username;
+        String userId = Optional.ofNullable(existingUserIds.get(username.toLowerCase(Locale.ROOT)))
+                .orElseGet(() -> userRepository.findUser(realm, username).getId());
+
+        Set<String> existingGroupIds = userRepository.getGroups(realm, userId)
+                .stream()
+                .map(GroupRepresentation::getId)
+                .collect(Collectors.toSet());
+
+        for (String groupId : userMemberships.groupIds) {
+            if (!existingGroupIds.contains(groupId)) {
+                logger.debug("Add user '{}' to group with id '{}' in realm '{}'", username, groupId, realm);
+                userRepository.joinGroup(realm, userId, groupId);
+            }
+        }
+
+        for (String groupId : existingGroupIds) {
+            if (!userMemberships.groupIds.contains(groupId)) {
+                logger.debug("Remove user '{}' from group with id '{}' in realm '{}'", username, groupId, realm);
+                userRepository.leaveGroup(realm, userId, groupId);
+            }
+        }
+    }
+
+    private static String normalizePath(String groupPath) {
+        return groupPath.startsWith("/") ? groupPath : "/" + groupPath;
+    }
+
+    /**
+     * The group ids by path of one realm, read once from the group tree
+     */
+    private class GroupPaths {
+        private final String realm;
+        private final Map<String, String> groupIdsByPath = new HashMap<>();
+
+        private GroupPaths(String realm) {
+            this.realm = realm;
+
+            collectGroups("", groupRepository.getGroups(realm));
+        }
+
+        private void collectGroups(String parentPath, List<GroupRepresentation> groups) {
+            if (groups == null) {
+                return;
+            }
+
+            for (GroupRepresentation group : groups) {
+                String path = parentPath + "/" + group.getName();
+
+                groupIdsByPath.put(path, group.getId());
+
+                collectGroups(path, group.getSubGroups());
+            }
+        }
+
+        private Set<String> resolveGroupIds(String username, List<String> groupPaths) {
+            Set<String> groupIds = new LinkedHashSet<>();
+
+            for (String groupPath : groupPaths) {
+                String groupId = groupIdsByPath.get(normalizePath(groupPath));
+
+                if (groupId == null) {
+                    throw new KeycloakRepositoryException(
+                            "Cannot find group '" + groupPath + "' for user '" + username + "' within realm '" + realm + "'"
+                    );
+                }
+
+                groupIds.add(groupId);
+            }
+
+            return groupIds;
+        }
+    }
+
+    /**
+     * The resolved group ids of one imported user
+     */
+    private static class UserMemberships {
+        private final String username;
+        private final Set<String> groupIds;
+
+        private UserMemberships(String username, Set<String> groupIds) {
+            this.username = username;
+            this.groupIds = groupIds;
+        }
+    }
+}
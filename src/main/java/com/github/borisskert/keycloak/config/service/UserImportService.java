@@ -1,64 +1,314 @@
 package com.github.borisskert.keycloak.config.service;
 
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
 import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.repository.PartialImportRepository;
 import com.github.borisskert.keycloak.config.repository.RoleRepository;
 import com.github.borisskert.keycloak.config.repository.UserRepository;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import com.github.borisskert.keycloak.config.service.journal.ImportJournal;
+import com.github.borisskert.keycloak.config.service.journal.RealmJournal;
+import com.github.borisskert.keycloak.config.service.report.ImportReport;
+import com.github.borisskert.keycloak.config.service.report.SectionReport;
+import com.github.borisskert.keycloak.config.service.trace.Span;
+import com.github.borisskert.keycloak.config.service.trace.Tracer;
 import com.github.borisskert.keycloak.config.util.CloneUtils;
+import org.apache.logging.log4j.util.Strings;
 import org.keycloak.representations.idm.RoleRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.StringJoiner;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 @Service
 public class UserImportService {
     private static final Logger logger = LoggerFactory.getLogger(UserImportService.class);
 
-    private static final String[] IGNORED_PROPERTIES_FOR_UPDATE = {"realmRoles", "clientRoles"};
+    private static final String[] IGNORED_PROPERTIES_FOR_UPDATE = {"realmRoles", "clientRoles", "groups"};
+
+    private static final String JOURNAL_SECTION = "users";
 
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
+    private final PartialImportRepository partialImportRepository;
+    private final ImportJournal importJournal;
+    private final Tracer tracer;
+    private final ImportReport importReport;
+    private final UserGroupsImportService userGroupsImportService;
+    private final ImportExecutors importExecutors;
+
+    @Value("${import.managed-user-attribute:#{null}}")
+    private String managedUserAttribute;
+
+    @Value("${import.users-page-size:#{100}}")
+    private int usersPageSize;
+
+    @Value("${import.user-parallelism:#{4}}")
+    private Integer parallelism;
 
     @Autowired
     public UserImportService(
             UserRepository userRepository,
-            RoleRepository roleRepository
+            RoleRepository roleRepository,
+            PartialImportRepository partialImportRepository,
+            ImportJournal importJournal,
+            Tracer tracer,
+            ImportReport importReport,
+            UserGroupsImportService userGroupsImportService,
+            ImportExecutors importExecutors
     ) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
+        this.partialImportRepository = partialImportRepository;
+        this.importJournal = importJournal;
+        this.tracer = tracer;
+        this.importReport = importReport;
+        this.userGroupsImportService = userGroupsImportService;
+        this.importExecutors = importExecutors;
     }
 
     public void doImport(RealmImport realmImport) {
         List<UserRepresentation> users = realmImport.getUsers();
 
         if (users != null) {
+            RealmUsersImport usersImport = startImport(realmImport.getRealm());
+            usersImport.importUsers(users);
+            usersImport.importGroupMemberships();
+        }
+    }
+
+    /**
+     * Starts the import of the users of one realm import, which may be split into several user lists, e.g. the changed
+     * shards. Everything which has to be read from keycloak once per realm import is held by the returned import.
+     */
+    public RealmUsersImport startImport(String realm) {
+        return new RealmUsersImport(realm);
+    }
+
+    public class RealmUsersImport {
+        private final String realm;
+        private final RealmJournal journal;
+        private final List<List<UserRepresentation>> importedUserLists = new ArrayList<>();
+
+        private Map<String, String> existingUserIds;
+
+        private RealmUsersImport(String realm) {
+            this.realm = realm;
+            this.journal = importJournal.get(realm);
+        }
+
+        /**
+         * The users are imported in chunks of `import.bulk-create-chunk-size` users, so only one chunk of users is held
+         * in memory at once if the users have been spilled to a temporary file.
+         */
+        public void importUsers(List<UserRepresentation> users) {
+            List<UserRepresentation> usersToImport = new ArrayList<>();
+
             for (UserRepresentation user : users) {
-                importUser(realmImport.getRealm(), user);
+                if (journal.isCompleted(JOURNAL_SECTION, user.getUsername())) {
+                    logger.trace("Skip user '{}' in realm '{}': already imported", user.getUsername(), realm);
+                } else {
+                    usersToImport.add(user);
+                }
+
+                if (usersToImport.size() >= partialImportRepository.getChunkSize()) {
+                    importChunk(usersToImport);
+                    usersToImport.clear();
+                }
+            }
+
+            importChunk(usersToImport);
+
+            importedUserLists.add(users);
+        }
+
+        /**
+         * Reconciles the group memberships of all users imported so far at once. The ids of the users are taken from
+         * the listing of the existing users, which is read now unless it has been read to create the users in bulk.
+         */
+        public void importGroupMemberships() {
+            userGroupsImportService.importGroupMemberships(realm, importedUserLists, this::getExistingUserIds);
+        }
+
+        private void importChunk(List<UserRepresentation> usersToImport) {
+            Set<String> createdUsernames = createUsers(usersToImport);
+            importReport.created(createdUsernames.size());
+
+            List<UserRepresentation> usersToReconcile = new ArrayList<>();
+
+            for (UserRepresentation user : usersToImport) {
+                if (createdUsernames.contains(user.getUsername().toLowerCase(Locale.ROOT))) {
+                    journal.complete(JOURNAL_SECTION, user.getUsername());
+                } else {
+                    usersToReconcile.add(user);
+                }
+            }
+
+            reconcileUsers(usersToReconcile);
+        }
+
+        /**
+         * Every user is created or updated by one of `import.user-parallelism` threads. A failing user doesn't stop the
+         * other users of the chunk, but the import fails after the chunk.
+         */
+        private void reconcileUsers(List<UserRepresentation> users) {
+            if (users.isEmpty()) {
+                return;
+            }
+
+            Span parentSpan = tracer.currentSpan();
+            SectionReport section = importReport.currentSection();
+            ExecutorService executor = importExecutors.newExecutor(parallelism);
+            List<String> failedUsernames = new ArrayList<>();
+
+            try {
+                Map<String, Future<?>> pendingUsers = new LinkedHashMap<>();
+
+                for (UserRepresentation user : users) {
+                    pendingUsers.put(user.getUsername(), executor.submit(() -> {
+                        importUser(realm, user, parentSpan, section);
+                        journal.complete(JOURNAL_SECTION, user.getUsername());
+
+                        return null;
+                    }));
+                }
+
+                for (Map.Entry<String, Future<?>> pendingUser : pendingUsers.entrySet()) {
+                    try {
+                        pendingUser.getValue().get();
+                    } catch (ExecutionException e) {
+                        logger.error("Cannot import user '{}' in realm '{}'", pendingUser.getKey(), realm, e.getCause());
+                        failedUsernames.add(pendingUser.getKey());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ImportProcessingException("Interrupted while importing users of realm '" + realm + "'", e);
+            } finally {
+                executor.shutdownNow();
+            }
+
+            if (!failedUsernames.isEmpty()) {
+                throw new ImportProcessingException("Cannot import users " + failedUsernames + " in realm '" + realm + "'");
+            }
+        }
+
+        /**
+         * Creates all not existing users inclusive their role mappings in bulk, if enabled
+         *
+         * @return the lower-cased usernames of the created users
+         */
+        private Set<String> createUsers(List<UserRepresentation> users) {
+            if (!partialImportRepository.isEnabled() || users.isEmpty()) {
+                return Collections.emptySet();
+            }
+
+            Map<String, String> existingUserIds = getExistingUserIds();
+
+            List<UserRepresentation> usersToCreate = users.stream()
+                    .filter(user -> !existingUserIds.containsKey(user.getUsername().toLowerCase(Locale.ROOT)))
+                    .map(UserImportService.this::markAsManaged)
+                    .collect(Collectors.toList());
+
+            if (usersToCreate.isEmpty()) {
+                return Collections.emptySet();
+            }
+
+            Set<String> createdUsernames = partialImportRepository.createUsers(realm, usersToCreate);
+
+            // the ids of the created users are unknown
+            for (String createdUsername : createdUsernames) {
+                existingUserIds.put(createdUsername, null);
+            }
+
+            return createdUsernames;
+        }
+
+        /**
+         * Lists the existing users once in pages of `import.users-page-size` users
+         *
+         * @return the ids of the existing users by lower-cased username
+         */
+        private Map<String, String> getExistingUserIds() {
+            if (existingUserIds != null) {
+                return existingUserIds;
             }
+
+            existingUserIds = new HashMap<>();
+            int first = 0;
+            List<UserRepresentation> users;
+
+            do {
+                users = userRepository.getUsers(realm, first, usersPageSize);
+
+                for (UserRepresentation user : users) {
+                    existingUserIds.put(user.getUsername().toLowerCase(Locale.ROOT), user.getId());
+                }
+
+                first += usersPageSize;
+            } while (users.size() >= usersPageSize);
+
+            logger.debug("Found {} existing users in realm '{}'", existingUserIds.size(), realm);
+
+            return existingUserIds;
         }
     }
 
-    private void importUser(String realm, UserRepresentation user) {
-        UserImport userImport = new UserImport(realm, user);
-        userImport.importUser();
+    /**
+     * Prepares the users to be embedded into the representation of a realm to be created
+     */
+    public List<UserRepresentation> prepareForRealmCreation(List<UserRepresentation> users) {
+        return users.stream()
+                .map(UserImportService.this::markAsManaged)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Marks the imported user as managed by this import, so it can be pruned as soon as it is removed from the import
+     */
+    private UserRepresentation markAsManaged(UserRepresentation user) {
+        if (Strings.isBlank(managedUserAttribute)) {
+            return user;
+        }
+
+        Map<String, List<String>> attributes = new HashMap<>();
+
+        if (user.getAttributes() != null) {
+            attributes.putAll(user.getAttributes());
+        }
+
+        attributes.put(managedUserAttribute, Collections.singletonList("true"));
+        user.setAttributes(attributes);
+
+        return user;
+    }
+
+    private void importUser(String realm, UserRepresentation user, Span parentSpan, SectionReport section) {
+        try (Span ignored = tracer.startSpan("user", parentSpan).setAttribute("realm", realm).setAttribute("user", user.getUsername())) {
+            UserImport userImport = new UserImport(realm, user, section);
+            userImport.importUser();
+        }
     }
 
     private class UserImport {
         private final String realm;
         private final UserRepresentation userToImport;
         private final String username;
+        private final SectionReport section;
 
-        private UserImport(String realm, UserRepresentation userToImport) {
+        private UserImport(String realm, UserRepresentation userToImport, SectionReport section) {
             this.realm = realm;
-            this.userToImport = userToImport;
+            this.userToImport = markAsManaged(userToImport);
             this.username = userToImport.getUsername();
+            this.section = section;
         }
 
         public void importUser() {
@@ -69,6 +319,7 @@ public class UserImportService {
             } else {
                 logger.debug("Create user '{}' in realm '{}'", username, realm);
                 userRepository.create(realm, userToImport);
+                section.created();
             }
 
             handleRealmRoles();
@@ -81,8 +332,10 @@ public class UserImportService {
             if (!CloneUtils.deepEquals(existingUser, patchedUser)) {
                 logger.debug("Update user '{}' in realm '{}'", username, realm);
                 userRepository.updateUser(realm, patchedUser);
+                section.updated();
             } else {
                 logger.debug("No need to update user '{}' in realm '{}'", username, realm);
+                section.unchanged();
             }
         }
 
@@ -0,0 +1,211 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.github.borisskert.keycloak.config.KeycloakImportProperties;
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
+import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.repository.UserRepository;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import com.github.borisskert.keycloak.config.service.report.ImportReport;
+import com.github.borisskert.keycloak.config.service.report.SectionReport;
+import com.github.borisskert.keycloak.config.util.RateLimiter;
+import org.apache.logging.log4j.util.Strings;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Deletes the users of a realm which are not part of the import anymore. The users of the realm are listed page by
+ * page once and compared by username with the imported users. If `import.managed-user-attribute` is set, only users
+ * having this attribute are deleted, all other users are left untouched. Service-account users and the user this tool
+ * logs in with are never deleted.
+ */
+@Service
+public class UserPruningService {
+    private static final Logger logger = LoggerFactory.getLogger(UserPruningService.class);
+
+    private static final String SERVICE_ACCOUNT_USERNAME_PREFIX = "service-account-";
+
+    private final UserRepository userRepository;
+    private final ImportExecutors importExecutors;
+    private final ImportReport importReport;
+    private final KeycloakImportProperties properties;
+
+    @Value("${import.prune-users:#{false}}")
+    private Boolean pruneUsers;
+
+    @Value("${import.prune-users-dry-run:#{false}}")
+    private Boolean dryRun;
+
+    @Value("${import.managed-user-attribute:#{null}}")
+    private String managedUserAttribute;
+
+    @Value("${import.prune-users-page-size:#{100}}")
+    private Integer pageSize;
+
+    @Value("${import.prune-users-parallelism:#{4}}")
+    private Integer parallelism;
+
+    @Value("${import.prune-users-rate-limit:#{10}}")
+    private Double deletionsPerSecond;
+
+    @Autowired
+    public UserPruningService(
+            UserRepository userRepository,
+            ImportExecutors importExecutors,
+            ImportReport importReport,
+            KeycloakImportProperties properties
+    ) {
+        this.userRepository = userRepository;
+        this.importExecutors = importExecutors;
+        this.importReport = importReport;
+        this.properties = properties;
+    }
+
+    public void doPrune(RealmImport realmImport) {
+        if (!pruneUsers) {
+            return;
+        }
+
+        String realm = realmImport.getRealm();
+
+        // a realm import without users doesn't manage any users, so nothing is deleted
+        if (realmImport.getUsers() == null) {
+            logger.debug("Skip pruning users of realm '{}': import does not contain users", realm);
+            return;
+        }
+
+        Set<String> importedUsernames = realmImport.getUsers()
+                .stream()
+                .map(UserRepresentation::getUsername)
+                .filter(Objects::nonNull)
+                .map(username -> username.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toCollection(HashSet::new));
+
+        if (realm.equals(properties.getRealm())) {
+            // the tool must not lock itself out
+            importedUsernames.add(properties.getUser().toLowerCase(Locale.ROOT));
+        }
+
+        List<UserRepresentation> usersToDelete = findUsersToDelete(realm, importedUsernames);
+
+        if (dryRun) {
+            for (UserRepresentation userToDelete : usersToDelete) {
+                logger.info("Would delete user '{}' in realm '{}' (dry-run)", userToDelete.getUsername(), realm);
+            }
+
+            logger.info("Would delete {} users in realm '{}' (dry-run)", usersToDelete.size(), realm);
+            return;
+        }
+
+        deleteUsers(realm, usersToDelete);
+    }
+
+    private List<UserRepresentation> findUsersToDelete(String realm, Set<String> importedUsernames) {
+        List<UserRepresentation> usersToDelete = new ArrayList<>();
+        int existingUsers = 0;
+        int first = 0;
+        List<UserRepresentation> users;
+
+        do {
+            users = userRepository.getUsers(realm, first, pageSize);
+            existingUsers += users.size();
+
+            for (UserRepresentation user : users) {
+                if (isManaged(user) && !importedUsernames.contains(user.getUsername().toLowerCase(Locale.ROOT))) {
+                    usersToDelete.add(user);
+                }
+            }
+
+            first += pageSize;
+        } while (users.size() >= pageSize);
+
+        logger.debug(
+                "Found {} users to delete of {} existing users and {} imported users in realm '{}'",
+                usersToDelete.size(),
+                existingUsers,
+                importedUsernames.size(),
+                realm
+        );
+
+        return usersToDelete;
+    }
+
+    private boolean isManaged(UserRepresentation user) {
+        if (user.getServiceAccountClientId() != null || user.getUsername().startsWith(SERVICE_ACCOUNT_USERNAME_PREFIX)) {
+            return false;
+        }
+
+        if (Strings.isBlank(managedUserAttribute)) {
+            return true;
+        }
+
+        return user.getAttributes() != null && user.getAttributes().containsKey(managedUserAttribute);
+    }
+
+    /**
+     * With a non-blocking user repository the deletions are sent by the calling thread as fast as the rate limit
+     * allows, otherwise by `import.prune-users-parallelism` threads
+     */
+    private void deleteUsers(String realm, List<UserRepresentation> usersToDelete) {
+        RateLimiter rateLimiter = new RateLimiter(deletionsPerSecond);
+        SectionReport section = importReport.currentSection();
+        ExecutorService executor = importExecutors.newExecutor(parallelism);
+
+        List<String> failedUsernames = new ArrayList<>();
+
+        try {
+            Map<String, Future<?>> pendingDeletions = new LinkedHashMap<>();
+
+            for (UserRepresentation userToDelete : usersToDelete) {
+                if (userRepository.isNonBlocking()) {
+                    rateLimiter.acquire();
+                    logger.debug("Delete user '{}' in realm '{}'", userToDelete.getUsername(), realm);
+                    pendingDeletions.put(userToDelete.getUsername(), userRepository.deleteAsync(realm, userToDelete.getId()));
+                } else {
+                    pendingDeletions.put(userToDelete.getUsername(), executor.submit(() -> {
+                        rateLimiter.acquire();
+                        logger.debug("Delete user '{}' in realm '{}'", userToDelete.getUsername(), realm);
+                        userRepository.delete(realm, userToDelete.getId());
+
+                        return null;
+                    }));
+                }
+            }
+
+            for (Map.Entry<String, Future<?>> pendingDeletion : pendingDeletions.entrySet()) {
+                try {
+                    pendingDeletion.getValue().get();
+                    section.deleted();
+                } catch (ExecutionException e) {
+                    logger.error("Cannot delete user '{}' in realm '{}'", pendingDeletion.getKey(), realm, e.getCause());
+                    failedUsernames.add(pendingDeletion.getKey());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImportProcessingException("Interrupted while deleting users of realm '" + realm + "'", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        logger.info(
+                "Deleted {} users in realm '{}', {} deletions failed",
+                usersToDelete.size() - failedUsernames.size(),
+                realm,
+                failedUsernames.size()
+        );
+
+        if (!failedUsernames.isEmpty()) {
+            throw new ImportProcessingException("Cannot delete users " + failedUsernames + " in realm '" + realm + "'");
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.borisskert.keycloak.config.service.checksum;
+
+import org.bouncycastle.jcajce.provider.digest.SHA3;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+public enum ChecksumAlgorithm {
+
+    /**
+     * The cryptographic hash used for all checksums stored so far
+     */
+    SHA3_512 {
+        @Override
+        public ChecksumDigest createDigest() {
+            MessageDigest messageDigest = new SHA3.Digest512();
+
+            return new ChecksumDigest() {
+                @Override
+                public void update(ByteBuffer bytes) {
+                    messageDigest.update(bytes);
+                }
+
+                @Override
+                public byte[] digest() {
+                    return messageDigest.digest();
+                }
+            };
+        }
+    },
+
+    /**
+     * A non-cryptographic hash which is sufficient to detect changed import files and is a lot faster than SHA3
+     */
+    MURMUR3_128 {
+        @Override
+        public ChecksumDigest createDigest() {
+            return new Murmur3Digest();
+        }
+    };
+
+    public abstract ChecksumDigest createDigest();
+}
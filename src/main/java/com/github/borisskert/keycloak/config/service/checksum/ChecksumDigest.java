@@ -0,0 +1,16 @@
+package com.github.borisskert.keycloak.config.service.checksum;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incrementally calculated checksum, an instance must not be shared between threads
+ */
+public interface ChecksumDigest {
+
+    /**
+     * Consumes all remaining bytes of the buffer
+     */
+    void update(ByteBuffer bytes);
+
+    byte[] digest();
+}
@@ -0,0 +1,34 @@
+package com.github.borisskert.keycloak.config.service.checksum;
+
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Calculates the checksum of everything written into this stream without storing it
+ */
+public class ChecksumOutputStream extends OutputStream {
+    private final ChecksumDigest digest;
+
+    ChecksumOutputStream(ChecksumDigest digest) {
+        this.digest = digest;
+    }
+
+    @Override
+    public void write(int b) {
+        digest.update(ByteBuffer.wrap(new byte[]{(byte) b}));
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        digest.update(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Has to be called once after all bytes have been written
+     */
+    public String getChecksum() {
+        return Hex.toHexString(digest.digest());
+    }
+}
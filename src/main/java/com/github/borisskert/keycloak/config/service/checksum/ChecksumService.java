@@ -1,15 +1,36 @@
 package com.github.borisskert.keycloak.config.service.checksum;
 
-import org.bouncycastle.jcajce.provider.digest.SHA3;
 import org.bouncycastle.util.encoders.Hex;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.security.MessageDigest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
+/**
+ * Calculates the checksums of the import files. Every call uses its own digest, so this service can be used by many
+ * threads at once. Files are read through memory-mapped windows, so even large files never have to be loaded into the
+ * heap. Changing the algorithm changes all checksums, so every realm will be imported once again.
+ */
 @Service
 public class ChecksumService {
+    private static final long MAPPED_WINDOW_SIZE = 64L * 1024 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
 
-    private MessageDigest digest = new SHA3.Digest512();
+    @Value("${import.checksum-algorithm:SHA3_512}")
+    private ChecksumAlgorithm algorithm = ChecksumAlgorithm.SHA3_512;
+
+    public ChecksumService() {
+    }
+
+    public ChecksumService(ChecksumAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
 
     public String checksum(String text) {
         if (text == null) {
@@ -17,7 +38,7 @@ public class ChecksumService {
         }
 
         byte[] textInBytes = text.getBytes();
-        return calculateSha3Checksum(textInBytes);
+        return checksum(textInBytes);
     }
 
     public String checksum(byte[] textInBytes) {
@@ -25,11 +46,72 @@ public class ChecksumService {
             throw new IllegalArgumentException("Cannot calculate checksum of null");
         }
 
-        return calculateSha3Checksum(textInBytes);
+        ChecksumDigest digest = algorithm.createDigest();
+        digest.update(ByteBuffer.wrap(textInBytes));
+
+        return Hex.toHexString(digest.digest());
+    }
+
+    public String checksum(InputStream inputStream) {
+        if (inputStream == null) {
+            throw new IllegalArgumentException("Cannot calculate checksum of null");
+        }
+
+        ChecksumDigest digest = algorithm.createDigest();
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+
+        try {
+            int readBytes;
+            while ((readBytes = inputStream.read(buffer)) >= 0) {
+                digest.update(ByteBuffer.wrap(buffer, 0, readBytes));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return Hex.toHexString(digest.digest());
+    }
+
+    /**
+     * @return a stream calculating the checksum of everything written into it
+     */
+    public ChecksumOutputStream createOutputStream() {
+        return new ChecksumOutputStream(algorithm.createDigest());
+    }
+
+    public String checksum(Path file) {
+        if (file == null) {
+            throw new IllegalArgumentException("Cannot calculate checksum of null");
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return checksum(channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private String calculateSha3Checksum(byte[] textInBytes) {
-        byte[] shaInBytes = this.digest.digest(textInBytes);
-        return Hex.toHexString(shaInBytes);
+    /**
+     * Reads the channel from its start to its end without changing its position
+     */
+    public String checksum(FileChannel channel) {
+        if (channel == null) {
+            throw new IllegalArgumentException("Cannot calculate checksum of null");
+        }
+
+        ChecksumDigest digest = algorithm.createDigest();
+
+        try {
+            long size = channel.size();
+
+            for (long position = 0; position < size; position += MAPPED_WINDOW_SIZE) {
+                long windowSize = Math.min(MAPPED_WINDOW_SIZE, size - position);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return Hex.toHexString(digest.digest());
     }
 }
@@ -0,0 +1,129 @@
+package com.github.borisskert.keycloak.config.service.checksum;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming implementation of MurmurHash3 x64 128-bit with seed 0, the digest has the same byte order as guava's
+ * `Hashing.murmur3_128()`.
+ */
+class Murmur3Digest implements ChecksumDigest {
+    private static final int BLOCK_SIZE = 16;
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final ByteBuffer tail = ByteBuffer.allocate(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long h1;
+    private long h2;
+    private long length;
+
+    @Override
+    public void update(ByteBuffer bytes) {
+        ByteBuffer input = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+        bytes.position(bytes.limit());
+
+        length += input.remaining();
+
+        if (tail.position() > 0) {
+            while (tail.hasRemaining() && input.hasRemaining()) {
+                tail.put(input.get());
+            }
+
+            if (tail.hasRemaining()) {
+                return;
+            }
+
+            tail.flip();
+            mixBlock(tail.getLong(), tail.getLong());
+            tail.clear();
+        }
+
+        while (input.remaining() >= BLOCK_SIZE) {
+            mixBlock(input.getLong(), input.getLong());
+        }
+
+        tail.put(input);
+    }
+
+    @Override
+    public byte[] digest() {
+        mixTail();
+
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = finalMix(h1);
+        h2 = finalMix(h2);
+
+        h1 += h2;
+        h2 += h1;
+
+        return ByteBuffer.allocate(BLOCK_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .putLong(h1)
+                .putLong(h2)
+                .array();
+    }
+
+    private void mixBlock(long k1, long k2) {
+        h1 ^= mixK1(k1);
+
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        h2 ^= mixK2(k2);
+
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private void mixTail() {
+        int tailLength = tail.position();
+        long k1 = 0;
+        long k2 = 0;
+
+        for (int index = tailLength - 1; index >= 8; index--) {
+            k2 ^= (long) (tail.get(index) & 0xff) << ((index - 8) * 8);
+        }
+
+        for (int index = Math.min(tailLength, 8) - 1; index >= 0; index--) {
+            k1 ^= (long) (tail.get(index) & 0xff) << (index * 8);
+        }
+
+        h1 ^= mixK1(k1);
+        h2 ^= mixK2(k2);
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+
+        return k2;
+    }
+
+    private static long finalMix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+
+        return k;
+    }
+}
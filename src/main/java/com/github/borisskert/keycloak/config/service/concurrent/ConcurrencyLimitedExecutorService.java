@@ -0,0 +1,76 @@
+package com.github.borisskert.keycloak.config.service.concurrent;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the tasks by the delegate, but at most as many at once as the semaphore has permits. The permit is acquired
+ * by the task itself, so the waiting tasks are blocked threads of the delegate, which is cheap for virtual threads.
+ */
+class ConcurrencyLimitedExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+
+    ConcurrencyLimitedExecutorService(ExecutorService delegate, Semaphore permits) {
+        this.delegate = delegate;
+        this.permits = permits;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        delegate.execute(() -> {
+            boolean isAcquired = acquirePermit();
+
+            try {
+                task.run();
+            } finally {
+                if (isAcquired) {
+                    permits.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * An interrupted task is run anyway without a permit, because a task which is not run would never complete the
+     * future of `submit()` and every caller waiting for it would hang.
+     */
+    private boolean acquirePermit() {
+        try {
+            permits.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
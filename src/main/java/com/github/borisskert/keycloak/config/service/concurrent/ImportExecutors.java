@@ -0,0 +1,118 @@
+package com.github.borisskert.keycloak.config.service.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Creates the executors for concurrent import work, like the import of clients or the deletion of users. By default
+ * every executor is a fixed pool of platform threads. With `import.virtual-threads=true` on Java 21 or newer, every
+ * task runs on its own virtual thread instead, while all tasks of all executors share at most
+ * `import.virtual-threads-max-concurrency` permits to protect keycloak. With
+ * `import.virtual-threads-trace-pinning=true` the JVM logs a stack trace whenever a virtual thread blocks while pinned
+ * to its carrier thread.
+ * <p>
+ * The build targets Java 11, so the virtual-thread executor is looked up reflectively.
+ */
+@Component
+public class ImportExecutors {
+    private static final Logger logger = LoggerFactory.getLogger(ImportExecutors.class);
+
+    private static final String TRACE_PINNED_THREADS_PROPERTY = "jdk.tracePinnedThreads";
+
+    @Value("${import.virtual-threads:#{false}}")
+    private Boolean virtualThreads;
+
+    @Value("${import.virtual-threads-max-concurrency:#{200}}")
+    private Integer maxConcurrency;
+
+    @Value("${import.virtual-threads-trace-pinning:#{false}}")
+    private Boolean tracePinning;
+
+    private MethodHandle newVirtualThreadPerTaskExecutor;
+    private Semaphore permits;
+    private boolean isInitialized;
+
+    /**
+     * @param parallelism the number of platform threads, if virtual threads are not used
+     */
+    public ExecutorService newExecutor(int parallelism) {
+        if (useVirtualThreads()) {
+            return new ConcurrencyLimitedExecutorService(newVirtualThreadPerTaskExecutor(), permits);
+        }
+
+        return Executors.newFixedThreadPool(parallelism);
+    }
+
+    /**
+     * @return the number of concurrent operations on virtual threads
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public synchronized boolean useVirtualThreads() {
+        if (!isInitialized) {
+            initialize();
+            isInitialized = true;
+        }
+
+        return newVirtualThreadPerTaskExecutor != null;
+    }
+
+    private void initialize() {
+        if (!virtualThreads) {
+            return;
+        }
+
+        newVirtualThreadPerTaskExecutor = lookUpVirtualThreadPerTaskExecutor();
+
+        if (newVirtualThreadPerTaskExecutor == null) {
+            logger.warn("Virtual threads are not supported by Java {}, using platform threads", Runtime.version().feature());
+            return;
+        }
+
+        // read by the JVM as soon as the first virtual thread is created
+        if (tracePinning && System.getProperty(TRACE_PINNED_THREADS_PROPERTY) == null) {
+            System.setProperty(TRACE_PINNED_THREADS_PROPERTY, "short");
+        }
+
+        permits = new Semaphore(maxConcurrency);
+
+        logger.info("Running import workers on virtual threads, at most {} at once", maxConcurrency);
+    }
+
+    private ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create virtual-thread executor", e);
+        }
+    }
+
+    private static MethodHandle lookUpVirtualThreadPerTaskExecutor() {
+        if (Runtime.version().feature() < 21) {
+            return null;
+        }
+
+        try {
+            return MethodHandles.publicLookup().findStatic(
+                    Executors.class,
+                    "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class)
+            );
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
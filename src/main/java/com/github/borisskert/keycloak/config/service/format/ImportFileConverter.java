@@ -0,0 +1,107 @@
+package com.github.borisskert.keycloak.config.service.format;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
+import com.github.borisskert.keycloak.config.exception.InvalidImportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts JSON import files into another import format. Every file is converted token by token, so the files are
+ * never loaded into memory completely. The converted file is written next to the JSON file which is kept as it is.
+ */
+@Service
+public class ImportFileConverter {
+    private static final Logger logger = LoggerFactory.getLogger(ImportFileConverter.class);
+
+    private final ImportFormats importFormats;
+
+    @Autowired
+    public ImportFileConverter(ImportFormats importFormats) {
+        this.importFormats = importFormats;
+    }
+
+    /**
+     * @param source a JSON file or a directory whose JSON files (inclusive the ones in sub-directories) are converted
+     */
+    public void convert(File source, String targetFormatName) {
+        ImportFormat targetFormat = importFormats.get(targetFormatName);
+
+        if (!source.exists()) {
+            throw new InvalidImportException("Is not existing: " + source);
+        }
+
+        for (Path sourceFile : findJsonFiles(source.toPath())) {
+            convertFile(sourceFile, targetFormat);
+        }
+    }
+
+    private List<Path> findJsonFiles(Path source) {
+        if (!Files.isDirectory(source)) {
+            return Collections.singletonList(source);
+        }
+
+        try (Stream<Path> files = Files.walk(source)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(this::hasJsonFileExtension)
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new ImportProcessingException("Cannot read directory '" + source + "'", e);
+        }
+    }
+
+    private boolean hasJsonFileExtension(Path file) {
+        String filename = file.getFileName().toString().toLowerCase(Locale.ROOT);
+
+        return importFormats.json()
+                .getFileExtensions()
+                .stream()
+                .anyMatch(fileExtension -> filename.endsWith("." + fileExtension));
+    }
+
+    private void convertFile(Path sourceFile, ImportFormat targetFormat) {
+        ImportFormat sourceFormat = importFormats.forFile(sourceFile.toFile());
+
+        if (sourceFormat.getName().equals(targetFormat.getName())) {
+            logger.info("Skip '{}': is already in format '{}'", sourceFile, targetFormat.getName());
+            return;
+        }
+
+        Path targetFile = sourceFile.resolveSibling(removeFileExtension(sourceFile) + "." + targetFormat.getFileExtensions().get(0));
+
+        try (
+                JsonParser parser = sourceFormat.getObjectMapper().getFactory().createParser(sourceFile.toFile());
+                JsonGenerator generator = targetFormat.getObjectMapper().getFactory().createGenerator(targetFile.toFile(), JsonEncoding.UTF8)
+        ) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        } catch (IOException e) {
+            throw new ImportProcessingException("Cannot convert '" + sourceFile + "' into '" + targetFile + "'", e);
+        }
+
+        logger.info("Converted '{}' into '{}'", sourceFile, targetFile);
+    }
+
+    private static String removeFileExtension(Path file) {
+        String filename = file.getFileName().toString();
+        int extensionIndex = filename.lastIndexOf('.');
+
+        return extensionIndex > 0 ? filename.substring(0, extensionIndex) : filename;
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.borisskert.keycloak.config.service.format;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An encoding of import files, like JSON or YAML. Every {@link ImportFormat} bean is available for import files with
+ * one of its file extensions.
+ */
+public class ImportFormat {
+    public static final String JSON = "json";
+
+    private final String name;
+    private final ObjectMapper objectMapper;
+    private final List<String> fileExtensions;
+
+    public ImportFormat(String name, ObjectMapper objectMapper, String... fileExtensions) {
+        this.name = name;
+        this.objectMapper = objectMapper;
+        this.fileExtensions = Collections.unmodifiableList(Arrays.asList(fileExtensions));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * @return the file extensions without leading dot, the first one is used for converted files
+     */
+    public List<String> getFileExtensions() {
+        return fileExtensions;
+    }
+
+    public boolean isJson() {
+        return JSON.equals(name);
+    }
+}
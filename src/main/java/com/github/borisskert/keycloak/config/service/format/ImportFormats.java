@@ -0,0 +1,69 @@
+package com.github.borisskert.keycloak.config.service.format;
+
+import com.github.borisskert.keycloak.config.exception.InvalidImportException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Chooses the format of an import file by its file extension. Files with an unknown extension are read as JSON like
+ * before there have been other formats.
+ */
+@Component
+public class ImportFormats {
+
+    private final List<ImportFormat> formats;
+    private final ImportFormat jsonFormat;
+
+    @Autowired
+    public ImportFormats(List<ImportFormat> formats) {
+        this.formats = formats;
+        this.jsonFormat = tryToGet(ImportFormat.JSON)
+                .orElseThrow(() -> new IllegalStateException("Missing import format '" + ImportFormat.JSON + "'"));
+    }
+
+    public ImportFormat forFile(File importFile) {
+        return tryToGetForFile(importFile).orElse(jsonFormat);
+    }
+
+    /**
+     * @return true if the file has the extension of one of the formats, unlike editor swap or backup files
+     */
+    public boolean hasKnownFileExtension(File file) {
+        return tryToGetForFile(file).isPresent();
+    }
+
+    public ImportFormat get(String name) {
+        return tryToGet(name)
+                .orElseThrow(() -> new InvalidImportException(
+                        "Unknown import format '" + name + "', known formats: " + formats.stream()
+                                .map(ImportFormat::getName)
+                                .collect(Collectors.toList())
+                ));
+    }
+
+    public ImportFormat json() {
+        return jsonFormat;
+    }
+
+    private Optional<ImportFormat> tryToGetForFile(File file) {
+        String filename = file.getName().toLowerCase(Locale.ROOT);
+
+        return formats.stream()
+                .filter(format -> format.getFileExtensions()
+                        .stream()
+                        .anyMatch(fileExtension -> filename.endsWith("." + fileExtension)))
+                .findFirst();
+    }
+
+    private Optional<ImportFormat> tryToGet(String name) {
+        return formats.stream()
+                .filter(format -> format.getName().equalsIgnoreCase(name))
+                .findFirst();
+    }
+}
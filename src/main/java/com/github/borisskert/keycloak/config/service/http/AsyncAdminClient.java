@@ -0,0 +1,346 @@
+package com.github.borisskert.keycloak.config.service.http;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.borisskert.keycloak.config.exception.KeycloakRepositoryException;
+import com.github.borisskert.keycloak.config.service.KeycloakProvider;
+import com.github.borisskert.keycloak.config.service.trace.Span;
+import com.github.borisskert.keycloak.config.service.trace.Tracer;
+import org.apache.http.client.utils.URIBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking client for the keycloak admin REST API based on {@link HttpClient}, used by the export and the pruning
+ * of users instead of the blocking admin client if `keycloak.http-client` is set to `java`. Requests are sent via
+ * HTTP/2 if the server supports it, otherwise via HTTP/1.1, and all responses are handled by
+ * `keycloak.http-client-threads` threads.
+ * <p>
+ * At most `keycloak.http-client-max-in-flight` requests are sent at once, further requests are queued without
+ * blocking the calling thread. The requests are started by one dispatcher thread which takes the access token from the
+ * admin client of the {@link KeycloakProvider} right before sending, so a queued request never goes out with an
+ * expired token and a blocking token refresh never blocks the response threads. The requests are counted, traced and
+ * spread over the {@link KeycloakNodes} like the requests of the admin client.
+ */
+@Component
+public class AsyncAdminClient implements DisposableBean {
+
+    public static final String JAVA_HTTP_CLIENT = "java";
+
+    private final KeycloakNodes keycloakNodes;
+    private final KeycloakProvider keycloakProvider;
+    private final RequestStatistics requestStatistics;
+    private final Tracer tracer;
+    private final ObjectMapper objectMapper;
+
+    @Value("${keycloak.http-client:resteasy}")
+    private String httpClientName;
+
+    @Value("${keycloak.http-client-threads:#{4}}")
+    private Integer threads;
+
+    @Value("${keycloak.http-client-max-in-flight:#{256}}")
+    private Integer maxInFlight;
+
+    private final Queue<Runnable> queuedRequests = new ArrayDeque<>();
+    private int requestsInFlight;
+
+    private ExecutorService executor;
+    private ExecutorService dispatcher;
+    private HttpClient httpClient;
+
+    @Autowired
+    public AsyncAdminClient(
+            KeycloakNodes keycloakNodes,
+            KeycloakProvider keycloakProvider,
+            RequestStatistics requestStatistics,
+            Tracer tracer,
+            @Qualifier("json") ObjectMapper objectMapper
+    ) {
+        this.keycloakNodes = keycloakNodes;
+        this.keycloakProvider = keycloakProvider;
+        this.requestStatistics = requestStatistics;
+        this.tracer = tracer;
+        this.objectMapper = objectMapper.copy()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    public boolean isEnabled() {
+        return JAVA_HTTP_CLIENT.equals(httpClientName);
+    }
+
+    public <T> CompletableFuture<T> get(String path, TypeReference<T> responseType) {
+        return send("GET", path, HttpRequest.BodyPublishers.noBody())
+                .thenApply(body -> readValue(body, responseType));
+    }
+
+    public CompletableFuture<Void> post(String path, Object requestBody) {
+        return send("POST", path, toBodyPublisher(requestBody))
+                .thenApply(body -> null);
+    }
+
+    public CompletableFuture<Void> put(String path, Object requestBody) {
+        return send("PUT", path, toBodyPublisher(requestBody))
+                .thenApply(body -> null);
+    }
+
+    public CompletableFuture<Void> delete(String path) {
+        return send("DELETE", path, HttpRequest.BodyPublishers.noBody())
+                .thenApply(body -> null);
+    }
+
+    /**
+     * Encodes one segment of a path, like a realm name or a username
+     */
+    public static String encode(String pathSegment) {
+        return URLEncoder.encode(pathSegment, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            httpClient = null;
+        }
+
+        if (dispatcher != null) {
+            dispatcher.shutdownNow();
+            dispatcher = null;
+        }
+    }
+
+    private CompletableFuture<byte[]> send(String method, String path, HttpRequest.BodyPublisher bodyPublisher) {
+        URI uri = URI.create(buildAdminUri() + path);
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        schedule(() -> {
+            KeycloakNodes.Node node = null;
+            Span span = null;
+
+            try {
+                // the token manager refreshes an expired token, which blocks the dispatcher thread only
+                String accessToken = keycloakProvider.get().tokenManager().getAccessTokenString();
+
+                // the node is chosen as late as possible, so its outstanding requests are up to date
+                node = keycloakNodes.acquire(method);
+
+                HttpRequest request = HttpRequest.newBuilder(keycloakNodes.route(uri, node))
+                        .method(method, bodyPublisher)
+                        .header("Authorization", "Bearer " + accessToken)
+                        .header("Accept", "application/json")
+                        .header("Content-Type", "application/json")
+                        .build();
+
+                span = startSpan(request);
+                sendNow(request, node, path, span, result);
+            } catch (RuntimeException e) {
+                if (node != null) {
+                    keycloakNodes.release(node, false);
+                }
+
+                if (span != null) {
+                    span.setAttribute("error", e.toString()).close();
+                }
+
+                result.completeExceptionally(new KeycloakRepositoryException("Cannot send request " + method + " " + path, e));
+                release();
+            }
+        });
+
+        return result;
+    }
+
+    private Span startSpan(HttpRequest request) {
+        String method = request.method();
+
+        requestStatistics.record(method, request.uri().getRawPath());
+
+        return tracer.startDetachedSpan(method + " " + RequestStatistics.toEndpoint(request.uri().getRawPath()))
+                .setAttribute("http.method", method)
+                .setAttribute("http.path", request.uri().getRawPath());
+    }
+
+    /**
+     * The span of a request which cannot be sent at all is closed by the caller
+     */
+    private void sendNow(
+            HttpRequest request,
+            KeycloakNodes.Node node,
+            String path,
+            Span span,
+            CompletableFuture<byte[]> result
+    ) {
+        String method = request.method();
+
+        getHttpClient().sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, error) -> {
+                    // the result is completed before the next request is started, which may fail on its own
+                    try {
+                        keycloakNodes.release(node, error == null && response.statusCode() < 500);
+                        complete(response, error, method, path, span, result);
+                    } finally {
+                        release();
+                    }
+                });
+    }
+
+    private void complete(
+            HttpResponse<byte[]> response,
+            Throwable error,
+            String method,
+            String path,
+            Span span,
+            CompletableFuture<byte[]> result
+    ) {
+        if (error != null) {
+            span.setAttribute("error", error.toString()).close();
+            result.completeExceptionally(
+                    new KeycloakRepositoryException("Cannot send request " + method + " " + path, error)
+            );
+            return;
+        }
+
+        requestStatistics.recordResponseBytes(response.body().length);
+
+        span.setAttribute("http.status_code", response.statusCode())
+                .setAttribute("http.response_content_length", response.body().length)
+                .close();
+
+        if (response.statusCode() >= 400) {
+            result.completeExceptionally(new KeycloakRepositoryException(
+                    "Request " + method + " " + path + " failed with HTTP status " + response.statusCode()
+                            + ": " + new String(response.body(), StandardCharsets.UTF_8)
+            ));
+        } else {
+            result.complete(response.body());
+        }
+    }
+
+    private void schedule(Runnable request) {
+        synchronized (queuedRequests) {
+            if (requestsInFlight >= maxInFlight) {
+                queuedRequests.add(request);
+                return;
+            }
+
+            requestsInFlight++;
+        }
+
+        dispatch(request);
+    }
+
+    /**
+     * Sends the next queued request instead of the finished one, if any
+     */
+    private void release() {
+        Runnable nextRequest;
+
+        synchronized (queuedRequests) {
+            nextRequest = queuedRequests.poll();
+
+            if (nextRequest == null) {
+                requestsInFlight--;
+            }
+        }
+
+        if (nextRequest != null) {
+            dispatch(nextRequest);
+        }
+    }
+
+    /**
+     * Starts the request on the dispatcher thread, the request releases its slot as soon as it's finished
+     */
+    private void dispatch(Runnable request) {
+        boolean isDispatched = false;
+
+        try {
+            getDispatcher().execute(request);
+            isDispatched = true;
+        } finally {
+            if (!isDispatched) {
+                release();
+            }
+        }
+    }
+
+    private synchronized ExecutorService getDispatcher() {
+        if (dispatcher == null) {
+            dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "async-admin-client-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return dispatcher;
+    }
+
+    private String buildAdminUri() {
+        try {
+            return new URIBuilder(keycloakNodes.getUrl())
+                    .setPath("/auth/admin")
+                    .build()
+                    .toString();
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private synchronized HttpClient getHttpClient() {
+        if (httpClient == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "async-admin-client-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .executor(executor)
+                    .build();
+        }
+
+        return httpClient;
+    }
+
+    private HttpRequest.BodyPublisher toBodyPublisher(Object requestBody) {
+        try {
+            return HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(requestBody));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T readValue(byte[] body, TypeReference<T> responseType) {
+        try {
+            return objectMapper.readValue(body, responseType);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
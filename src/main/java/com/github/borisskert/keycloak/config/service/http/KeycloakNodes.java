@@ -0,0 +1,162 @@
+package com.github.borisskert.keycloak.config.service.http;
+
+import com.github.borisskert.keycloak.config.KeycloakImportProperties;
+import org.apache.logging.log4j.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The keycloak nodes the admin requests are spread over. `keycloak.url` may contain several comma-separated node URLs,
+ * every request is sent to the available node with the fewest outstanding requests. With `keycloak.read-url` the
+ * `GET` requests are sent to these nodes instead.
+ * <p>
+ * A node failing `keycloak.circuit-breaker-failures` times in a row (no response or HTTP status 5xx) is ejected for
+ * `keycloak.circuit-breaker-open-millis` milliseconds. Afterwards it gets requests again and is ejected again by its
+ * next failure. If all nodes are ejected, the node which comes back first is used anyway.
+ */
+@Component
+public class KeycloakNodes {
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakNodes.class);
+
+    private final List<Node> writeNodes;
+    private final List<Node> readNodes;
+    private final AtomicInteger nextNode = new AtomicInteger();
+
+    @Value("${keycloak.circuit-breaker-failures:#{3}}")
+    private Integer failureThreshold;
+
+    @Value("${keycloak.circuit-breaker-open-millis:#{30000}}")
+    private Long openMillis;
+
+    @Autowired
+    public KeycloakNodes(KeycloakImportProperties properties) {
+        this.writeNodes = parseNodes(properties.getUrl());
+        this.readNodes = Strings.isBlank(properties.getReadUrl()) ? writeNodes : parseNodes(properties.getReadUrl());
+    }
+
+    /**
+     * @return true if the requests have to be spread over several nodes
+     */
+    public boolean isBalanced() {
+        return writeNodes.size() > 1 || readNodes != writeNodes;
+    }
+
+    /**
+     * @return the URL of the first node, used to build the URLs of the requests before they are routed
+     */
+    public String getUrl() {
+        return writeNodes.get(0).getUrl();
+    }
+
+    /**
+     * Chooses the node for the next request, which has to be released afterwards
+     */
+    public Node acquire(String method) {
+        List<Node> nodes = "GET".equals(method) ? readNodes : writeNodes;
+        long now = System.nanoTime();
+
+        int start = Math.floorMod(nextNode.getAndIncrement(), nodes.size());
+        Node chosenNode = null;
+
+        for (int index = 0; index < nodes.size(); index++) {
+            Node node = nodes.get((start + index) % nodes.size());
+
+            if (node.isAvailable(now) && (chosenNode == null || node.outstanding.get() < chosenNode.outstanding.get())) {
+                chosenNode = node;
+            }
+        }
+
+        if (chosenNode == null) {
+            chosenNode = nodes.stream()
+                    .min(Comparator.comparingLong(node -> node.openUntilNanos - now))
+                    .orElseThrow(IllegalStateException::new);
+        }
+
+        chosenNode.outstanding.incrementAndGet();
+
+        return chosenNode;
+    }
+
+    /**
+     * @param successful false if the node didn't respond or responded with HTTP status 5xx
+     */
+    public void release(Node node, boolean successful) {
+        node.outstanding.decrementAndGet();
+
+        if (successful) {
+            node.consecutiveFailures.set(0);
+            node.openUntilNanos = 0;
+        } else if (node.consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            if (node.isAvailable(System.nanoTime())) {
+                logger.warn("Eject keycloak node '{}' for {} ms after {} failures", node.getUrl(), openMillis, node.consecutiveFailures.get());
+            }
+
+            node.openUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openMillis);
+        }
+    }
+
+    /**
+     * @return the URI of the request, sent to the given node
+     */
+    public URI route(URI uri, Node node) {
+        StringBuilder routedUri = new StringBuilder(node.getUrl()).append(uri.getRawPath());
+
+        if (uri.getRawQuery() != null) {
+            routedUri.append('?').append(uri.getRawQuery());
+        }
+
+        return URI.create(routedUri.toString());
+    }
+
+    private static List<Node> parseNodes(String urls) {
+        List<Node> nodes = new ArrayList<>();
+
+        for (String url : urls.split(",")) {
+            if (Strings.isNotBlank(url)) {
+                nodes.add(new Node(url.trim()));
+            }
+        }
+
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("No keycloak node URL in '" + urls + "'");
+        }
+
+        return Collections.unmodifiableList(nodes);
+    }
+
+    public static class Node {
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long openUntilNanos;
+
+        private Node(String url) {
+            URI uri = URI.create(url);
+            this.url = uri.getScheme() + "://" + uri.getRawAuthority();
+        }
+
+        /**
+         * @return scheme, host and port of the node
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        public int getOutstandingRequests() {
+            return outstanding.get();
+        }
+
+        private boolean isAvailable(long now) {
+            long openUntil = openUntilNanos;
+            return openUntil == 0 || now - openUntil >= 0;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.borisskert.keycloak.config.service.http;
+
+import org.jboss.resteasy.client.jaxrs.ClientHttpEngine;
+import org.jboss.resteasy.client.jaxrs.internal.ClientInvocation;
+import org.jboss.resteasy.client.jaxrs.internal.ClientResponse;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Sends the requests of the admin client to the {@link KeycloakNodes}. The request filters have already seen the
+ * URI of the first node, so requests are counted and traced independently of the node they are sent to.
+ */
+public class LoadBalancingHttpEngine implements ClientHttpEngine {
+    private final ClientHttpEngine delegate;
+    private final KeycloakNodes keycloakNodes;
+
+    public LoadBalancingHttpEngine(ClientHttpEngine delegate, KeycloakNodes keycloakNodes) {
+        this.delegate = delegate;
+        this.keycloakNodes = keycloakNodes;
+    }
+
+    @Override
+    public SSLContext getSslContext() {
+        return delegate.getSslContext();
+    }
+
+    @Override
+    public HostnameVerifier getHostnameVerifier() {
+        return delegate.getHostnameVerifier();
+    }
+
+    @Override
+    public ClientResponse invoke(ClientInvocation request) {
+        KeycloakNodes.Node node = keycloakNodes.acquire(request.getMethod());
+        boolean successful = false;
+
+        try {
+            request.setUri(keycloakNodes.route(request.getUri(), node));
+
+            ClientResponse response = delegate.invoke(request);
+            successful = response.getStatus() < 500;
+
+            return response;
+        } finally {
+            keycloakNodes.release(node, successful);
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.borisskert.keycloak.config.service.http;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Records every request of the keycloak admin client (inclusive token requests) and the bytes of every response body
+ * within the {@link RequestStatistics}. The bytes are counted while the body is read, so chunked responses without
+ * Content-Length are counted as well.
+ */
+public class RequestCountingFilter implements ClientRequestFilter, ClientResponseFilter {
+
+    private final RequestStatistics requestStatistics;
+
+    public RequestCountingFilter(RequestStatistics requestStatistics) {
+        this.requestStatistics = requestStatistics;
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        requestStatistics.record(requestContext.getMethod(), requestContext.getUri().getRawPath());
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) {
+        InputStream entityStream = responseContext.getEntityStream();
+
+        if (entityStream != null) {
+            responseContext.setEntityStream(new CountingInputStream(entityStream, requestStatistics));
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final RequestStatistics requestStatistics;
+
+        private CountingInputStream(InputStream in, RequestStatistics requestStatistics) {
+            super(in);
+            this.requestStatistics = requestStatistics;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+
+            if (value >= 0) {
+                requestStatistics.recordResponseBytes(1);
+            }
+
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+
+            if (count > 0) {
+                requestStatistics.recordResponseBytes(count);
+            }
+
+            return count;
+        }
+
+        @Override
+        public long skip(long length) throws IOException {
+            long count = super.skip(length);
+            requestStatistics.recordResponseBytes(count);
+
+            return count;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.borisskert.keycloak.config.service.http;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Counts the HTTP requests sent to keycloak per method and endpoint. An endpoint is the path of the request without
+ * query, every UUID within the path is replaced by `{id}`, so all requests for the same kind of entity are counted
+ * together, like `GET /auth/admin/realms/moped/users/{id}`. The bytes of the response bodies are summed up as they are
+ * read.
+ */
+@Component
+public class RequestStatistics {
+
+    private static final Pattern UUID_PATTERN = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}"
+    );
+
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final LongAdder responseBytes = new LongAdder();
+
+    public void record(String method, String path) {
+        counts.computeIfAbsent(toKey(method, path), key -> new LongAdder())
+                .increment();
+    }
+
+    public void recordResponseBytes(long bytes) {
+        responseBytes.add(bytes);
+    }
+
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    public long getCount() {
+        return counts.values()
+                .stream()
+                .mapToLong(LongAdder::sum)
+                .sum();
+    }
+
+    public long getCount(String method, String endpoint) {
+        LongAdder count = counts.get(method + " " + endpoint);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * @return the counts keyed by method and endpoint, like `GET /auth/admin/realms/moped`, sorted by key
+     */
+    public SortedMap<String, Long> getCounts() {
+        SortedMap<String, Long> snapshot = new TreeMap<>();
+
+        for (Map.Entry<String, LongAdder> count : counts.entrySet()) {
+            snapshot.put(count.getKey(), count.getValue().sum());
+        }
+
+        return snapshot;
+    }
+
+    public void reset() {
+        counts.clear();
+        responseBytes.reset();
+    }
+
+    static String toEndpoint(String path) {
+        return UUID_PATTERN.matcher(path).replaceAll("{id}");
+    }
+
+    private static String toKey(String method, String path) {
+        return method + " " + toEndpoint(path);
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.borisskert.keycloak.config.service.http;
+
+import com.github.borisskert.keycloak.config.service.trace.Span;
+import com.github.borisskert.keycloak.config.service.trace.Tracer;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+
+/**
+ * Records a span for every request of the keycloak admin client as child of the current span of the calling thread.
+ * The span is named by method and endpoint (see {@link RequestStatistics}) and has the HTTP status and the length of
+ * the response body as attributes. Requests failing without response are not recorded.
+ */
+public class TracingFilter implements ClientRequestFilter, ClientResponseFilter {
+
+    private static final String SPAN_PROPERTY = TracingFilter.class.getName() + ".span";
+
+    private final Tracer tracer;
+
+    public TracingFilter(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        if (!tracer.isEnabled()) {
+            return;
+        }
+
+        String path = requestContext.getUri().getRawPath();
+
+        Span span = tracer.startDetachedSpan(requestContext.getMethod() + " " + RequestStatistics.toEndpoint(path))
+                .setAttribute("http.method", requestContext.getMethod())
+                .setAttribute("http.path", path);
+
+        requestContext.setProperty(SPAN_PROPERTY, span);
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) {
+        Span span = (Span) requestContext.getProperty(SPAN_PROPERTY);
+
+        if (span == null) {
+            return;
+        }
+
+        span.setAttribute("http.status_code", responseContext.getStatus());
+
+        if (responseContext.getLength() >= 0) {
+            span.setAttribute("http.response_content_length", responseContext.getLength());
+        }
+
+        span.close();
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.borisskert.keycloak.config.service.journal;
+
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
+import org.apache.logging.log4j.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the entities which have been imported completely, so a failed import can be resumed by importing
+ * the same file again. The journal is disabled as long as the property `import.journal` is not set to a directory.
+ */
+@Service
+public class ImportJournal {
+    private static final Logger logger = LoggerFactory.getLogger(ImportJournal.class);
+
+    @Value("${import.journal:#{null}}")
+    private String journalDirectoryPath;
+
+    private final Map<String, RealmJournal> openJournals = new ConcurrentHashMap<>();
+
+    public void open(String realm, String checksum) {
+        if (Strings.isBlank(journalDirectoryPath)) {
+            return;
+        }
+
+        Path journalFile = createJournalDirectory().resolve(realm + ".journal");
+        logger.debug("Open import journal '{}' for realm '{}'", journalFile, realm);
+
+        RealmJournal previousJournal = openJournals.put(realm, RealmJournal.open(journalFile, checksum));
+
+        if (previousJournal != null) {
+            previousJournal.close();
+        }
+    }
+
+    /**
+     * @return the open journal of the realm or a disabled journal
+     */
+    public RealmJournal get(String realm) {
+        return openJournals.getOrDefault(realm, RealmJournal.disabled());
+    }
+
+    /**
+     * Deletes the journal of the successfully imported realm
+     */
+    public void complete(String realm) {
+        RealmJournal journal = openJournals.remove(realm);
+
+        if (journal != null) {
+            journal.delete();
+        }
+    }
+
+    /**
+     * Closes the journal of the realm and keeps its journal file to be able to resume the import
+     */
+    public void close(String realm) {
+        RealmJournal journal = openJournals.remove(realm);
+
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private Path createJournalDirectory() {
+        Path journalDirectory = Paths.get(journalDirectoryPath);
+
+        try {
+            return Files.createDirectories(journalDirectory);
+        } catch (IOException e) {
+            throw new ImportProcessingException("Cannot create import journal directory '" + journalDirectory + "'", e);
+        }
+    }
+}
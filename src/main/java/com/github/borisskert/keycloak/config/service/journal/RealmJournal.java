@@ -0,0 +1,187 @@
+package com.github.borisskert.keycloak.config.service.journal;
+
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Append-only journal of the entities of one realm which have been imported completely. The first line of the
+ * journal file contains the checksum of the import, each other line contains one completed entity of a section.
+ * Entries are written buffered and synced to disk every {@value #SYNC_INTERVAL} entries, so a crash may lose the
+ * latest entries which only means these entities will be imported again.
+ */
+public class RealmJournal {
+    private static final int SYNC_INTERVAL = 100;
+
+    private static final RealmJournal DISABLED = new RealmJournal(null, null);
+
+    private final Path journalFile;
+    private final String checksum;
+
+    private final Set<String> completedEntries = new HashSet<>();
+
+    private FileChannel channel;
+    private Writer writer;
+    private int unsyncedEntries;
+
+    private RealmJournal(Path journalFile, String checksum) {
+        this.journalFile = journalFile;
+        this.checksum = checksum;
+    }
+
+    /**
+     * @return a journal which never has any completed entries and does not write anything
+     */
+    public static RealmJournal disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Opens the journal file and reads its entries if it has been written for the same checksum, otherwise the
+     * journal file will be started from scratch.
+     */
+    static RealmJournal open(Path journalFile, String checksum) {
+        RealmJournal journal = new RealmJournal(journalFile, checksum);
+
+        try {
+            journal.readAndOpen();
+        } catch (IOException e) {
+            throw new ImportProcessingException("Cannot open import journal '" + journalFile + "'", e);
+        }
+
+        return journal;
+    }
+
+    public synchronized boolean isCompleted(String section, String entity) {
+        return completedEntries.contains(toEntry(section, entity));
+    }
+
+    public synchronized void complete(String section, String entity) {
+        if (writer == null) {
+            return;
+        }
+
+        String entry = toEntry(section, entity);
+
+        if (completedEntries.add(entry)) {
+            try {
+                writer.write(entry);
+                writer.write('\n');
+
+                if (++unsyncedEntries >= SYNC_INTERVAL) {
+                    sync();
+                }
+            } catch (IOException e) {
+                throw new ImportProcessingException("Cannot write into import journal '" + journalFile + "'", e);
+            }
+        }
+    }
+
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+
+        try {
+            sync();
+            writer.close();
+        } catch (IOException e) {
+            throw new ImportProcessingException("Cannot close import journal '" + journalFile + "'", e);
+        } finally {
+            writer = null;
+            channel = null;
+        }
+    }
+
+    /**
+     * Closes and deletes the journal file, should be called after a successful import
+     */
+    public synchronized void delete() {
+        if (journalFile == null) {
+            return;
+        }
+
+        close();
+
+        try {
+            Files.deleteIfExists(journalFile);
+        } catch (IOException e) {
+            throw new ImportProcessingException("Cannot delete import journal '" + journalFile + "'", e);
+        }
+    }
+
+    private void readAndOpen() throws IOException {
+        if (Files.exists(journalFile)) {
+            readEntries();
+        }
+
+        channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+
+        if (completedEntries.isEmpty()) {
+            channel.truncate(0);
+            writer.write(checksum);
+            writer.write('\n');
+            sync();
+        } else {
+            channel.position(channel.size());
+        }
+    }
+
+    private void readEntries() throws IOException {
+        byte[] journalInBytes = Files.readAllBytes(journalFile);
+        int lengthOfCompleteLines = lastIndexOf(journalInBytes, (byte) '\n') + 1;
+
+        String[] lines = new String(journalInBytes, 0, lengthOfCompleteLines, StandardCharsets.UTF_8).split("\n");
+
+        if (lines.length < 2 || !lines[0].equals(checksum)) {
+            return;
+        }
+
+        for (int index = 1; index < lines.length; index++) {
+            completedEntries.add(lines[index]);
+        }
+
+        // remove any incomplete line written while crashing
+        try (FileChannel truncatingChannel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+            truncatingChannel.truncate(lengthOfCompleteLines);
+        }
+    }
+
+    private void sync() throws IOException {
+        writer.flush();
+        channel.force(false);
+
+        unsyncedEntries = 0;
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte value) {
+        for (int index = bytes.length - 1; index >= 0; index--) {
+            if (bytes[index] == value) {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    private static String toEntry(String section, String entity) {
+        return escape(section) + '\t' + escape(entity);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("\t", "\\t")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r");
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.borisskert.keycloak.config.service.report;
+
+/**
+ * What happened to an imported entity
+ */
+public enum EntityOutcome {
+    CREATED,
+    UPDATED,
+    UNCHANGED,
+    DELETED
+}
@@ -0,0 +1,188 @@
+package com.github.borisskert.keycloak.config.service.report;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
+import com.github.borisskert.keycloak.config.service.http.RequestStatistics;
+import org.apache.logging.log4j.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the figures of an import run and writes them as JSON into `import.report-file`: the wall time of the run,
+ * of every realm and of every section of a realm import, the created, updated, unchanged and deleted entities and the
+ * HTTP requests and response bytes per section. The current section is kept per thread, like the current span of the
+ * tracer: a section started by {@link #startSection(String)} counts the entities of its thread until it's closed.
+ * Tasks running on other threads have to count into the section of {@link #currentSection()} passed explicitly.
+ * <p>
+ * Without `import.report-file` nothing is collected.
+ */
+@Component
+public class ImportReport {
+    private static final Logger logger = LoggerFactory.getLogger(ImportReport.class);
+
+    private final RequestStatistics requestStatistics;
+    private final ObjectMapper objectMapper;
+
+    @Value("${import.report-file:#{null}}")
+    private String reportFile;
+
+    private final List<RealmReport> realms = new ArrayList<>();
+
+    private boolean running;
+    private Instant startedAt;
+    private long startNanos;
+    private long startRequests;
+    private long startResponseBytes;
+    private long loadTimeMillis;
+
+    private volatile RealmReport currentRealm;
+    private final ThreadLocal<SectionReport> currentSection = new ThreadLocal<>();
+
+    @Autowired
+    public ImportReport(RequestStatistics requestStatistics) {
+        this.requestStatistics = requestStatistics;
+        this.objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    public boolean isEnabled() {
+        return Strings.isNotBlank(reportFile);
+    }
+
+    public synchronized void startRun() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        realms.clear();
+        running = true;
+        startedAt = Instant.now();
+        startNanos = System.nanoTime();
+        startRequests = requestStatistics.getCount();
+        startResponseBytes = requestStatistics.getResponseBytes();
+    }
+
+    public synchronized void setLoadTimeMillis(long loadTimeMillis) {
+        this.loadTimeMillis = loadTimeMillis;
+    }
+
+    /**
+     * Any realm import outside of a run (like in watch mode) gets a report which is not written
+     */
+    public synchronized RealmReport startRealm(String realm) {
+        RealmReport realmReport = new RealmReport(realm);
+
+        if (running) {
+            realms.add(realmReport);
+            currentRealm = realmReport;
+        }
+
+        return realmReport;
+    }
+
+    public SectionReport startSection(String name) {
+        SectionReport section = new SectionReport(
+                this,
+                name,
+                requestStatistics.getCount(),
+                requestStatistics.getResponseBytes()
+        );
+
+        RealmReport realm = currentRealm;
+
+        if (realm != null) {
+            realm.addSection(section);
+            currentSection.set(section);
+        }
+
+        return section;
+    }
+
+    void finishSection(SectionReport section) {
+        section.finish(requestStatistics.getCount(), requestStatistics.getResponseBytes());
+
+        if (currentSection.get() == section) {
+            currentSection.remove();
+        }
+    }
+
+    /**
+     * @return the current section of this thread, to be passed to tasks running on other threads
+     */
+    public SectionReport currentSection() {
+        SectionReport section = currentSection.get();
+        return section == null ? SectionReport.NOOP : section;
+    }
+
+    public void created() {
+        count(EntityOutcome.CREATED, 1);
+    }
+
+    public void created(long entities) {
+        count(EntityOutcome.CREATED, entities);
+    }
+
+    public void updated() {
+        count(EntityOutcome.UPDATED, 1);
+    }
+
+    public void unchanged() {
+        count(EntityOutcome.UNCHANGED, 1);
+    }
+
+    public void deleted() {
+        count(EntityOutcome.DELETED, 1);
+    }
+
+    private void count(EntityOutcome outcome, long entities) {
+        currentSection().count(outcome, entities);
+    }
+
+    /**
+     * Writes the report of the run, if enabled. Realms imported afterwards are not reported anymore.
+     *
+     * @param error the cause of a failed run, null if the run was successful
+     */
+    public synchronized void finishRun(Throwable error) {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        currentRealm = null;
+        currentSection.remove();
+
+        ObjectNode report = objectMapper.createObjectNode();
+        report.put("startedAt", startedAt.toString());
+        report.put("successful", error == null);
+
+        if (error != null) {
+            report.put("error", String.valueOf(error.getMessage()));
+        }
+
+        report.put("wallTimeMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        report.put("loadTimeMillis", loadTimeMillis);
+        report.put("requests", requestStatistics.getCount() - startRequests);
+        report.put("responseBytes", requestStatistics.getResponseBytes() - startResponseBytes);
+        report.set("realms", objectMapper.valueToTree(realms));
+
+        try {
+            objectMapper.writeValue(new File(reportFile), report);
+        } catch (IOException e) {
+            throw new ImportProcessingException("Cannot write import report '" + reportFile + "'", e);
+        }
+
+        logger.debug("Wrote import report '{}'", reportFile);
+    }
+}
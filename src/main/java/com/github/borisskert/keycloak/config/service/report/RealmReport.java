@@ -0,0 +1,70 @@
+package com.github.borisskert.keycloak.config.service.report;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The figures of the import of one realm
+ */
+@JsonPropertyOrder({"realm", "action", "checksumUnchanged", "wallTimeMillis", "sections"})
+public class RealmReport implements AutoCloseable {
+    public static final String ACTION_CREATED = "created";
+    public static final String ACTION_UPDATED = "updated";
+    public static final String ACTION_UPDATED_SHARDS = "updated-shards";
+    public static final String ACTION_SKIPPED = "skipped";
+
+    private final String realm;
+    private final long startNanos;
+    private final List<SectionReport> sections = Collections.synchronizedList(new ArrayList<>());
+
+    private String action;
+    private long wallTimeMillis;
+
+    RealmReport(String realm) {
+        this.realm = realm;
+        this.startNanos = System.nanoTime();
+    }
+
+    public String getRealm() {
+        return realm;
+    }
+
+    /**
+     * @return one of `created`, `updated`, `updated-shards` or `skipped`
+     */
+    public String getAction() {
+        return action;
+    }
+
+    public void setAction(String action) {
+        this.action = action;
+    }
+
+    /**
+     * @return true if the import has been skipped because the checksum of the realm didn't change
+     */
+    public boolean isChecksumUnchanged() {
+        return ACTION_SKIPPED.equals(action);
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    public List<SectionReport> getSections() {
+        return sections;
+    }
+
+    void addSection(SectionReport section) {
+        sections.add(section);
+    }
+
+    @Override
+    public void close() {
+        wallTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.borisskert.keycloak.config.service.report;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The figures of one section (like `clients` or `users`) of a realm import. The entities may be counted by several
+ * threads at once, tasks running on other threads get the section passed explicitly like a parent span.
+ */
+@JsonPropertyOrder({"name", "wallTimeMillis", "created", "updated", "unchanged", "deleted", "requests", "responseBytes"})
+public class SectionReport implements AutoCloseable {
+    /**
+     * The section of any code running outside of a reported section, its entities are not counted
+     */
+    public static final SectionReport NOOP = new SectionReport(null, "noop", 0, 0);
+
+    private final ImportReport importReport;
+    private final String name;
+    private final long startNanos;
+    private final long startRequests;
+    private final long startResponseBytes;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder updated = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+
+    private long wallTimeMillis;
+    private long requests;
+    private long responseBytes;
+
+    SectionReport(ImportReport importReport, String name, long startRequests, long startResponseBytes) {
+        this.importReport = importReport;
+        this.name = name;
+        this.startNanos = System.nanoTime();
+        this.startRequests = startRequests;
+        this.startResponseBytes = startResponseBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    public long getCreated() {
+        return created.sum();
+    }
+
+    public long getUpdated() {
+        return updated.sum();
+    }
+
+    public long getUnchanged() {
+        return unchanged.sum();
+    }
+
+    public long getDeleted() {
+        return deleted.sum();
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    public void created() {
+        count(EntityOutcome.CREATED, 1);
+    }
+
+    public void created(long entities) {
+        count(EntityOutcome.CREATED, entities);
+    }
+
+    public void updated() {
+        count(EntityOutcome.UPDATED, 1);
+    }
+
+    public void unchanged() {
+        count(EntityOutcome.UNCHANGED, 1);
+    }
+
+    public void deleted() {
+        count(EntityOutcome.DELETED, 1);
+    }
+
+    void count(EntityOutcome outcome, long entities) {
+        if (this == NOOP) {
+            return;
+        }
+
+        switch (outcome) {
+            case CREATED:
+                created.add(entities);
+                break;
+            case UPDATED:
+                updated.add(entities);
+                break;
+            case UNCHANGED:
+                unchanged.add(entities);
+                break;
+            case DELETED:
+                deleted.add(entities);
+                break;
+        }
+    }
+
+    void finish(long endRequests, long endResponseBytes) {
+        this.wallTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        this.requests = endRequests - startRequests;
+        this.responseBytes = endResponseBytes - startResponseBytes;
+    }
+
+    @Override
+    public void close() {
+        if (this == NOOP) {
+            return;
+        }
+
+        importReport.finishSection(this);
+    }
+}
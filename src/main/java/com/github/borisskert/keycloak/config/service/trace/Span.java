@@ -0,0 +1,83 @@
+package com.github.borisskert.keycloak.config.service.trace;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A timed operation of the import, like a phase of a realm import, the import of one entity or one HTTP request.
+ * Spans are created by the {@link Tracer} and written into the trace file as soon as they are closed.
+ */
+public class Span implements AutoCloseable {
+
+    static final Span NOOP = new Span(null, 0, null, null, null) {
+        @Override
+        public Span setAttribute(String key, Object value) {
+            return this;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final Tracer tracer;
+    private final long id;
+    private final Span parent;
+    private final Span previous;
+    private final String name;
+    private final long startNanos = System.nanoTime();
+    private final long threadId = Thread.currentThread().getId();
+    private final Map<String, Object> attributes = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    Span(Tracer tracer, long id, Span parent, Span previous, String name) {
+        this.tracer = tracer;
+        this.id = id;
+        this.parent = parent;
+        this.previous = previous;
+        this.name = name;
+    }
+
+    public Span setAttribute(String key, Object value) {
+        attributes.put(key, value);
+        return this;
+    }
+
+    @Override
+    public void close() {
+        tracer.end(this, System.nanoTime());
+    }
+
+    long getId() {
+        return id;
+    }
+
+    Span getParent() {
+        return parent;
+    }
+
+    /**
+     * @return the span which was the current span of the thread before this span has been started
+     */
+    Span getPrevious() {
+        return previous;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    long getThreadId() {
+        return threadId;
+    }
+
+    Map<String, Object> getAttributes() {
+        synchronized (attributes) {
+            return new LinkedHashMap<>(attributes);
+        }
+    }
+}
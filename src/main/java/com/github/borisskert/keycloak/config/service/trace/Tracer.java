@@ -0,0 +1,183 @@
+package com.github.borisskert.keycloak.config.service.trace;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records spans into the file `import.trace-file` in the Chrome trace event format, which can be loaded by
+ * `chrome://tracing` or https://ui.perfetto.dev. Every closed span is written immediately as complete event
+ * (`"ph": "X"`) into a JSON array, the ids of the span and its parent are part of the event's `args`. If no trace
+ * file is configured, all spans are no-ops.
+ * <p>
+ * The current span is kept per thread: a span started by {@link #startSpan(String)} is the parent of all spans started
+ * on the same thread until it's closed. Tasks running on other threads have to pass their parent explicitly.
+ */
+@Component
+public class Tracer implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(Tracer.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ThreadLocal<Span> currentSpan = new ThreadLocal<>();
+    private final AtomicLong spanIds = new AtomicLong();
+
+    private final long startNanos = System.nanoTime();
+    private final long startMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+
+    @Value("${import.trace-file:#{null}}")
+    private String traceFile;
+
+    private Writer writer;
+    private boolean hasWrittenEvents;
+    private boolean isClosed;
+
+    public boolean isEnabled() {
+        return Strings.isNotBlank(traceFile);
+    }
+
+    /**
+     * Starts a span as child of the current span of this thread, the started span becomes the current span until
+     * it's closed
+     */
+    public Span startSpan(String name) {
+        return startSpan(name, currentSpan.get());
+    }
+
+    /**
+     * Starts a span as child of the given span, the started span becomes the current span of this thread until it's
+     * closed
+     */
+    public Span startSpan(String name, Span parent) {
+        if (!isEnabled()) {
+            return Span.NOOP;
+        }
+
+        Span span = new Span(this, spanIds.incrementAndGet(), parentOrNull(parent), currentSpan.get(), name);
+        currentSpan.set(span);
+
+        return span;
+    }
+
+    /**
+     * Starts a span as child of the current span of this thread without becoming the current span itself, so it may
+     * be left unclosed (like a failed HTTP request) without affecting other spans
+     */
+    public Span startDetachedSpan(String name) {
+        if (!isEnabled()) {
+            return Span.NOOP;
+        }
+
+        return new Span(this, spanIds.incrementAndGet(), currentSpan.get(), null, name);
+    }
+
+    /**
+     * @return the current span of this thread, to be passed as parent to tasks running on other threads
+     */
+    public Span currentSpan() {
+        Span span = currentSpan.get();
+        return span == null ? Span.NOOP : span;
+    }
+
+    @Override
+    public synchronized void destroy() throws IOException {
+        isClosed = true;
+
+        if (writer != null) {
+            writer.write("\n]\n");
+            writer.close();
+            writer = null;
+        }
+    }
+
+    void end(Span span, long endNanos) {
+        if (currentSpan.get() == span) {
+            if (span.getPrevious() == null) {
+                currentSpan.remove();
+            } else {
+                currentSpan.set(span.getPrevious());
+            }
+        }
+
+        write(toEvent(span, endNanos));
+    }
+
+    private Map<String, Object> toEvent(Span span, long endNanos) {
+        Map<String, Object> args = new LinkedHashMap<>();
+        args.put("span.id", span.getId());
+
+        if (span.getParent() != null) {
+            args.put("parent.id", span.getParent().getId());
+        }
+
+        args.putAll(span.getAttributes());
+
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("name", span.getName());
+        event.put("ph", "X");
+        event.put("ts", toMicros(span.getStartNanos()));
+        event.put("dur", TimeUnit.NANOSECONDS.toMicros(endNanos - span.getStartNanos()));
+        event.put("pid", 1);
+        event.put("tid", span.getThreadId());
+        event.put("args", args);
+
+        return event;
+    }
+
+    private long toMicros(long nanos) {
+        return startMicros + TimeUnit.NANOSECONDS.toMicros(nanos - startNanos);
+    }
+
+    /**
+     * The closing bracket of the array is written on shutdown, but it's optional for trace viewers. Every event is
+     * written together with its separator and flushed at once, so the file is readable even after a crash.
+     */
+    private synchronized void write(Map<String, Object> event) {
+        if (isClosed) {
+            return;
+        }
+
+        try {
+            if (writer == null) {
+                writer = openTraceFile();
+            }
+
+            String separator = hasWrittenEvents ? ",\n" : "[\n";
+            writer.write(separator + objectMapper.writeValueAsString(event));
+            writer.flush();
+            hasWrittenEvents = true;
+        } catch (IOException e) {
+            logger.warn("Cannot write span '{}' into trace file '{}'", event.get("name"), traceFile, e);
+        }
+    }
+
+    private Writer openTraceFile() throws IOException {
+        Path path = Paths.get(traceFile);
+        Path parent = path.toAbsolutePath().getParent();
+
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        return Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+    }
+
+    private static Span parentOrNull(Span parent) {
+        return parent == Span.NOOP ? null : parent;
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.borisskert.keycloak.config.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads calls of many threads evenly over time, so at most the given number of calls is started per second
+ */
+public class RateLimiter {
+    private final long intervalInNanos;
+    private long nextPermitInNanos;
+
+    public RateLimiter(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Permits per second have to be positive");
+        }
+
+        this.intervalInNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.nextPermitInNanos = System.nanoTime();
+    }
+
+    /**
+     * Blocks until the next call is permitted
+     */
+    public void acquire() throws InterruptedException {
+        long waitTimeInNanos = reserve();
+
+        if (waitTimeInNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitTimeInNanos);
+        }
+    }
+
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        long permit = Math.max(now, nextPermitInNanos);
+
+        nextPermitInNanos = permit + intervalInNanos;
+
+        return permit - now;
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.borisskert.keycloak.config.util;
+
+import java.util.*;
+
+/**
+ * Canonicalizes equal strings to one instance, like {@link String#intern()} but limited to the lifetime of the pool.
+ * Not thread-safe: use one pool per import file.
+ */
+public class StringPool {
+    private final Map<String, String> strings = new HashMap<>();
+
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String pooledValue = strings.putIfAbsent(value, value);
+        return pooledValue == null ? value : pooledValue;
+    }
+
+    public List<String> intern(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+
+        List<String> pooledValues = new ArrayList<>(values.size());
+
+        for (String value : values) {
+            pooledValues.add(intern(value));
+        }
+
+        return pooledValues;
+    }
+
+    public Map<String, List<String>> intern(Map<String, List<String>> values) {
+        if (values == null) {
+            return null;
+        }
+
+        Map<String, List<String>> pooledValues = new LinkedHashMap<>();
+
+        for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+            pooledValues.put(intern(entry.getKey()), intern(entry.getValue()));
+        }
+
+        return pooledValues;
+    }
+
+    public int size() {
+        return strings.size();
+    }
+}
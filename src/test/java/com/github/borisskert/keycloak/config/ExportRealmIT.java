@@ -0,0 +1,109 @@
+package com.github.borisskert.keycloak.config;
+
+import com.github.borisskert.keycloak.config.configuration.TestConfiguration;
+import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.service.KeycloakImportProvider;
+import com.github.borisskert.keycloak.config.service.KeycloakProvider;
+import com.github.borisskert.keycloak.config.service.RealmExportService;
+import com.github.borisskert.keycloak.config.service.RealmImportService;
+import com.github.borisskert.keycloak.config.util.KeycloakImportUtil;
+import com.github.borisskert.keycloak.config.util.KeycloakRepository;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.representations.idm.ClientRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.ConfigFileApplicationContextInitializer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+@SpringBootTest
+@ContextConfiguration(
+        classes = {TestConfiguration.class},
+        initializers = {ConfigFileApplicationContextInitializer.class}
+)
+@ActiveProfiles("IT")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ExportRealmIT {
+    private static final String REALM_NAME = "realmToExport";
+
+    @TempDir
+    Path exportDirectory;
+
+    @Autowired
+    KeycloakProvider keycloakProvider;
+
+    @Autowired
+    KeycloakRepository keycloakRepository;
+
+    @Autowired
+    KeycloakImportUtil importUtil;
+
+    @Autowired
+    KeycloakImportProvider keycloakImportProvider;
+
+    @Autowired
+    RealmImportService realmImportService;
+
+    @Autowired
+    RealmExportService realmExportService;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        importUtil.workdir("import-files/export");
+    }
+
+    @AfterEach
+    public void cleanup() throws Exception {
+        keycloakProvider.close();
+    }
+
+    @Test
+    @Order(0)
+    void shouldCreateRealmWithConfidentialClient() throws Exception {
+        importUtil.doImport("0_create_realm_with_confidential_client.json");
+
+        assertThat(getClientSecret("confidential-client"), is("my-confidential-client-secret"));
+    }
+
+    @Test
+    @Order(1)
+    void shouldKeepClientSecretWhenImportingExportedRealm() throws Exception {
+        File exportFile = exportDirectory.resolve(REALM_NAME + ".json").toFile();
+        realmExportService.doExport(REALM_NAME, exportFile);
+
+        RealmImport exportedRealm = keycloakImportProvider.readRealmImport(exportFile);
+
+        ClientRepresentation exportedClient = exportedRealm.getClients()
+                .stream()
+                .filter(client -> client.getClientId().equals("confidential-client"))
+                .findFirst()
+                .get();
+
+        assertThat(exportedClient.getSecret(), is(nullValue()));
+        assertThat(keycloakRepository.getUser(REALM_NAME, "myuser").getEmail(), is("myuser@mail.de"));
+
+        realmImportService.doImport(exportedRealm);
+
+        assertThat(getClientSecret("confidential-client"), is("my-confidential-client-secret"));
+        assertThat(keycloakRepository.getUser(REALM_NAME, "myuser").getEmail(), is("myuser@mail.de"));
+    }
+
+    private String getClientSecret(String clientId) {
+        ClientRepresentation client = keycloakRepository.getClient(REALM_NAME, clientId);
+
+        return keycloakProvider.get()
+                .realm(REALM_NAME)
+                .clients()
+                .get(client.getId())
+                .getSecret()
+                .getValue();
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.borisskert.keycloak.config;
+
+import com.github.borisskert.keycloak.config.configuration.TestConfiguration;
+import com.github.borisskert.keycloak.config.service.KeycloakProvider;
+import com.github.borisskert.keycloak.config.service.RealmImportService;
+import com.github.borisskert.keycloak.config.util.KeycloakImportUtil;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.*;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.representations.idm.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.ConfigFileApplicationContextInitializer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@SpringBootTest
+@ContextConfiguration(
+        classes = {TestConfiguration.class},
+        initializers = {ConfigFileApplicationContextInitializer.class}
+)
+@ActiveProfiles("IT")
+@TestPropertySource(properties = {
+        "import.fresh-realm-fast-path=true",
+        "import.managed-user-attribute=managed-by-import"
+})
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ImportFreshRealmIT {
+    private static final String REALM_NAME = "realmCreatedWithFastPath";
+    private static final String MANAGED_USER_ATTRIBUTE = "managed-by-import";
+
+    private static Map<String, Object> realmCreatedWithFastPath;
+
+    @Autowired
+    KeycloakProvider keycloakProvider;
+
+    @Autowired
+    RealmImportService realmImportService;
+
+    @Autowired
+    KeycloakImportUtil importUtil;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        importUtil.workdir("import-files/fresh-realm");
+    }
+
+    @AfterEach
+    void cleanup() throws Exception {
+        ReflectionTestUtils.setField(realmImportService, "freshRealmFastPath", true);
+        keycloakProvider.close();
+    }
+
+    @Test
+    @Order(0)
+    void shouldCreateRealmWithFastPath() throws Exception {
+        doImport("0_create_realm.json");
+
+        realmCreatedWithFastPath = describeRealm();
+
+        assertThat(realmCreatedWithFastPath.get("users"), is(not(equalTo(Collections.emptyMap()))));
+        assertThat(getManagedAttributes(realmCreatedWithFastPath), everyItem(is(equalTo(ImmutableList.of("true")))));
+
+        realm().remove();
+    }
+
+    @Test
+    @Order(1)
+    void shouldCreateSameRealmWithoutFastPath() throws Exception {
+        ReflectionTestUtils.setField(realmImportService, "freshRealmFastPath", false);
+
+        doImport("0_create_realm.json");
+
+        Map<String, Object> realmCreatedWithoutFastPath = describeRealm();
+
+        assertThat(realmCreatedWithoutFastPath.get("users"), is(equalTo(realmCreatedWithFastPath.get("users"))));
+        assertThat(realmCreatedWithoutFastPath.get("groups"), is(equalTo(realmCreatedWithFastPath.get("groups"))));
+        assertThat(realmCreatedWithoutFastPath, is(equalTo(realmCreatedWithFastPath)));
+    }
+
+    /**
+     * Describes the users inclusive their attributes, role mappings and group memberships and the groups inclusive
+     * their role mappings by comparable values without any ids
+     */
+    private Map<String, Object> describeRealm() {
+        Map<String, Object> users = new TreeMap<>();
+
+        for (UserRepresentation user : realm().users().list()) {
+            UserResource userResource = realm().users().get(user.getId());
+            MappingsRepresentation roleMappings = userResource.roles().getAll();
+
+            Map<String, Object> description = new TreeMap<>();
+            description.put("email", user.getEmail());
+            description.put("attributes", describeAttributes(userResource.toRepresentation().getAttributes()));
+            description.put("realmRoles", describeRoles(roleMappings.getRealmMappings()));
+            description.put("clientRoles", describeClientRoles(roleMappings.getClientMappings()));
+            description.put("groups", userResource.groups().stream().map(GroupRepresentation::getPath).collect(Collectors.toCollection(TreeSet::new)));
+
+            users.put(user.getUsername(), description);
+        }
+
+        Map<String, Object> groups = new TreeMap<>();
+        describeGroups(realm().groups().groups(), groups);
+
+        Map<String, Object> realmDescription = new TreeMap<>();
+        realmDescription.put("users", users);
+        realmDescription.put("groups", groups);
+
+        return realmDescription;
+    }
+
+    private void describeGroups(List<GroupRepresentation> groups, Map<String, Object> groupDescriptions) {
+        for (GroupRepresentation group : groups) {
+            GroupRepresentation fullGroup = realm().groups().group(group.getId()).toRepresentation();
+
+            Map<String, Object> description = new TreeMap<>();
+            description.put("attributes", describeAttributes(fullGroup.getAttributes()));
+            description.put("realmRoles", new TreeSet<>(fullGroup.getRealmRoles()));
+            description.put("clientRoles", fullGroup.getClientRoles().entrySet()
+                    .stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, e -> new TreeSet<>(e.getValue()), (a, b) -> a, TreeMap::new)));
+
+            groupDescriptions.put(fullGroup.getPath(), description);
+
+            describeGroups(group.getSubGroups(), groupDescriptions);
+        }
+    }
+
+    private static Map<String, List<String>> describeAttributes(Map<String, List<String>> attributes) {
+        return new TreeMap<>(Optional.ofNullable(attributes).orElse(Collections.emptyMap()));
+    }
+
+    private static Set<String> describeRoles(List<RoleRepresentation> roles) {
+        return Optional.ofNullable(roles)
+                .orElse(Collections.emptyList())
+                .stream()
+                .map(RoleRepresentation::getName)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private static Map<String, Set<String>> describeClientRoles(Map<String, ClientMappingsRepresentation> clientMappings) {
+        return Optional.ofNullable(clientMappings)
+                .orElse(Collections.emptyMap())
+                .values()
+                .stream()
+                .collect(Collectors.toMap(
+                        ClientMappingsRepresentation::getClient,
+                        mappings -> describeRoles(mappings.getMappings()),
+                        (a, b) -> a,
+                        TreeMap::new
+                ));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> getManagedAttributes(Map<String, Object> realmDescription) {
+        Map<String, Map<String, Object>> users = (Map<String, Map<String, Object>>) realmDescription.get("users");
+
+        return users.values()
+                .stream()
+                .map(user -> ((Map<String, Object>) user.get("attributes")).get(MANAGED_USER_ATTRIBUTE))
+                .collect(Collectors.toList());
+    }
+
+    private RealmResource realm() {
+        return keycloakProvider.get().realm(REALM_NAME);
+    }
+
+    private void doImport(String realmImport) {
+        importUtil.doImport(realmImport);
+    }
+}
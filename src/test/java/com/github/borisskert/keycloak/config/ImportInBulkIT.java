@@ -0,0 +1,262 @@
+package com.github.borisskert.keycloak.config;
+
+import com.github.borisskert.keycloak.config.configuration.TestConfiguration;
+import com.github.borisskert.keycloak.config.repository.PartialImportRepository;
+import com.github.borisskert.keycloak.config.service.KeycloakProvider;
+import com.github.borisskert.keycloak.config.util.KeycloakImportUtil;
+import com.github.borisskert.keycloak.config.util.KeycloakRepository;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.*;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.representations.idm.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.ConfigFileApplicationContextInitializer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@SpringBootTest
+@ContextConfiguration(
+        classes = {TestConfiguration.class},
+        initializers = {ConfigFileApplicationContextInitializer.class}
+)
+@ActiveProfiles("IT")
+@TestPropertySource(properties = {
+        "import.bulk-create=true",
+        "import.bulk-create-chunk-size=1",
+        "import.managed-user-attribute=managed-by-import"
+})
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ImportInBulkIT {
+    private static final String REALM_NAME = "realmWithBulkCreation";
+    private static final String MANAGED_USER_ATTRIBUTE = "managed-by-import";
+
+    @Autowired
+    KeycloakProvider keycloakProvider;
+
+    @Autowired
+    KeycloakRepository keycloakRepository;
+
+    @Autowired
+    PartialImportRepository partialImportRepository;
+
+    @Autowired
+    KeycloakImportUtil importUtil;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        importUtil.workdir("import-files/bulk-create");
+    }
+
+    @AfterEach
+    void cleanup() throws Exception {
+        keycloakProvider.close();
+    }
+
+    @Test
+    @Order(0)
+    void shouldCreateRealm() throws Exception {
+        doImport("0_create_realm.json");
+
+        RealmRepresentation createdRealm = keycloakProvider.get().realm(REALM_NAME).toRepresentation();
+
+        assertThat(createdRealm.getRealm(), is(REALM_NAME));
+        assertThat(createdRealm.isEnabled(), is(true));
+    }
+
+    @Test
+    @Order(1)
+    void shouldCreateRolesWithCompositesInBulk() throws Exception {
+        doImport("1_update_realm_add_entities.json");
+
+        RoleRepresentation compositeRealmRole = getRealmRole("my_composite_realm_role");
+
+        assertThat(compositeRealmRole.isComposite(), is(true));
+        assertThat(compositeRealmRole.getComposites().getRealm(), is(equalTo(ImmutableSet.of("my_realm_role"))));
+        assertThat(compositeRealmRole.getComposites().getClient(), is(equalTo(ImmutableMap.of(
+                "moped-client", ImmutableList.of("my_client_role")
+        ))));
+
+        RoleRepresentation compositeClientRole = getClientRole("moped-client", "my_composite_client_role");
+
+        assertThat(compositeClientRole.isComposite(), is(true));
+        assertThat(compositeClientRole.getComposites().getRealm(), is(equalTo(ImmutableSet.of("my_realm_role"))));
+
+        assertThat(getClientRole("moped-client", "my_client_role").getDescription(), is("My moped-client role"));
+    }
+
+    @Test
+    @Order(2)
+    void shouldCreateGroupsWithRoleMappingsInBulk() throws Exception {
+        GroupRepresentation group = loadGroup("/My Group");
+
+        assertThat(group.getAttributes(), is(equalTo(ImmutableMap.of("my attribute", ImmutableList.of("my attribute value")))));
+        assertThat(group.getRealmRoles(), is(equalTo(ImmutableList.of("my_realm_role"))));
+        assertThat(group.getClientRoles(), is(equalTo(ImmutableMap.of("moped-client", ImmutableList.of("my_client_role")))));
+
+        GroupRepresentation subGroup = loadGroup("/My Group/My SubGroup");
+
+        assertThat(subGroup.getRealmRoles(), is(equalTo(ImmutableList.of("my_composite_realm_role"))));
+        assertThat(subGroup.getClientRoles(), is(equalTo(ImmutableMap.of("moped-client", ImmutableList.of("my_composite_client_role")))));
+    }
+
+    @Test
+    @Order(3)
+    void shouldCreateUsersWithRoleMappingsInBulk() throws Exception {
+        UserRepresentation user = loadUser("myuser");
+
+        assertThat(user.getEmail(), is("my@mail.de"));
+        assertThat(user.getFirstName(), is("My firstname"));
+        assertThat(user.getAttributes().get(MANAGED_USER_ATTRIBUTE), is(equalTo(ImmutableList.of("true"))));
+        assertThat(getRealmRoleMappings("myuser"), hasItem("my_realm_role"));
+        assertThat(getClientRoleMappings("myuser", "moped-client"), containsInAnyOrder("my_client_role"));
+        assertThat(getGroupPaths("myuser"), containsInAnyOrder("/My Group"));
+
+        UserRepresentation otherUser = loadUser("myotheruser");
+
+        assertThat(otherUser.getAttributes().get(MANAGED_USER_ATTRIBUTE), is(equalTo(ImmutableList.of("true"))));
+        assertThat(getRealmRoleMappings("myotheruser"), hasItem("my_composite_realm_role"));
+        assertThat(getClientRoleMappings("myotheruser", "moped-client"), containsInAnyOrder("my_composite_client_role"));
+        assertThat(getGroupPaths("myotheruser"), containsInAnyOrder("/My Group/My SubGroup"));
+    }
+
+    @Test
+    @Order(4)
+    void shouldSkipExistingEntitiesInBulk() throws Exception {
+        UserRepresentation existingUser = new UserRepresentation();
+        existingUser.setUsername("myuser");
+        existingUser.setEmail("my-skipped@mail.de");
+        existingUser.setEnabled(true);
+
+        GroupRepresentation existingGroup = new GroupRepresentation();
+        existingGroup.setName("My Group");
+        existingGroup.setAttributes(ImmutableMap.of("my attribute", ImmutableList.of("my skipped attribute value")));
+
+        RoleRepresentation existingRole = new RoleRepresentation();
+        existingRole.setName("my_realm_role");
+        existingRole.setDescription("My skipped realm role");
+
+        assertThat(partialImportRepository.createUsers(REALM_NAME, ImmutableList.of(existingUser)), is(empty()));
+        assertThat(partialImportRepository.createGroups(REALM_NAME, ImmutableList.of(existingGroup)), is(empty()));
+        assertThat(partialImportRepository.createRealmRoles(REALM_NAME, ImmutableList.of(existingRole)), is(empty()));
+
+        assertThat(loadUser("myuser").getEmail(), is("my@mail.de"));
+        assertThat(loadGroup("/My Group").getAttributes(), is(equalTo(ImmutableMap.of("my attribute", ImmutableList.of("my attribute value")))));
+        assertThat(getRealmRole("my_realm_role").getDescription(), is("My realm role"));
+    }
+
+    @Test
+    @Order(5)
+    void shouldUpdateExistingEntitiesAndCreateMissingOnes() throws Exception {
+        doImport("2_update_realm_change_entities.json");
+
+        assertThat(getRealmRole("my_realm_role").getDescription(), is("My changed realm role"));
+        assertThat(getRealmRole("my_composite_realm_role").getComposites().getRealm(), is(equalTo(ImmutableSet.of("my_realm_role"))));
+        assertThat(getRealmRole("my_composite_realm_role").getComposites().getClient(), is(nullValue()));
+        assertThat(getClientRole("moped-client", "my_client_role").getDescription(), is("My changed moped-client role"));
+        assertThat(keycloakRepository.getClient(REALM_NAME, "moped-client").getDescription(), is("My changed Moped-Client"));
+
+        GroupRepresentation group = loadGroup("/My Group");
+
+        assertThat(group.getAttributes(), is(equalTo(ImmutableMap.of("my attribute", ImmutableList.of("my changed attribute value")))));
+        assertThat(group.getRealmRoles(), is(equalTo(ImmutableList.of("my_composite_realm_role"))));
+        assertThat(loadGroup("/My Group/My SubGroup").getClientRoles(), is(equalTo(ImmutableMap.of("moped-client", ImmutableList.of("my_client_role")))));
+
+        UserRepresentation user = loadUser("myuser");
+
+        assertThat(user.getEmail(), is("my-changed@mail.de"));
+        assertThat(user.getAttributes().get(MANAGED_USER_ATTRIBUTE), is(equalTo(ImmutableList.of("true"))));
+        assertThat(getRealmRoleMappings("myuser"), hasItem("my_composite_realm_role"));
+        assertThat(getRealmRoleMappings("myuser"), not(hasItem("my_realm_role")));
+        assertThat(getGroupPaths("myuser"), containsInAnyOrder("/My Group/My SubGroup"));
+
+        UserRepresentation addedUser = loadUser("myaddeduser");
+
+        assertThat(addedUser.getEmail(), is("my-added@mail.de"));
+        assertThat(addedUser.getAttributes().get(MANAGED_USER_ATTRIBUTE), is(equalTo(ImmutableList.of("true"))));
+        assertThat(getRealmRoleMappings("myaddeduser"), hasItem("my_realm_role"));
+        assertThat(getClientRoleMappings("myaddeduser", "moped-client"), containsInAnyOrder("my_client_role"));
+        assertThat(getGroupPaths("myaddeduser"), containsInAnyOrder("/My Group"));
+    }
+
+    private RealmResource realm() {
+        return keycloakProvider.get().realm(REALM_NAME);
+    }
+
+    private RoleRepresentation getRealmRole(String roleName) {
+        return realm()
+                .partialExport(true, true)
+                .getRoles()
+                .getRealm()
+                .stream()
+                .filter(r -> Objects.equals(r.getName(), roleName))
+                .findFirst()
+                .get();
+    }
+
+    private RoleRepresentation getClientRole(String clientId, String roleName) {
+        return realm()
+                .partialExport(true, true)
+                .getRoles()
+                .getClient()
+                .get(clientId)
+                .stream()
+                .filter(r -> Objects.equals(r.getName(), roleName))
+                .findFirst()
+                .get();
+    }
+
+    private GroupRepresentation loadGroup(String groupPath) {
+        GroupRepresentation group = realm().getGroupByPath(groupPath);
+
+        return realm().groups().group(group.getId()).toRepresentation();
+    }
+
+    private UserRepresentation loadUser(String username) {
+        UserRepresentation user = keycloakRepository.getUser(REALM_NAME, username);
+
+        return realm().users().get(user.getId()).toRepresentation();
+    }
+
+    private List<String> getRealmRoleMappings(String username) {
+        MappingsRepresentation mappings = realm().users().get(loadUser(username).getId()).roles().getAll();
+
+        return mappings.getRealmMappings()
+                .stream()
+                .map(RoleRepresentation::getName)
+                .collect(Collectors.toList());
+    }
+
+    private List<String> getClientRoleMappings(String username, String clientId) {
+        MappingsRepresentation mappings = realm().users().get(loadUser(username).getId()).roles().getAll();
+
+        return Optional.ofNullable(mappings.getClientMappings())
+                .map(clientMappings -> clientMappings.get(clientId))
+                .map(ClientMappingsRepresentation::getMappings)
+                .orElse(Collections.emptyList())
+                .stream()
+                .map(RoleRepresentation::getName)
+                .collect(Collectors.toList());
+    }
+
+    private List<String> getGroupPaths(String username) {
+        return realm().users().get(loadUser(username).getId())
+                .groups()
+                .stream()
+                .map(GroupRepresentation::getPath)
+                .collect(Collectors.toList());
+    }
+
+    private void doImport(String realmImport) {
+        importUtil.doImport(realmImport);
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.borisskert.keycloak.config;
+
+import com.github.borisskert.keycloak.config.configuration.TestConfiguration;
+import com.github.borisskert.keycloak.config.service.KeycloakProvider;
+import com.github.borisskert.keycloak.config.util.KeycloakImportUtil;
+import com.github.borisskert.keycloak.config.util.KeycloakRepository;
+import org.junit.jupiter.api.*;
+import org.keycloak.representations.idm.RealmRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.ConfigFileApplicationContextInitializer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+
+@SpringBootTest
+@ContextConfiguration(
+        classes = {TestConfiguration.class},
+        initializers = {ConfigFileApplicationContextInitializer.class}
+)
+@ActiveProfiles("IT")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ImportShardedRealmIT {
+    private static final String REALM_NAME = "sharded";
+    private static final String SHARD_CHECKSUM_ATTRIBUTE_KEY_PREFIX = "com.github.borisskert.keycloak.config.import-checksum.";
+
+    @Autowired
+    KeycloakProvider keycloakProvider;
+
+    @Autowired
+    KeycloakImportUtil importUtil;
+
+    @Autowired
+    KeycloakRepository keycloakRepository;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        importUtil.workdir("import-files/sharded-realm");
+    }
+
+    @AfterEach
+    public void cleanup() throws Exception {
+        keycloakProvider.close();
+    }
+
+    @Test
+    @Order(0)
+    void shouldCreateRealmFromAllShards() throws Exception {
+        doImport("0_create_sharded-realm");
+
+        RealmRepresentation createdRealm = keycloakProvider.get().realm(REALM_NAME).toRepresentation();
+
+        assertThat(createdRealm.getRealm(), is(REALM_NAME));
+        assertThat(createdRealm.isEnabled(), is(true));
+        assertThat(createdRealm.getLoginTheme(), is("moped"));
+
+        UserRepresentation createdUser = keycloakRepository.getUser(REALM_NAME, "myuser");
+        assertThat(createdUser.getFirstName(), is("My firstname"));
+
+        UserRepresentation createdOtherUser = keycloakRepository.getUser(REALM_NAME, "myotheruser");
+        assertThat(createdOtherUser.getFirstName(), is("My other firstname"));
+    }
+
+    @Test
+    @Order(1)
+    void shouldUpdateUsersOfChangedShard() throws Exception {
+        RealmRepresentation realmBeforeUpdate = keycloakProvider.get().realm(REALM_NAME).toRepresentation();
+
+        doImport("1_update_users_of_sharded-realm");
+
+        RealmRepresentation updatedRealm = keycloakProvider.get().realm(REALM_NAME).toRepresentation();
+
+        assertThat(
+                updatedRealm.getAttributes().get(SHARD_CHECKSUM_ATTRIBUTE_KEY_PREFIX + "users-0001.json"),
+                is(realmBeforeUpdate.getAttributes().get(SHARD_CHECKSUM_ATTRIBUTE_KEY_PREFIX + "users-0001.json"))
+        );
+        assertThat(
+                updatedRealm.getAttributes().get(SHARD_CHECKSUM_ATTRIBUTE_KEY_PREFIX + "users-0002.json"),
+                is(not(realmBeforeUpdate.getAttributes().get(SHARD_CHECKSUM_ATTRIBUTE_KEY_PREFIX + "users-0002.json")))
+        );
+
+        UserRepresentation updatedOtherUser = keycloakRepository.getUser(REALM_NAME, "myotheruser");
+        assertThat(updatedOtherUser.getFirstName(), is("My changed firstname"));
+    }
+
+    private void doImport(String realmImport) {
+        importUtil.doImport(realmImport);
+    }
+}
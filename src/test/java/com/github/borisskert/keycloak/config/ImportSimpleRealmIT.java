@@ -2,6 +2,7 @@ package com.github.borisskert.keycloak.config;
 
 import com.github.borisskert.keycloak.config.configuration.TestConfiguration;
 import com.github.borisskert.keycloak.config.service.KeycloakProvider;
+import com.github.borisskert.keycloak.config.service.http.RequestStatistics;
 import com.github.borisskert.keycloak.config.util.KeycloakImportUtil;
 import org.junit.jupiter.api.*;
 import org.keycloak.representations.idm.RealmRepresentation;
@@ -11,6 +12,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 
+import static com.github.borisskert.keycloak.config.util.RequestCountMatchers.hasRequestCountAtMost;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.nullValue;
@@ -31,6 +33,9 @@ public class ImportSimpleRealmIT {
     @Autowired
     KeycloakImportUtil importUtil;
 
+    @Autowired
+    RequestStatistics requestStatistics;
+
     @BeforeEach
     public void setup() throws Exception {
         importUtil.workdir("import-files/simple-realm");
@@ -62,6 +67,9 @@ public class ImportSimpleRealmIT {
     void shouldNotUpdateSimpleRealm() throws Exception {
         doImport("0.1_update_simple-realm_with_same_config.json");
 
+        // token request and two reads of the realm to compare the import checksum
+        assertThat(requestStatistics, hasRequestCountAtMost(3));
+
         RealmRepresentation createdRealm = keycloakProvider.get().realm(REALM_NAME).toRepresentation();
 
         assertThat(createdRealm.getRealm(), is(REALM_NAME));
@@ -0,0 +1,109 @@
+package com.github.borisskert.keycloak.config;
+
+import com.github.borisskert.keycloak.config.configuration.TestConfiguration;
+import com.github.borisskert.keycloak.config.service.KeycloakProvider;
+import com.github.borisskert.keycloak.config.util.KeycloakImportUtil;
+import org.junit.jupiter.api.*;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.ConfigFileApplicationContextInitializer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasItems;
+
+@SpringBootTest
+@ContextConfiguration(
+        classes = {TestConfiguration.class},
+        initializers = {ConfigFileApplicationContextInitializer.class}
+)
+@ActiveProfiles("IT")
+@TestPropertySource(properties = {
+        "import.prune-roles=true"
+})
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class PruneRolesIT {
+    private static final String REALM_NAME = "realmWithPrunedRoles";
+
+    @Autowired
+    KeycloakProvider keycloakProvider;
+
+    @Autowired
+    KeycloakImportUtil importUtil;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        importUtil.workdir("import-files/prune-roles");
+    }
+
+    @AfterEach
+    public void cleanup() throws Exception {
+        keycloakProvider.close();
+    }
+
+    @Test
+    @Order(0)
+    void shouldCreateRealmWithRoles() throws Exception {
+        doImport("0_create_realm_with_roles.json");
+
+        assertThat(getRealmRoleNames(), containsInAnyOrder(
+                "my_realm_role", "my_removed_realm_role", "offline_access", "uma_authorization"
+        ));
+        assertThat(getClientRoleNames("moped-client"), containsInAnyOrder("my_client_role", "my_removed_client_role"));
+    }
+
+    @Test
+    @Order(1)
+    void shouldDeleteRemovedRoles() throws Exception {
+        doImport("1_update_realm_without_removed_roles.json");
+
+        assertThat(getRealmRoleNames(), containsInAnyOrder("my_realm_role", "offline_access", "uma_authorization"));
+        assertThat(getClientRoleNames("moped-client"), containsInAnyOrder("my_client_role"));
+    }
+
+    @Test
+    @Order(2)
+    void shouldKeepBuiltInAndDefaultClientRoles() throws Exception {
+        doImport("2_update_realm_with_roles_of_built_in_clients.json");
+
+        assertThat(getClientRoleNames("moped-client"), containsInAnyOrder("my_client_role", "my_default_client_role"));
+        assertThat(getClientRoleNames("account"), hasItems("my_account_role", "manage-account", "manage-account-links", "view-profile"));
+        assertThat(getClientRoleNames("realm-management"), hasItems("my_realm_management_role", "realm-admin", "manage-users", "view-users", "manage-realm"));
+        assertThat(getClientRoleNames("broker"), containsInAnyOrder("my_broker_role", "read-token"));
+    }
+
+    private List<String> getRealmRoleNames() {
+        return toNames(realm().roles().list());
+    }
+
+    private List<String> getClientRoleNames(String clientId) {
+        String id = realm().clients()
+                .findByClientId(clientId)
+                .get(0)
+                .getId();
+
+        return toNames(realm().clients().get(id).roles().list());
+    }
+
+    private RealmResource realm() {
+        return keycloakProvider.get().realm(REALM_NAME);
+    }
+
+    private static List<String> toNames(List<RoleRepresentation> roles) {
+        return roles.stream()
+                .map(RoleRepresentation::getName)
+                .collect(Collectors.toList());
+    }
+
+    private void doImport(String realmImport) {
+        importUtil.doImport(realmImport);
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.borisskert.keycloak.config;
+
+import com.github.borisskert.keycloak.config.configuration.TestConfiguration;
+import com.github.borisskert.keycloak.config.service.KeycloakProvider;
+import com.github.borisskert.keycloak.config.util.KeycloakImportUtil;
+import org.junit.jupiter.api.*;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.ConfigFileApplicationContextInitializer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+@SpringBootTest
+@ContextConfiguration(
+        classes = {TestConfiguration.class},
+        initializers = {ConfigFileApplicationContextInitializer.class}
+)
+@ActiveProfiles("IT")
+@TestPropertySource(properties = {
+        "import.prune-users=true"
+})
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class PruneUsersIT {
+    private static final String REALM_NAME = "realmWithPrunedUsers";
+
+    @Autowired
+    KeycloakProvider keycloakProvider;
+
+    @Autowired
+    KeycloakImportUtil importUtil;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        importUtil.workdir("import-files/prune-users");
+    }
+
+    @AfterEach
+    public void cleanup() throws Exception {
+        keycloakProvider.close();
+    }
+
+    @Test
+    @Order(0)
+    void shouldCreateRealmWithUsers() throws Exception {
+        doImport("0_create_realm_with_users.json");
+
+        assertThat(getUsernames(), containsInAnyOrder("myuser", "myremoveduser"));
+    }
+
+    @Test
+    @Order(1)
+    void shouldDeleteRemovedUser() throws Exception {
+        doImport("1_update_realm_without_removed_user.json");
+
+        assertThat(getUsernames(), containsInAnyOrder("myuser"));
+    }
+
+    private List<String> getUsernames() {
+        return keycloakProvider.get()
+                .realm(REALM_NAME)
+                .users()
+                .list()
+                .stream()
+                .map(UserRepresentation::getUsername)
+                .collect(Collectors.toList());
+    }
+
+    private void doImport(String realmImport) {
+        importUtil.doImport(realmImport);
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.borisskert.keycloak.config.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.RealmRepresentation;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RealmWriteBufferTest {
+
+    private static final String REALM = "my-realm";
+
+    private RealmRepository realmRepository;
+    private RealmWriteBuffer realmWriteBuffer;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        realmRepository = Mockito.mock(RealmRepository.class);
+        when(realmRepository.get(REALM)).thenAnswer(invocation -> existingRealm());
+
+        realmWriteBuffer = new RealmWriteBuffer(realmRepository);
+    }
+
+    @Test
+    public void shouldApplyAllChangesWithinOnePut() throws Exception {
+        realmWriteBuffer.update(REALM, realm -> {
+            realm.setDisplayName("My Realm");
+            return realm;
+        });
+        realmWriteBuffer.update(REALM, realm -> {
+            realm.setLoginTheme("my-theme");
+            return realm;
+        });
+
+        realmWriteBuffer.flush(REALM);
+
+        ArgumentCaptor<RealmRepresentation> updatedRealm = ArgumentCaptor.forClass(RealmRepresentation.class);
+        verify(realmRepository, times(1)).update(updatedRealm.capture());
+
+        assertThat(updatedRealm.getValue().getDisplayName(), is("My Realm"));
+        assertThat(updatedRealm.getValue().getLoginTheme(), is("my-theme"));
+        assertThat(updatedRealm.getValue().isEnabled(), is(true));
+    }
+
+    @Test
+    public void shouldNotPutUnchangedRealm() throws Exception {
+        realmWriteBuffer.update(REALM, realm -> {
+            realm.setDisplayName("existing display name");
+            return realm;
+        });
+
+        realmWriteBuffer.flush(REALM);
+
+        verify(realmRepository, times(1)).get(REALM);
+        verify(realmRepository, never()).update(any());
+    }
+
+    @Test
+    public void shouldNotReadRealmWithoutPendingChanges() throws Exception {
+        realmWriteBuffer.flush(REALM);
+
+        verify(realmRepository, never()).get(REALM);
+        verify(realmRepository, never()).update(any());
+    }
+
+    @Test
+    public void shouldDropDiscardedChanges() throws Exception {
+        realmWriteBuffer.update(REALM, realm -> {
+            realm.setDisplayName("My Realm");
+            return realm;
+        });
+
+        realmWriteBuffer.discard(REALM);
+        realmWriteBuffer.flush(REALM);
+
+        verify(realmRepository, never()).update(any());
+        assertThat(realmWriteBuffer.get(REALM).getDisplayName(), is("existing display name"));
+    }
+
+    @Test
+    public void shouldDropFlushedChanges() throws Exception {
+        realmWriteBuffer.update(REALM, realm -> {
+            realm.setDisplayName("My Realm");
+            return realm;
+        });
+
+        realmWriteBuffer.flush(REALM);
+        realmWriteBuffer.flush(REALM);
+
+        verify(realmRepository, times(1)).update(any());
+    }
+
+    private static RealmRepresentation existingRealm() {
+        RealmRepresentation realm = new RealmRepresentation();
+        realm.setRealm(REALM);
+        realm.setEnabled(true);
+        realm.setDisplayName("existing display name");
+
+        return realm;
+    }
+}
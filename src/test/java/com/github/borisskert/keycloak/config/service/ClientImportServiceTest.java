@@ -0,0 +1,149 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
+import com.github.borisskert.keycloak.config.exception.KeycloakRepositoryException;
+import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.repository.ClientRepository;
+import com.github.borisskert.keycloak.config.repository.PartialImportRepository;
+import com.github.borisskert.keycloak.config.repository.RealmRepository;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import com.github.borisskert.keycloak.config.service.http.RequestStatistics;
+import com.github.borisskert.keycloak.config.service.report.ImportReport;
+import com.github.borisskert.keycloak.config.service.trace.Tracer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.ClientRepresentation;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClientImportServiceTest {
+
+    private static final String REALM = "my-realm";
+
+    private KeycloakProvider keycloakProvider;
+    private ClientRepository clientRepository;
+    private ClientImportService clientImportService;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        keycloakProvider = Mockito.mock(KeycloakProvider.class, Mockito.RETURNS_DEEP_STUBS);
+
+        // the existing clients are listed by final methods, which read them from the mocked admin client
+        clientRepository = Mockito.spy(new ClientRepository(new RealmRepository(keycloakProvider)));
+        doNothing().when(clientRepository).create(anyString(), any());
+        doNothing().when(clientRepository).update(anyString(), any());
+
+        ImportExecutors importExecutors = new ImportExecutors();
+        ReflectionTestUtils.setField(importExecutors, "virtualThreads", false);
+
+        clientImportService = new ClientImportService(
+                clientRepository,
+                Mockito.mock(PartialImportRepository.class),
+                importExecutors,
+                new Tracer(),
+                new ImportReport(new RequestStatistics())
+        );
+        ReflectionTestUtils.setField(clientImportService, "parallelism", 2);
+    }
+
+    @Test
+    public void shouldUpdateOtherClientsConcurrentlyBeforeFailing() throws Exception {
+        givenExistingClients(
+                client("first-id", "first-client", "old"),
+                client("second-id", "second-client", "old"),
+                client("failing-id", "failing-client", "old")
+        );
+
+        // both updates wait for each other, so they have to run at once
+        CountDownLatch concurrentUpdates = new CountDownLatch(2);
+        doAnswer(invocation -> {
+            concurrentUpdates.countDown();
+            assertThat(concurrentUpdates.await(5, TimeUnit.SECONDS), is(true));
+            return null;
+        }).when(clientRepository).update(eq(REALM), argThat(client -> !"failing-client".equals(client.getClientId())));
+        doThrow(new KeycloakRepositoryException("Cannot update client 'failing-client'"))
+                .when(clientRepository).update(eq(REALM), argThat(client -> "failing-client".equals(client.getClientId())));
+
+        ImportProcessingException exception = assertThrows(
+                ImportProcessingException.class,
+                () -> clientImportService.doImport(realmImport(
+                        client(null, "first-client", "new"),
+                        client(null, "second-client", "new"),
+                        client(null, "failing-client", "new"),
+                        client(null, "created-client", "new")
+                ))
+        );
+
+        assertThat(exception.getMessage(), containsString("[failing-client]"));
+        assertThat(exception.getMessage(), not(containsString("first-client")));
+
+        verify(clientRepository).update(eq(REALM), argThat(client -> "first-id".equals(client.getId()) && "new".equals(client.getName())));
+        verify(clientRepository).update(eq(REALM), argThat(client -> "second-id".equals(client.getId()) && "new".equals(client.getName())));
+        verify(clientRepository).create(eq(REALM), argThat(client -> "created-client".equals(client.getClientId())));
+    }
+
+    @Test
+    public void shouldNotFetchSecretOfPublicClients() throws Exception {
+        ClientRepresentation existingPublicClient = client("public-id", "public-client", "my client");
+        existingPublicClient.setPublicClient(true);
+        ClientRepresentation existingConfidentialClient = client("confidential-id", "confidential-client", "my client");
+
+        givenExistingClients(existingPublicClient, existingConfidentialClient);
+        doReturn("my-secret").when(clientRepository).getClientSecretById(REALM, "confidential-id");
+
+        ClientRepresentation publicClient = client(null, "public-client", "my client");
+        publicClient.setPublicClient(true);
+        publicClient.setSecret("my-secret");
+        ClientRepresentation confidentialClient = client(null, "confidential-client", "my client");
+        confidentialClient.setSecret("my-secret");
+
+        clientImportService.doImport(realmImport(publicClient, confidentialClient));
+
+        verify(clientRepository, never()).getClientSecretById(REALM, "public-id");
+        verify(clientRepository).getClientSecretById(REALM, "confidential-id");
+        verify(clientRepository, never()).update(anyString(), any());
+    }
+
+    private void givenExistingClients(ClientRepresentation... clients) {
+        when(keycloakProvider.get().realms().realm(REALM).clients().findAll()).thenReturn(Arrays.asList(clients));
+    }
+
+    private static RealmImport realmImport(ClientRepresentation... clients) {
+        RealmImport realmImport = new RealmImport();
+        realmImport.setRealm(REALM);
+        realmImport.setClients(Arrays.asList(clients));
+
+        return realmImport;
+    }
+
+    private static ClientRepresentation client(String id, String clientId, String name) {
+        ClientRepresentation client = new ClientRepresentation();
+        client.setId(id);
+        client.setClientId(clientId);
+        client.setName(name);
+
+        return client;
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
+import com.github.borisskert.keycloak.config.exception.KeycloakRepositoryException;
+import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.repository.GroupRepository;
+import com.github.borisskert.keycloak.config.repository.PartialImportRepository;
+import com.github.borisskert.keycloak.config.repository.RoleCatalog;
+import com.github.borisskert.keycloak.config.repository.RoleRepository;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import com.github.borisskert.keycloak.config.service.http.RequestStatistics;
+import com.github.borisskert.keycloak.config.service.report.ImportReport;
+import com.github.borisskert.keycloak.config.service.trace.Tracer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class GroupImportServiceTest {
+
+    private static final String REALM = "my-realm";
+
+    private GroupRepository groupRepository;
+    private RoleCatalog roleCatalog;
+    private GroupImportService groupImportService;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        groupRepository = Mockito.mock(GroupRepository.class);
+        roleCatalog = Mockito.mock(RoleCatalog.class);
+
+        RoleRepository roleRepository = Mockito.mock(RoleRepository.class);
+        when(roleRepository.loadCatalog(REALM)).thenReturn(roleCatalog);
+
+        ImportExecutors importExecutors = new ImportExecutors();
+        ReflectionTestUtils.setField(importExecutors, "virtualThreads", false);
+
+        groupImportService = new GroupImportService(
+                groupRepository,
+                roleRepository,
+                Mockito.mock(PartialImportRepository.class),
+                new Tracer(),
+                new ImportReport(new RequestStatistics()),
+                importExecutors
+        );
+        ReflectionTestUtils.setField(groupImportService, "parallelism", 2);
+    }
+
+    @Test
+    public void shouldReconcileOtherGroupsBeforeFailing() throws Exception {
+        GroupRepresentation createdGroup = group("created group", Collections.singletonList("my_role"));
+        GroupRepresentation failingGroup = group("failing group", null);
+        GroupRepresentation updatedGroup = group("updated group", null);
+        updatedGroup.setAttributes(Collections.singletonMap("my attribute", Collections.singletonList("my value")));
+
+        GroupRepresentation existingCreatedGroup = group("created group", null);
+        existingCreatedGroup.setId("created-group-id");
+        GroupRepresentation existingUpdatedGroup = group("updated group", null);
+        existingUpdatedGroup.setId("updated-group-id");
+
+        List<RoleRepresentation> realmRoles = Collections.singletonList(new RoleRepresentation("my_role", null, false));
+
+        when(groupRepository.getGroups(REALM)).thenReturn(Collections.singletonList(existingUpdatedGroup));
+        when(groupRepository.tryToFindGroupByName(REALM, "created group")).thenReturn(Optional.empty());
+        when(groupRepository.tryToFindGroupByName(REALM, "failing group")).thenThrow(new KeycloakRepositoryException("Cannot find group 'failing group'"));
+        when(groupRepository.tryToFindGroupByName(REALM, "updated group")).thenReturn(Optional.of(existingUpdatedGroup));
+        when(groupRepository.getGroupByName(REALM, "created group")).thenReturn(existingCreatedGroup);
+        when(groupRepository.getGroupByName(REALM, "updated group")).thenReturn(existingUpdatedGroup);
+        when(roleCatalog.findRealmRoles(Collections.singletonList("my_role"))).thenReturn(realmRoles);
+
+        ImportProcessingException exception = assertThrows(
+                ImportProcessingException.class,
+                () -> groupImportService.importGroups(realmImport(createdGroup, failingGroup, updatedGroup))
+        );
+
+        assertThat(exception.getMessage(), containsString("[failing group]"));
+        assertThat(exception.getMessage(), not(containsString("created group")));
+
+        verify(groupRepository).createGroup(REALM, createdGroup);
+        verify(groupRepository).addRealmRoles(REALM, "created-group-id", realmRoles);
+        verify(groupRepository).update(eq(REALM), any(GroupRepresentation.class));
+    }
+
+    @Test
+    public void shouldNotSendRoleMappingRequestsForUnchangedRoleMappings() throws Exception {
+        GroupRepresentation unchangedGroup = group("unchanged group", Collections.singletonList("my_role"));
+        unchangedGroup.setClientRoles(Collections.singletonMap("my-client", Collections.singletonList("my_client_role")));
+        GroupRepresentation updatedGroup = group("updated group", Collections.singletonList("my_role"));
+        updatedGroup.setClientRoles(Collections.singletonMap("my-client", Collections.singletonList("my_client_role")));
+        updatedGroup.setAttributes(Collections.singletonMap("my attribute", Collections.singletonList("my value")));
+
+        GroupRepresentation existingUnchangedGroup = group("unchanged group", Collections.singletonList("my_role"));
+        existingUnchangedGroup.setId("unchanged-group-id");
+        existingUnchangedGroup.setClientRoles(Collections.singletonMap("my-client", Collections.singletonList("my_client_role")));
+        GroupRepresentation existingUpdatedGroup = group("updated group", Collections.singletonList("my_role"));
+        existingUpdatedGroup.setId("updated-group-id");
+        existingUpdatedGroup.setClientRoles(Collections.singletonMap("my-client", Collections.singletonList("my_client_role")));
+
+        when(groupRepository.getGroups(REALM)).thenReturn(Arrays.asList(existingUnchangedGroup, existingUpdatedGroup));
+        when(groupRepository.tryToFindGroupByName(REALM, "unchanged group")).thenReturn(Optional.of(existingUnchangedGroup));
+        when(groupRepository.tryToFindGroupByName(REALM, "updated group")).thenReturn(Optional.of(existingUpdatedGroup));
+        when(groupRepository.getGroupByName(REALM, "unchanged group")).thenReturn(existingUnchangedGroup);
+        when(groupRepository.getGroupByName(REALM, "updated group")).thenReturn(existingUpdatedGroup);
+
+        groupImportService.importGroups(realmImport(unchangedGroup, updatedGroup));
+
+        verify(groupRepository).update(eq(REALM), any(GroupRepresentation.class));
+        verify(groupRepository, never()).addRealmRoles(anyString(), anyString(), any());
+        verify(groupRepository, never()).removeRealmRoles(anyString(), anyString(), any());
+        verify(groupRepository, never()).addClientRoles(anyString(), anyString(), any(), any());
+        verify(groupRepository, never()).removeClientRoles(anyString(), anyString(), any(), any());
+        verifyNoInteractions(roleCatalog);
+    }
+
+    private static RealmImport realmImport(GroupRepresentation... groups) {
+        RealmImport realmImport = new RealmImport();
+        realmImport.setRealm(REALM);
+        realmImport.setGroups(Arrays.asList(groups));
+
+        return realmImport;
+    }
+
+    private static GroupRepresentation group(String name, List<String> realmRoles) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setName(name);
+        group.setPath("/" + name);
+        group.setRealmRoles(realmRoles);
+
+        return group;
+    }
+}
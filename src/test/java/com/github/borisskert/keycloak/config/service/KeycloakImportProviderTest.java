@@ -0,0 +1,313 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.github.borisskert.keycloak.config.configuration.ObjectMapperConfiguration;
+import com.github.borisskert.keycloak.config.exception.InvalidImportException;
+import com.github.borisskert.keycloak.config.model.KeycloakImport;
+import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.model.RealmImportShard;
+import com.github.borisskert.keycloak.config.service.checksum.ChecksumService;
+import com.github.borisskert.keycloak.config.service.format.ImportFileConverter;
+import com.github.borisskert.keycloak.config.service.format.ImportFormats;
+import com.github.borisskert.keycloak.config.util.CloneUtils;
+import org.hamcrest.Matcher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.representations.idm.RealmRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.AllOf.allOf;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNot.not;
+
+public class KeycloakImportProviderTest {
+
+    @TempDir
+    Path importDirectory;
+
+    private KeycloakImportProvider keycloakImportProvider;
+
+    private ImportFileConverter importFileConverter;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        ObjectMapperConfiguration configuration = new ObjectMapperConfiguration();
+        ImportFormats importFormats = new ImportFormats(Arrays.asList(
+                configuration.createJsonImportFormat(configuration.createJsonObjectMapper()),
+                configuration.createSmileImportFormat(configuration.createSmileObjectMapper()),
+                configuration.createYamlImportFormat(configuration.createYamlObjectMapper())
+        ));
+
+        keycloakImportProvider = new KeycloakImportProvider(importFormats, new ChecksumService());
+        importFileConverter = new ImportFileConverter(importFormats);
+        ReflectionTestUtils.setField(keycloakImportProvider, "loadParallelism", 2);
+    }
+
+    @Test
+    public void shouldReadRealmImportsOrderedByFilename() throws Exception {
+        write("2_realm.json", "{\"realm\": \"second\"}");
+        write("0_realm.json", "{\"realm\": \"first\"}");
+        write("1_realm/realm.json", "{\"realm\": \"sharded\"}");
+
+        KeycloakImport keycloakImport = keycloakImportProvider.readRealmImportsFromDirectory(importDirectory.toFile());
+
+        assertThat(new ArrayList<>(keycloakImport.getRealmImports().keySet()), contains("0_realm.json", "1_realm", "2_realm.json"));
+        assertThat(keycloakImport.getRealmImports().get("0_realm.json").getRealm(), is("first"));
+        assertThat(keycloakImport.getRealmImports().get("1_realm").getRealm(), is("sharded"));
+    }
+
+    @Test
+    public void shouldReportAllInvalidFiles() throws Exception {
+        write("0_realm.json", "{\"realm\": ");
+        write("1_realm.json", "{\"realm\": \"valid\"}");
+        write("2_realm.json", "[");
+
+        catchException(keycloakImportProvider).readRealmImportsFromDirectory(importDirectory.toFile());
+
+        assertThat(caughtException(),
+                allOf(
+                        instanceOf(InvalidImportException.class),
+                        hasMessageContaining("Cannot read 2 import file(s)"),
+                        hasMessageContaining("0_realm.json: "),
+                        hasMessageContaining("2_realm.json: ")
+                )
+        );
+    }
+
+    @Test
+    public void shouldMergeShards() throws Exception {
+        write("realm/realm.json", "{\"realm\": \"sharded\", \"enabled\": true}");
+        write("realm/users-0001.json", "{\"realm\": \"sharded\", \"users\": [{\"username\": \"user1\"}, {\"username\": \"user2\"}]}");
+        write("realm/users-0002.json", "{\"realm\": \"sharded\", \"users\": [{\"username\": \"user3\"}]}");
+
+        RealmImport realmImport = keycloakImportProvider.readShardedRealmImport(importDirectory.resolve("realm").toFile());
+
+        assertThat(realmImport.getRealm(), is("sharded"));
+        assertThat(realmImport.isEnabled(), is(true));
+        assertThat(usernames(realmImport.getUsers()), contains("user1", "user2", "user3"));
+
+        List<RealmImportShard> shards = realmImport.getShards();
+        assertThat(shards.stream().map(RealmImportShard::getName).collect(Collectors.toList()), contains("realm.json", "users-0001.json", "users-0002.json"));
+        assertThat(usernames(shards.get(0).getUsers()), is(new ArrayList<>()));
+        assertThat(usernames(shards.get(1).getUsers()), contains("user1", "user2"));
+        assertThat(usernames(shards.get(2).getUsers()), contains("user3"));
+        assertThat(shards.get(1).getChecksum(), is(not(shards.get(2).getChecksum())));
+    }
+
+    @Test
+    public void shouldChangeChecksumOfChangedShardOnly() throws Exception {
+        write("realm/realm.json", "{\"realm\": \"sharded\"}");
+        write("realm/users-0001.json", "{\"users\": [{\"username\": \"user1\"}]}");
+
+        RealmImport realmImport = keycloakImportProvider.readShardedRealmImport(importDirectory.resolve("realm").toFile());
+
+        write("realm/users-0001.json", "{\"users\": [{\"username\": \"user2\"}]}");
+
+        RealmImport changedRealmImport = keycloakImportProvider.readShardedRealmImport(importDirectory.resolve("realm").toFile());
+
+        assertThat(changedRealmImport.getChecksum(), is(not(realmImport.getChecksum())));
+        assertThat(changedRealmImport.getShards().get(0).getChecksum(), is(realmImport.getShards().get(0).getChecksum()));
+        assertThat(changedRealmImport.getShards().get(1).getChecksum(), is(not(realmImport.getShards().get(1).getChecksum())));
+    }
+
+    @Test
+    public void shouldRejectShardRedefiningValue() throws Exception {
+        write("realm/realm.json", "{\"realm\": \"sharded\"}");
+        write("realm/users.json", "{\"realm\": \"other\"}");
+
+        catchException(keycloakImportProvider).readShardedRealmImport(importDirectory.resolve("realm").toFile());
+
+        assertThat(caughtException(),
+                allOf(
+                        instanceOf(InvalidImportException.class),
+                        hasMessageContaining("Shard 'users.json' redefines 'realm'")
+                )
+        );
+    }
+
+    @Test
+    public void shouldReadYamlFile() throws Exception {
+        write("realm.yaml", "realm: yaml\nenabled: true\nusers:\n  - username: user1\n");
+
+        RealmImport realmImport = keycloakImportProvider.readRealmImport(importDirectory.resolve("realm.yaml").toFile());
+
+        assertThat(realmImport.getRealm(), is("yaml"));
+        assertThat(realmImport.isEnabled(), is(true));
+        assertThat(usernames(realmImport.getUsers()), contains("user1"));
+    }
+
+    @Test
+    public void shouldReadConvertedSmileFileWithSameChecksumAsYamlFile() throws Exception {
+        write("realm.json", "{\"realm\":\"converted\",\"enabled\":true,\"users\":[{\"username\":\"user1\"}]}");
+        write("realm.yml", "realm: converted\nenabled: true\nusers:\n  - username: user1\n");
+
+        importFileConverter.convert(importDirectory.resolve("realm.json").toFile(), "smile");
+
+        RealmImport smileRealmImport = keycloakImportProvider.readRealmImport(importDirectory.resolve("realm.smile").toFile());
+        RealmImport yamlRealmImport = keycloakImportProvider.readRealmImport(importDirectory.resolve("realm.yml").toFile());
+
+        assertThat(smileRealmImport.getRealm(), is("converted"));
+        assertThat(usernames(smileRealmImport.getUsers()), contains("user1"));
+        assertThat(smileRealmImport.getChecksum(), is(yamlRealmImport.getChecksum()));
+    }
+
+    @Test
+    public void shouldMergeShardsOfDifferentFormats() throws Exception {
+        write("realm/realm.json", "{\"realm\": \"sharded\"}");
+        write("realm/users.yaml", "users:\n  - username: user1\n");
+
+        RealmImport realmImport = keycloakImportProvider.readShardedRealmImport(importDirectory.resolve("realm").toFile());
+
+        assertThat(realmImport.getRealm(), is("sharded"));
+        assertThat(usernames(realmImport.getUsers()), contains("user1"));
+    }
+
+    @Test
+    public void shouldDeduplicateRepeatedValuesOfUsers() throws Exception {
+        write("realm.json", "{\"realm\": \"users\", \"users\": ["
+                + "{\"username\": \"user1\", \"realmRoles\": [\"my_role\"], \"clientRoles\": {\"my-client\": [\"my_client_role\"]}},"
+                + "{\"username\": \"user2\", \"realmRoles\": [\"my_role\"], \"clientRoles\": {\"my-client\": [\"my_client_role\"]}}"
+                + "]}");
+
+        RealmImport realmImport = keycloakImportProvider.readRealmImport(importDirectory.resolve("realm.json").toFile());
+
+        UserRepresentation user1 = realmImport.getUsers().get(0);
+        UserRepresentation user2 = realmImport.getUsers().get(1);
+
+        assertThat(user2.getRealmRoles().get(0), is(sameInstance(user1.getRealmRoles().get(0))));
+        assertThat(user2.getClientRoles().keySet().iterator().next(), is(sameInstance(user1.getClientRoles().keySet().iterator().next())));
+        assertThat(user2.getClientRoles().get("my-client").get(0), is(sameInstance(user1.getClientRoles().get("my-client").get(0))));
+    }
+
+    @Test
+    public void shouldReadSingleAttributeValueAsList() throws Exception {
+        write("realm.json", "{\"realm\": \"users\", \"users\": [{\"username\": \"user1\", \"attributes\": {\"my_attribute\": \"my value\"}}]}");
+
+        RealmImport realmImport = keycloakImportProvider.readRealmImport(importDirectory.resolve("realm.json").toFile());
+
+        assertThat(realmImport.getUsers().get(0).getAttributes().get("my_attribute"), contains("my value"));
+    }
+
+    @Test
+    public void shouldDeduplicateEqualValuesOfDifferentUsers() throws Exception {
+        write("realm.json", "{\"realm\": \"users\", \"users\": ["
+                + "{\"username\": \"user1\", \"attributes\": {\"my_attribute\": [\"my value\"]}, \"groups\": [\"/my group\"], \"requiredActions\": [\"UPDATE_PASSWORD\"]},"
+                + "{\"username\": \"user2\", \"attributes\": {\"my_attribute\": \"my value\"}, \"groups\": [\"/my group\"], \"requiredActions\": [\"UPDATE_PASSWORD\"]}"
+                + "]}");
+
+        RealmImport realmImport = keycloakImportProvider.readRealmImport(importDirectory.resolve("realm.json").toFile());
+
+        UserRepresentation user1 = realmImport.getUsers().get(0);
+        UserRepresentation user2 = realmImport.getUsers().get(1);
+
+        assertThat(user2.getAttributes().keySet().iterator().next(), is(sameInstance(user1.getAttributes().keySet().iterator().next())));
+        assertThat(user2.getAttributes().get("my_attribute").get(0), is(sameInstance(user1.getAttributes().get("my_attribute").get(0))));
+        assertThat(user2.getGroups().get(0), is(sameInstance(user1.getGroups().get(0))));
+        assertThat(user2.getRequiredActions().get(0), is(sameInstance(user1.getRequiredActions().get(0))));
+    }
+
+    @Test
+    public void shouldSpillUsersExceedingThreshold() throws Exception {
+        ReflectionTestUtils.setField(keycloakImportProvider, "spillUsersThreshold", 2);
+        ReflectionTestUtils.setField(keycloakImportProvider, "spillDirectory", importDirectory.toString());
+
+        write("realm.json", "{\"realm\": \"spilled\", \"users\": ["
+                + "{\"username\": \"user1\", \"realmRoles\": [\"my_role\"]},"
+                + "{\"username\": \"user2\", \"attributes\": {\"my_attribute\": [\"my value\"]}},"
+                + "{\"username\": \"user3\", \"clientRoles\": {\"my-client\": [\"my_client_role\"]}}"
+                + "]}");
+
+        RealmImport realmImport = keycloakImportProvider.readRealmImport(importDirectory.resolve("realm.json").toFile());
+
+        assertThat(realmImport.hasSpilledUsers(), is(true));
+        assertThat(usernames(realmImport.getUsers()), contains("user1", "user2", "user3"));
+        assertThat(realmImport.getUsers().get(0).getRealmRoles(), contains("my_role"));
+        assertThat(realmImport.getUsers().get(1).getAttributes().get("my_attribute"), contains("my value"));
+        assertThat(realmImport.getUsers().get(2).getClientRoles().get("my-client"), contains("my_client_role"));
+        assertThat(CloneUtils.deepClone(realmImport, RealmRepresentation.class).getUsers(), is(nullValue()));
+
+        try (Stream<Path> files = Files.list(importDirectory)) {
+            assertThat(files.map(file -> file.getFileName().toString()).collect(Collectors.toList()), contains("realm.json"));
+        }
+    }
+
+    @Test
+    public void shouldSpillUsersOfShards() throws Exception {
+        ReflectionTestUtils.setField(keycloakImportProvider, "spillUsersThreshold", 1);
+
+        write("realm/realm.json", "{\"realm\": \"sharded\"}");
+        write("realm/users-0001.json", "{\"users\": [{\"username\": \"user1\"}]}");
+        write("realm/users-0002.json", "{\"users\": [{\"username\": \"user2\"}, {\"username\": \"user3\"}]}");
+
+        RealmImport realmImport = keycloakImportProvider.readShardedRealmImport(importDirectory.resolve("realm").toFile());
+
+        assertThat(realmImport.hasSpilledUsers(), is(true));
+        assertThat(usernames(realmImport.getShards().get(2).getUsers()), contains("user2", "user3"));
+    }
+
+    @Test
+    public void shouldKeepUsersUpToThresholdInMemory() throws Exception {
+        ReflectionTestUtils.setField(keycloakImportProvider, "spillUsersThreshold", 2);
+
+        write("realm.json", "{\"realm\": \"in-memory\", \"users\": [{\"username\": \"user1\"}, {\"username\": \"user2\"}]}");
+
+        RealmImport realmImport = keycloakImportProvider.readRealmImport(importDirectory.resolve("realm.json").toFile());
+
+        assertThat(realmImport.hasSpilledUsers(), is(false));
+        assertThat(usernames(realmImport.getUsers()), contains("user1", "user2"));
+    }
+
+    @Test
+    public void shouldRejectDanglingFlowAlias() throws Exception {
+        write("realm.json", "{\"realm\": \"flows\", \"authenticationFlows\": [{"
+                + "\"alias\": \"my flow\", \"topLevel\": true, \"authenticationExecutions\": ["
+                + "{\"autheticatorFlow\": true, \"flowAlias\": \"missing flow\"}"
+                + "]}]}");
+
+        catchException(keycloakImportProvider).readRealmImport(importDirectory.resolve("realm.json").toFile());
+
+        assertThat(caughtException(),
+                allOf(
+                        instanceOf(InvalidImportException.class),
+                        hasMessageContaining("references unknown non-top-level flow 'missing flow'")
+                )
+        );
+    }
+
+    private void write(String filename, String content) throws IOException {
+        Path file = importDirectory.resolve(filename);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> usernames(List<UserRepresentation> users) {
+        return users.stream()
+                .map(UserRepresentation::getUsername)
+                .collect(Collectors.toList());
+    }
+
+    private static Matcher<Object> hasMessageContaining(String text) {
+        return hasProperty("message", containsString(text));
+    }
+}
@@ -0,0 +1,346 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.github.borisskert.keycloak.config.configuration.ObjectMapperConfiguration;
+import com.github.borisskert.keycloak.config.model.KeycloakImport;
+import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.service.format.ImportFormats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KeycloakImportWatcherTest {
+
+    @TempDir
+    Path importDirectory;
+
+    private KeycloakImportProvider keycloakImportProvider;
+    private RealmImportService realmImportService;
+    private FakeWatchService watchService;
+    private KeycloakImportWatcher keycloakImportWatcher;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        keycloakImportProvider = Mockito.mock(KeycloakImportProvider.class);
+        realmImportService = Mockito.mock(RealmImportService.class);
+        watchService = new FakeWatchService();
+
+        ObjectMapperConfiguration configuration = new ObjectMapperConfiguration();
+        ImportFormats importFormats = new ImportFormats(Arrays.asList(
+                configuration.createJsonImportFormat(configuration.createJsonObjectMapper()),
+                configuration.createYamlImportFormat(configuration.createYamlObjectMapper())
+        ));
+
+        keycloakImportWatcher = new KeycloakImportWatcher(keycloakImportProvider, realmImportService, importFormats) {
+            @Override
+            WatchService newWatchService() {
+                return watchService;
+            }
+
+            @Override
+            void register(WatchService watchService, Path directory) {
+                // the fake watch service reports the changes itself
+            }
+        };
+
+        ReflectionTestUtils.setField(keycloakImportWatcher, "importDirectoryPath", importDirectory.toString());
+        ReflectionTestUtils.setField(keycloakImportWatcher, "debounceInMillis", 250L);
+
+        when(keycloakImportProvider.readRealmImport(any())).thenAnswer(invocation -> realmImport(invocation.getArgument(0)));
+        when(keycloakImportProvider.readShardedRealmImport(any())).thenAnswer(invocation -> realmImport(invocation.getArgument(0)));
+    }
+
+    @AfterEach
+    public void cleanup() throws Exception {
+        // the watcher restores the interrupt flag when it stops watching
+        Thread.interrupted();
+    }
+
+    @Test
+    public void shouldImportEveryFileOfBurstOnce() throws Exception {
+        Path first = createFile("first.json");
+        Path second = createFile("second.json");
+
+        watchService.addBurst(
+                new FakeWatchKey(importDirectory, event(ENTRY_CREATE, first), event(ENTRY_MODIFY, first)),
+                new FakeWatchKey(importDirectory, event(ENTRY_MODIFY, second), event(ENTRY_MODIFY, first))
+        );
+
+        keycloakImportWatcher.watch();
+
+        verify(keycloakImportProvider, times(1)).readRealmImport(first.toFile());
+        verify(keycloakImportProvider, times(1)).readRealmImport(second.toFile());
+        verify(realmImportService, times(2)).doImport(any());
+        assertThat(watchService.pollTimeouts, contains(250L, 250L));
+    }
+
+    @Test
+    public void shouldImportEveryBurstOnItsOwn() throws Exception {
+        Path realmFile = createFile("realm.json");
+
+        watchService.addBurst(new FakeWatchKey(importDirectory, event(ENTRY_MODIFY, realmFile)));
+        watchService.addBurst(new FakeWatchKey(importDirectory, event(ENTRY_MODIFY, realmFile)));
+
+        keycloakImportWatcher.watch();
+
+        verify(keycloakImportProvider, times(2)).readRealmImport(realmFile.toFile());
+        verify(realmImportService, times(2)).doImport(any());
+    }
+
+    @Test
+    public void shouldImportWholeRealmDirectoryOfChangedShards() throws Exception {
+        Path realmDirectory = Files.createDirectory(importDirectory.resolve("my-realm"));
+        Path firstShard = Files.createFile(realmDirectory.resolve("clients.json"));
+        Path secondShard = Files.createFile(realmDirectory.resolve("users.json"));
+
+        watchService.addBurst(new FakeWatchKey(realmDirectory, event(ENTRY_MODIFY, firstShard), event(ENTRY_CREATE, secondShard)));
+
+        keycloakImportWatcher.watch();
+
+        verify(keycloakImportProvider, times(1)).readShardedRealmImport(realmDirectory.toFile());
+        verify(keycloakImportProvider, never()).readRealmImport(any());
+        verify(realmImportService, times(1)).doImport(any());
+    }
+
+    @Test
+    public void shouldImportRealmDirectoryOfRemovedShard() throws Exception {
+        Path realmDirectory = Files.createDirectory(importDirectory.resolve("my-realm"));
+        Files.createFile(realmDirectory.resolve("realm.json"));
+        Path removedShard = realmDirectory.resolve("clients.json");
+
+        watchService.addBurst(new FakeWatchKey(realmDirectory, event(ENTRY_DELETE, removedShard)));
+
+        keycloakImportWatcher.watch();
+
+        verify(keycloakImportProvider, times(1)).readShardedRealmImport(realmDirectory.toFile());
+        verify(realmImportService, times(1)).doImport(any());
+    }
+
+    @Test
+    public void shouldNotImportRemovedFiles() throws Exception {
+        Path realmDirectory = Files.createDirectory(importDirectory.resolve("my-realm"));
+        Path removedFile = importDirectory.resolve("realm.json");
+        Path removedShard = realmDirectory.resolve("clients.json");
+        Files.delete(realmDirectory);
+
+        watchService.addBurst(
+                new FakeWatchKey(realmDirectory, event(ENTRY_DELETE, removedShard)),
+                new FakeWatchKey(importDirectory, event(ENTRY_DELETE, realmDirectory), event(ENTRY_DELETE, removedFile))
+        );
+
+        keycloakImportWatcher.watch();
+
+        verify(keycloakImportProvider, never()).readShardedRealmImport(any());
+        verify(keycloakImportProvider, never()).readRealmImport(any());
+        verify(realmImportService, never()).doImport(any());
+    }
+
+    @Test
+    public void shouldIgnoreSwapAndBackupFiles() throws Exception {
+        Path realmDirectory = Files.createDirectory(importDirectory.resolve("my-realm"));
+        Path swapFile = createFile(".realm.json.swp");
+        Path backupFile = createFile("realm.json~");
+        Path temporaryFile = createFile("realm.json.tmp");
+        Path swapShard = Files.createFile(realmDirectory.resolve(".clients.yaml.swp"));
+
+        watchService.addBurst(
+                new FakeWatchKey(importDirectory, event(ENTRY_CREATE, swapFile), event(ENTRY_MODIFY, backupFile), event(ENTRY_CREATE, temporaryFile)),
+                new FakeWatchKey(realmDirectory, event(ENTRY_CREATE, swapShard), event(ENTRY_DELETE, swapShard))
+        );
+
+        keycloakImportWatcher.watch();
+
+        verify(keycloakImportProvider, never()).readShardedRealmImport(any());
+        verify(keycloakImportProvider, never()).readRealmImport(any());
+        verify(realmImportService, never()).doImport(any());
+    }
+
+    @Test
+    public void shouldImportCreatedRealmDirectory() throws Exception {
+        Path realmDirectory = Files.createDirectory(importDirectory.resolve("my-realm"));
+
+        watchService.addBurst(new FakeWatchKey(importDirectory, event(ENTRY_CREATE, realmDirectory)));
+
+        keycloakImportWatcher.watch();
+
+        verify(keycloakImportProvider, times(1)).readShardedRealmImport(realmDirectory.toFile());
+    }
+
+    @Test
+    public void shouldIgnoreChangesOfOtherFilesInSingleFileMode() throws Exception {
+        Path importFile = createFile("realm.json");
+        Path otherFile = createFile("other.json");
+        ReflectionTestUtils.setField(keycloakImportWatcher, "importDirectoryPath", null);
+        ReflectionTestUtils.setField(keycloakImportWatcher, "importFilePath", importFile.toString());
+
+        watchService.addBurst(new FakeWatchKey(importDirectory, event(ENTRY_MODIFY, otherFile), event(ENTRY_MODIFY, importFile)));
+
+        keycloakImportWatcher.watch();
+
+        verify(keycloakImportProvider, times(1)).readRealmImport(importFile.toFile());
+        verify(keycloakImportProvider, never()).readRealmImport(otherFile.toFile());
+    }
+
+    @Test
+    public void shouldImportAllFilesAfterOverflow() throws Exception {
+        Path realmFile = createFile("realm.json");
+
+        Map<String, RealmImport> realmImports = new LinkedHashMap<>();
+        realmImports.put("first.json", realmImport(new File("first.json")));
+        realmImports.put("second.json", realmImport(new File("second.json")));
+        when(keycloakImportProvider.get()).thenReturn(new KeycloakImport(realmImports));
+
+        watchService.addBurst(
+                new FakeWatchKey(importDirectory, event(ENTRY_MODIFY, realmFile)),
+                new FakeWatchKey(importDirectory, event(OVERFLOW, null))
+        );
+
+        keycloakImportWatcher.watch();
+
+        verify(keycloakImportProvider, never()).readRealmImport(any());
+        verify(realmImportService).doImport(realmImports.get("first.json"));
+        verify(realmImportService).doImport(realmImports.get("second.json"));
+    }
+
+    @Test
+    public void shouldKeepWatchingIfImportFails() throws Exception {
+        Path realmFile = createFile("realm.json");
+        when(keycloakImportProvider.readRealmImport(realmFile.toFile()))
+                .thenThrow(new RuntimeException("invalid file"))
+                .thenAnswer(invocation -> realmImport(invocation.getArgument(0)));
+
+        watchService.addBurst(new FakeWatchKey(importDirectory, event(ENTRY_MODIFY, realmFile)));
+        watchService.addBurst(new FakeWatchKey(importDirectory, event(ENTRY_MODIFY, realmFile)));
+
+        keycloakImportWatcher.watch();
+
+        verify(realmImportService, times(1)).doImport(any());
+        assertThat(Thread.currentThread().isInterrupted(), is(true));
+    }
+
+    private Path createFile(String filename) throws Exception {
+        return Files.createFile(importDirectory.resolve(filename));
+    }
+
+    private static RealmImport realmImport(File file) {
+        RealmImport realmImport = new RealmImport();
+        realmImport.setRealm(file.getName());
+
+        return realmImport;
+    }
+
+    private static WatchEvent<Path> event(WatchEvent.Kind<?> kind, Path file) {
+        return new WatchEvent<Path>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Kind<Path> kind() {
+                return (Kind<Path>) kind;
+            }
+
+            @Override
+            public int count() {
+                return 1;
+            }
+
+            @Override
+            public Path context() {
+                return file == null ? null : file.getFileName();
+            }
+        };
+    }
+
+    /**
+     * Returns the watch keys of one burst without delay and reports the end of the burst by a poll timeout. Stops
+     * the watcher by an interrupt after the last burst.
+     */
+    private static class FakeWatchService implements WatchService {
+        private final Deque<Deque<WatchKey>> bursts = new ArrayDeque<>();
+        private final List<Long> pollTimeouts = new ArrayList<>();
+
+        private void addBurst(WatchKey... watchKeys) {
+            bursts.add(new ArrayDeque<>(Arrays.asList(watchKeys)));
+        }
+
+        @Override
+        public WatchKey take() throws InterruptedException {
+            if (bursts.isEmpty()) {
+                throw new InterruptedException();
+            }
+
+            return bursts.peek().poll();
+        }
+
+        @Override
+        public WatchKey poll(long timeout, TimeUnit unit) {
+            pollTimeouts.add(unit.toMillis(timeout));
+
+            WatchKey watchKey = bursts.peek().poll();
+
+            if (watchKey == null) {
+                bursts.poll();
+            }
+
+            return watchKey;
+        }
+
+        @Override
+        public WatchKey poll() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class FakeWatchKey implements WatchKey {
+        private final Path directory;
+        private final List<WatchEvent<?>> events;
+
+        private FakeWatchKey(Path directory, WatchEvent<?>... events) {
+            this.directory = directory;
+            this.events = Arrays.asList(events);
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public List<WatchEvent<?>> pollEvents() {
+            return events;
+        }
+
+        @Override
+        public boolean reset() {
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public Watchable watchable() {
+            return directory;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+class KeycloakProviderTest {
+
+    private ImportExecutors importExecutors;
+    private KeycloakProvider keycloakProvider;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        importExecutors = new ImportExecutors();
+        ReflectionTestUtils.setField(importExecutors, "maxConcurrency", 200);
+        ReflectionTestUtils.setField(importExecutors, "tracePinning", false);
+
+        keycloakProvider = new KeycloakProvider(null, null, null, null, importExecutors);
+        ReflectionTestUtils.setField(keycloakProvider, "connectionPoolSize", 10);
+    }
+
+    @Test
+    public void shouldUseConfiguredConnectionPoolSizeOnPlatformThreads() throws Exception {
+        ReflectionTestUtils.setField(importExecutors, "virtualThreads", false);
+
+        assertThat(keycloakProvider.getConnectionPoolSize(), is(10));
+    }
+
+    @Test
+    public void shouldServeAllVirtualThreadsByConnectionPool() throws Exception {
+        ReflectionTestUtils.setField(importExecutors, "virtualThreads", true);
+
+        int expectedPoolSize = Runtime.version().feature() >= 21 ? 200 : 10;
+        assertThat(keycloakProvider.getConnectionPoolSize(), is(expectedPoolSize));
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.borisskert.keycloak.config.configuration.ObjectMapperConfiguration;
+import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.repository.RealmRepository;
+import com.github.borisskert.keycloak.config.repository.UserRepository;
+import com.github.borisskert.keycloak.config.service.checksum.ChecksumService;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import com.github.borisskert.keycloak.config.service.format.ImportFormats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.representations.idm.ClientRepresentation;
+import org.keycloak.representations.idm.RealmRepresentation;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+class RealmExportServiceTest {
+    private static final String REALM = "my-realm";
+
+    @TempDir
+    Path exportDirectory;
+
+    private RealmRepository realmRepository;
+    private RealmExportService realmExportService;
+    private KeycloakImportProvider keycloakImportProvider;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        realmRepository = Mockito.mock(RealmRepository.class);
+        UserRepository userRepository = Mockito.mock(UserRepository.class);
+        when(userRepository.getUsers(eq(REALM), anyInt(), anyInt())).thenReturn(Collections.emptyList());
+
+        ImportExecutors importExecutors = new ImportExecutors();
+        ReflectionTestUtils.setField(importExecutors, "virtualThreads", false);
+
+        realmExportService = new RealmExportService(realmRepository, userRepository, importExecutors, new ObjectMapper());
+        ReflectionTestUtils.setField(realmExportService, "pageSize", 100);
+        ReflectionTestUtils.setField(realmExportService, "parallelism", 2);
+
+        ObjectMapperConfiguration configuration = new ObjectMapperConfiguration();
+        ImportFormats importFormats = new ImportFormats(Collections.singletonList(
+                configuration.createJsonImportFormat(configuration.createJsonObjectMapper())
+        ));
+
+        keycloakImportProvider = new KeycloakImportProvider(importFormats, new ChecksumService());
+    }
+
+    @Test
+    public void shouldLeaveMaskedClientSecretsOutOfReimportableExport() throws Exception {
+        RealmRepresentation exportedRealm = new RealmRepresentation();
+        exportedRealm.setRealm(REALM);
+        exportedRealm.setClients(Arrays.asList(
+                client("confidential-client", "**********"),
+                client("client-with-plain-secret", "my-secret"),
+                client("public-client", null)
+        ));
+        when(realmRepository.partialExport(REALM)).thenReturn(exportedRealm);
+
+        File exportFile = exportDirectory.resolve("my-realm.json").toFile();
+        realmExportService.doExport(REALM, exportFile);
+
+        RealmImport realmImport = keycloakImportProvider.readRealmImport(exportFile);
+
+        assertThat(realmImport.getRealm(), is(REALM));
+        assertThat(realmImport.getClients().get(0).getClientId(), is("confidential-client"));
+        assertThat(realmImport.getClients().get(0).getSecret(), is(nullValue()));
+        assertThat(realmImport.getClients().get(0).getClientAuthenticatorType(), is("client-secret"));
+        assertThat(realmImport.getClients().get(1).getSecret(), is("my-secret"));
+        assertThat(realmImport.getClients().get(2).getSecret(), is(nullValue()));
+        assertThat(realmImport.getUsers().size(), is(0));
+    }
+
+    private static ClientRepresentation client(String clientId, String secret) {
+        ClientRepresentation client = new ClientRepresentation();
+        client.setClientId(clientId);
+        client.setClientAuthenticatorType("client-secret");
+        client.setSecret(secret);
+
+        return client;
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
+import com.github.borisskert.keycloak.config.exception.KeycloakRepositoryException;
+import com.github.borisskert.keycloak.config.repository.GroupRepository;
+import com.github.borisskert.keycloak.config.repository.UserRepository;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class UserGroupsImportServiceTest {
+
+    private static final String REALM = "my-realm";
+
+    private UserRepository userRepository;
+    private GroupRepository groupRepository;
+    private UserGroupsImportService userGroupsImportService;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        userRepository = Mockito.mock(UserRepository.class);
+        groupRepository = Mockito.mock(GroupRepository.class);
+
+        ImportExecutors importExecutors = new ImportExecutors();
+        ReflectionTestUtils.setField(importExecutors, "virtualThreads", false);
+
+        userGroupsImportService = new UserGroupsImportService(userRepository, groupRepository, importExecutors);
+        ReflectionTestUtils.setField(userGroupsImportService, "parallelism", 2);
+
+        GroupRepresentation child = group("child-id", "child");
+        GroupRepresentation parent = group("parent-id", "parent", child);
+        GroupRepresentation other = group("other-id", "other");
+
+        when(groupRepository.getGroups(REALM)).thenReturn(Arrays.asList(parent, other));
+    }
+
+    @Test
+    public void shouldNotReadMembershipsWithoutUserGroups() throws Exception {
+        userGroupsImportService.importGroupMemberships(REALM, singleList(user("my-user")), () -> {
+            throw new AssertionError("existing users must not be read");
+        });
+
+        verifyNoMoreInteractions(groupRepository, userRepository);
+    }
+
+    @Test
+    public void shouldJoinAndLeaveGroups() throws Exception {
+        when(userRepository.getGroups(REALM, "my-user-id")).thenReturn(Arrays.asList(group("other-id", "other"), group("child-id", "child")));
+        when(userRepository.getGroups(REALM, "other-user-id")).thenReturn(Collections.singletonList(group("other-id", "other")));
+
+        userGroupsImportService.importGroupMemberships(REALM, singleList(
+                user("My-User", "/parent/child", "parent"),
+                user("other-user", "/other"),
+                user("third-user")
+        ), () -> existingUserIds("my-user", "my-user-id", "other-user", "other-user-id", "third-user", "third-user-id"));
+
+        verify(userRepository).joinGroup(REALM, "my-user-id", "parent-id");
+        verify(userRepository).leaveGroup(REALM, "my-user-id", "other-id");
+        verify(userRepository, never()).joinGroup(REALM, "my-user-id", "child-id");
+        verify(userRepository, never()).joinGroup(REALM, "other-user-id", "other-id");
+        verify(userRepository, never()).leaveGroup(eq(REALM), eq("other-user-id"), anyString());
+        verify(userRepository, never()).getGroups(REALM, "third-user-id");
+        verify(userRepository, never()).findUser(eq(REALM), anyString());
+    }
+
+    @Test
+    public void shouldLookUpUsersMissingInExistingUsers() throws Exception {
+        when(userRepository.findUser(REALM, "new-user")).thenReturn(member("new-user-id", "new-user"));
+
+        Map<String, String> existingUserIds = new HashMap<>();
+        existingUserIds.put("new-user", null);
+
+        userGroupsImportService.importGroupMemberships(REALM, singleList(user("new-user", "/other")), () -> existingUserIds);
+
+        verify(userRepository).joinGroup(REALM, "new-user-id", "other-id");
+    }
+
+    @Test
+    public void shouldReadGroupsAndExistingUsersOnceForAllUserLists() throws Exception {
+        AtomicInteger existingUserReads = new AtomicInteger();
+
+        userGroupsImportService.importGroupMemberships(REALM, Arrays.asList(
+                Collections.singletonList(user("my-user", "/other")),
+                Collections.singletonList(user("other-user", "/parent"))
+        ), () -> {
+            existingUserReads.incrementAndGet();
+            return existingUserIds("my-user", "my-user-id", "other-user", "other-user-id");
+        });
+
+        assertThat(existingUserReads.get(), is(1));
+        verify(groupRepository, times(1)).getGroups(REALM);
+        verify(userRepository).joinGroup(REALM, "my-user-id", "other-id");
+        verify(userRepository).joinGroup(REALM, "other-user-id", "parent-id");
+    }
+
+    @Test
+    public void shouldFailOnUnknownGroup() throws Exception {
+        List<List<UserRepresentation>> users = singleList(user("my-user", "/other"), user("other-user", "/unknown"));
+
+        assertThrows(KeycloakRepositoryException.class, () -> userGroupsImportService.importGroupMemberships(REALM, users, () -> existingUserIds("my-user", "my-user-id")));
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    public void shouldUpdateOtherUsersIfOneUserFails() throws Exception {
+        doThrow(new RuntimeException("failed")).when(userRepository).joinGroup(REALM, "my-user-id", "other-id");
+
+        List<List<UserRepresentation>> users = singleList(user("my-user", "/other"), user("other-user", "/other"));
+
+        assertThrows(ImportProcessingException.class, () -> userGroupsImportService.importGroupMemberships(REALM, users, () -> existingUserIds("my-user", "my-user-id", "other-user", "other-user-id")));
+        verify(userRepository).joinGroup(REALM, "other-user-id", "other-id");
+    }
+
+    private static List<List<UserRepresentation>> singleList(UserRepresentation... users) {
+        return Collections.singletonList(Arrays.asList(users));
+    }
+
+    private static Map<String, String> existingUserIds(String... usernamesAndIds) {
+        Map<String, String> existingUserIds = new HashMap<>();
+
+        for (int i = 0; i < usernamesAndIds.length; i += 2) {
+            existingUserIds.put(usernamesAndIds[i], usernamesAndIds[i + 1]);
+        }
+
+        return existingUserIds;
+    }
+
+    private static GroupRepresentation group(String id, String name, GroupRepresentation... subGroups) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId(id);
+        group.setName(name);
+        group.setSubGroups(Arrays.asList(subGroups));
+
+        return group;
+    }
+
+    private static UserRepresentation user(String username, String... groups) {
+        UserRepresentation user = new UserRepresentation();
+        user.setUsername(username);
+
+        if (groups.length > 0) {
+            user.setGroups(Arrays.asList(groups));
+        }
+
+        return user;
+    }
+
+    private static UserRepresentation member(String id, String username) {
+        UserRepresentation member = new UserRepresentation();
+        member.setId(id);
+        member.setUsername(username);
+
+        return member;
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.github.borisskert.keycloak.config.exception.ImportProcessingException;
+import com.github.borisskert.keycloak.config.exception.KeycloakRepositoryException;
+import com.github.borisskert.keycloak.config.repository.PartialImportRepository;
+import com.github.borisskert.keycloak.config.repository.RoleRepository;
+import com.github.borisskert.keycloak.config.repository.UserRepository;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import com.github.borisskert.keycloak.config.service.http.RequestStatistics;
+import com.github.borisskert.keycloak.config.service.journal.ImportJournal;
+import com.github.borisskert.keycloak.config.service.report.ImportReport;
+import com.github.borisskert.keycloak.config.service.trace.Tracer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserImportServiceTest {
+
+    private static final String REALM = "my-realm";
+
+    private UserRepository userRepository;
+    private PartialImportRepository partialImportRepository;
+    private UserGroupsImportService userGroupsImportService;
+    private UserImportService userImportService;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        userRepository = Mockito.mock(UserRepository.class);
+        partialImportRepository = Mockito.mock(PartialImportRepository.class);
+        userGroupsImportService = Mockito.mock(UserGroupsImportService.class);
+
+        when(partialImportRepository.isEnabled()).thenReturn(true);
+        when(partialImportRepository.getChunkSize()).thenReturn(100);
+        when(partialImportRepository.createUsers(eq(REALM), anyList())).thenAnswer(invocation -> {
+            List<UserRepresentation> users = invocation.getArgument(1);
+            return users.stream().map(UserRepresentation::getUsername).collect(Collectors.toSet());
+        });
+
+        ImportExecutors importExecutors = new ImportExecutors();
+        ReflectionTestUtils.setField(importExecutors, "virtualThreads", false);
+
+        userImportService = new UserImportService(
+                userRepository,
+                Mockito.mock(RoleRepository.class),
+                partialImportRepository,
+                new ImportJournal(),
+                new Tracer(),
+                new ImportReport(new RequestStatistics()),
+                userGroupsImportService,
+                importExecutors
+        );
+        ReflectionTestUtils.setField(userImportService, "usersPageSize", 2);
+        ReflectionTestUtils.setField(userImportService, "parallelism", 2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldCreateOnlyMissingUsersInBulk() throws Exception {
+        UserRepresentation existingUser = user("Existing-User");
+        when(userRepository.getUsers(REALM, 0, 2)).thenReturn(Arrays.asList(user("other-user"), existingUser));
+        when(userRepository.getUsers(REALM, 2, 2)).thenReturn(Collections.emptyList());
+        when(userRepository.tryToFindUser(REALM, "existing-user")).thenReturn(Optional.of(existingUser));
+
+        UserImportService.RealmUsersImport usersImport = userImportService.startImport(REALM);
+        usersImport.importUsers(Arrays.asList(user("existing-user"), user("new-user")));
+
+        ArgumentCaptor<List<UserRepresentation>> createdUsers = ArgumentCaptor.forClass(List.class);
+        verify(partialImportRepository).createUsers(eq(REALM), createdUsers.capture());
+        assertThat(usernames(createdUsers.getValue()), contains("new-user"));
+
+        verify(userRepository).tryToFindUser(REALM, "existing-user");
+        verify(userRepository, never()).tryToFindUser(REALM, "new-user");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldListExistingUsersOncePerRealmImport() throws Exception {
+        when(userRepository.getUsers(REALM, 0, 2)).thenReturn(Collections.emptyList());
+        when(userRepository.tryToFindUser(eq(REALM), anyString())).thenReturn(Optional.empty());
+
+        UserImportService.RealmUsersImport usersImport = userImportService.startImport(REALM);
+        usersImport.importUsers(Collections.singletonList(user("first-user")));
+        usersImport.importUsers(Arrays.asList(user("first-user"), user("second-user")));
+
+        verify(userRepository, times(1)).getUsers(eq(REALM), anyInt(), anyInt());
+
+        ArgumentCaptor<List<UserRepresentation>> createdUsers = ArgumentCaptor.forClass(List.class);
+        verify(partialImportRepository, times(2)).createUsers(eq(REALM), createdUsers.capture());
+        assertThat(usernames(createdUsers.getAllValues().get(0)), contains("first-user"));
+        assertThat(usernames(createdUsers.getAllValues().get(1)), contains("second-user"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldReuseExistingUsersForGroupMemberships() throws Exception {
+        when(userRepository.getUsers(REALM, 0, 2)).thenReturn(Collections.singletonList(user("existing-user-id", "Existing-User")));
+        when(userRepository.tryToFindUser(eq(REALM), anyString())).thenReturn(Optional.empty());
+
+        UserImportService.RealmUsersImport usersImport = userImportService.startImport(REALM);
+        usersImport.importUsers(Arrays.asList(user("existing-user"), user("new-user")));
+        usersImport.importGroupMemberships();
+
+        ArgumentCaptor<Supplier<Map<String, String>>> existingUserIds = ArgumentCaptor.forClass(Supplier.class);
+        verify(userGroupsImportService).importGroupMemberships(eq(REALM), anyCollection(), existingUserIds.capture());
+
+        assertThat(existingUserIds.getValue().get(), hasEntry("existing-user", "existing-user-id"));
+        assertThat(existingUserIds.getValue().get(), hasEntry("new-user", null));
+        verify(userRepository, times(1)).getUsers(eq(REALM), anyInt(), anyInt());
+    }
+
+    @Test
+    public void shouldImportOtherUsersBeforeFailing() throws Exception {
+        when(partialImportRepository.isEnabled()).thenReturn(false);
+        when(userRepository.tryToFindUser(eq(REALM), anyString())).thenReturn(Optional.empty());
+        when(userRepository.tryToFindUser(REALM, "failing-user")).thenThrow(new KeycloakRepositoryException("Cannot find user 'failing-user'"));
+
+        UserImportService.RealmUsersImport usersImport = userImportService.startImport(REALM);
+
+        ImportProcessingException exception = assertThrows(
+                ImportProcessingException.class,
+                () -> usersImport.importUsers(Arrays.asList(user("first-user"), user("failing-user"), user("second-user")))
+        );
+
+        assertThat(exception.getMessage(), containsString("[failing-user]"));
+
+        verify(userRepository).create(eq(REALM), argThat(user -> user.getUsername().equals("first-user")));
+        verify(userRepository).create(eq(REALM), argThat(user -> user.getUsername().equals("second-user")));
+    }
+
+    private static List<String> usernames(List<UserRepresentation> users) {
+        return users.stream().map(UserRepresentation::getUsername).collect(Collectors.toList());
+    }
+
+    private static UserRepresentation user(String username) {
+        return user(null, username);
+    }
+
+    private static UserRepresentation user(String id, String username) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(id);
+        user.setUsername(username);
+        user.setRealmRoles(Collections.emptyList());
+        user.setClientRoles(Collections.emptyMap());
+
+        return user;
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.borisskert.keycloak.config.service;
+
+import com.github.borisskert.keycloak.config.KeycloakImportProperties;
+import com.github.borisskert.keycloak.config.model.RealmImport;
+import com.github.borisskert.keycloak.config.model.UserImport;
+import com.github.borisskert.keycloak.config.repository.UserRepository;
+import com.github.borisskert.keycloak.config.service.concurrent.ImportExecutors;
+import com.github.borisskert.keycloak.config.service.http.RequestStatistics;
+import com.github.borisskert.keycloak.config.service.report.ImportReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserPruningServiceTest {
+
+    private static final String LOGIN_REALM = "master";
+
+    private UserRepository userRepository;
+    private UserPruningService userPruningService;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        userRepository = Mockito.mock(UserRepository.class);
+
+        KeycloakImportProperties properties = new KeycloakImportProperties();
+        properties.setRealm(LOGIN_REALM);
+        properties.setUser("admin");
+
+        ImportExecutors importExecutors = new ImportExecutors();
+        ReflectionTestUtils.setField(importExecutors, "virtualThreads", false);
+
+        userPruningService = new UserPruningService(
+                userRepository,
+                importExecutors,
+                new ImportReport(new RequestStatistics()),
+                properties
+        );
+        ReflectionTestUtils.setField(userPruningService, "pruneUsers", true);
+        ReflectionTestUtils.setField(userPruningService, "dryRun", false);
+        ReflectionTestUtils.setField(userPruningService, "pageSize", 100);
+        ReflectionTestUtils.setField(userPruningService, "parallelism", 2);
+        ReflectionTestUtils.setField(userPruningService, "deletionsPerSecond", 1000.0);
+    }
+
+    @Test
+    public void shouldNeverDeleteLoginUserOfLoginRealm() throws Exception {
+        when(userRepository.getUsers(LOGIN_REALM, 0, 100)).thenReturn(Arrays.asList(
+                user("admin-id", "Admin"),
+                user("removed-user-id", "removed-user")
+        ));
+
+        userPruningService.doPrune(realmImport(LOGIN_REALM, importedUser("my-user")));
+
+        verify(userRepository).delete(LOGIN_REALM, "removed-user-id");
+        verify(userRepository, never()).delete(LOGIN_REALM, "admin-id");
+    }
+
+    @Test
+    public void shouldDeleteUserNamedLikeLoginUserOfOtherRealm() throws Exception {
+        when(userRepository.getUsers("other-realm", 0, 100)).thenReturn(Collections.singletonList(user("admin-id", "admin")));
+
+        userPruningService.doPrune(realmImport("other-realm", importedUser("my-user")));
+
+        verify(userRepository).delete("other-realm", "admin-id");
+    }
+
+    @Test
+    public void shouldIgnoreImportedUsersWithoutUsername() throws Exception {
+        when(userRepository.getUsers("other-realm", 0, 100)).thenReturn(Arrays.asList(
+                user("my-user-id", "my-user"),
+                user("removed-user-id", "removed-user")
+        ));
+
+        userPruningService.doPrune(realmImport("other-realm", importedUser("my-user"), importedUser(null)));
+
+        verify(userRepository).delete("other-realm", "removed-user-id");
+        verify(userRepository, never()).delete(eq("other-realm"), eq("my-user-id"));
+        verify(userRepository, never()).delete(eq(LOGIN_REALM), anyString());
+    }
+
+    private static RealmImport realmImport(String realm, UserImport... users) {
+        RealmImport realmImport = new RealmImport();
+        realmImport.setRealm(realm);
+        realmImport.setUserImports(Arrays.asList(users));
+
+        return realmImport;
+    }
+
+    private static UserImport importedUser(String username) {
+        UserImport user = new UserImport();
+        user.setUsername(username);
+
+        return user;
+    }
+
+    private static UserRepresentation user(String id, String username) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(id);
+        user.setUsername(username);
+
+        return user;
+    }
+}
@@ -1,7 +1,21 @@
 package com.github.borisskert.keycloak.config.service.checksum;
 
+import com.google.common.hash.Hashing;
+import org.bouncycastle.util.encoders.Hex;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.googlecode.catchexception.CatchException.catchException;
 import static com.googlecode.catchexception.CatchException.caughtException;
@@ -69,4 +83,85 @@ public class ChecksumServiceTest {
         String checksum = checksumService.checksum("{\"property\":\"value\"}");
         assertThat(checksum, is(equalTo("118dd3237b94e86dc939bf28cdfbb24265101e754178c29b80f46efcaedc84aa5c2c9711a5b6438389c87f9f0ba0a2f105ec272412b69bcbeeba8eb96cfb7771")));
     }
+
+    @Test
+    public void shouldReturnSameChecksumForStream() throws Exception {
+        byte[] bytes = randomBytes(200_000);
+
+        String checksum = checksumService.checksum(new ByteArrayInputStream(bytes));
+
+        assertThat(checksum, is(equalTo(checksumService.checksum(bytes))));
+    }
+
+    @Test
+    public void shouldReturnSameChecksumForFile(@TempDir Path tempDirectory) throws Exception {
+        byte[] bytes = randomBytes(200_000);
+        Path file = Files.write(tempDirectory.resolve("import.json"), bytes);
+
+        String checksum = checksumService.checksum(file);
+
+        assertThat(checksum, is(equalTo(checksumService.checksum(bytes))));
+    }
+
+    @Test
+    public void shouldReturnChecksumForEmptyFile(@TempDir Path tempDirectory) throws Exception {
+        Path file = Files.write(tempDirectory.resolve("import.json"), new byte[0]);
+
+        String checksum = checksumService.checksum(file);
+
+        assertThat(checksum, is(equalTo(checksumService.checksum(""))));
+    }
+
+    @Test
+    public void shouldReturnMurmur3Checksum() throws Exception {
+        ChecksumService murmur3ChecksumService = new ChecksumService(ChecksumAlgorithm.MURMUR3_128);
+
+        for (int length = 0; length <= 40; length++) {
+            byte[] bytes = randomBytes(length);
+
+            assertThat(murmur3ChecksumService.checksum(bytes), is(equalTo(Hashing.murmur3_128().hashBytes(bytes).toString())));
+        }
+    }
+
+    @Test
+    public void shouldReturnSameMurmur3ChecksumForUnalignedChunks() throws Exception {
+        byte[] bytes = randomBytes(100_003);
+
+        ChecksumDigest digest = ChecksumAlgorithm.MURMUR3_128.createDigest();
+        for (int offset = 0; offset < bytes.length; offset += 7) {
+            digest.update(ByteBuffer.wrap(bytes, offset, Math.min(7, bytes.length - offset)));
+        }
+
+        assertThat(
+                Hex.toHexString(digest.digest()),
+                is(equalTo(Hashing.murmur3_128().hashBytes(bytes).toString()))
+        );
+    }
+
+    @Test
+    public void shouldReturnSameChecksumsConcurrently() throws Exception {
+        byte[] bytes = randomBytes(100_000);
+        String expectedChecksum = checksumService.checksum(bytes);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> checksums = new ArrayList<>();
+            for (int index = 0; index < 32; index++) {
+                checksums.add(executor.submit(() -> checksumService.checksum(bytes)));
+            }
+
+            for (Future<String> checksum : checksums) {
+                assertThat(checksum.get(), is(equalTo(expectedChecksum)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+
+        return bytes;
+    }
 }
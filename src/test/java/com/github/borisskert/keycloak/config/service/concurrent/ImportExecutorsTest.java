@@ -0,0 +1,109 @@
+package com.github.borisskert.keycloak.config.service.concurrent;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+
+public class ImportExecutorsTest {
+
+    private ImportExecutors importExecutors;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        importExecutors = new ImportExecutors();
+        ReflectionTestUtils.setField(importExecutors, "virtualThreads", true);
+        ReflectionTestUtils.setField(importExecutors, "maxConcurrency", 2);
+        ReflectionTestUtils.setField(importExecutors, "tracePinning", false);
+    }
+
+    @Test
+    public void shouldUseVirtualThreadsOnlyIfSupported() throws Exception {
+        assertThat(importExecutors.useVirtualThreads(), is(Runtime.version().feature() >= 21));
+    }
+
+    @Test
+    public void shouldRunTasks() throws Exception {
+        ExecutorService executor = importExecutors.newExecutor(2);
+
+        try {
+            assertThat(executor.submit(() -> "done").get(), is("done"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldLimitConcurrency() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        ExecutorService executor = new ConcurrencyLimitedExecutorService(Executors.newCachedThreadPool(), new Semaphore(2));
+
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+
+            for (int i = 0; i < 10; i++) {
+                tasks.add(executor.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(10);
+                    running.decrementAndGet();
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(maxRunning.get(), is(lessThanOrEqualTo(2)));
+    }
+
+    @Test
+    public void shouldCompleteTaskInterruptedWhileWaitingForPermit() throws Exception {
+        AtomicReference<Thread> workerThread = new AtomicReference<>();
+        Semaphore permits = new Semaphore(0);
+
+        ExecutorService executor = new ConcurrencyLimitedExecutorService(
+                Executors.newSingleThreadExecutor(task -> {
+                    Thread thread = new Thread(task);
+                    workerThread.set(thread);
+
+                    return thread;
+                }),
+                permits
+        );
+
+        try {
+            Future<String> task = executor.submit(() -> "done");
+
+            while (!permits.hasQueuedThreads()) {
+                Thread.sleep(1);
+            }
+
+            workerThread.get().interrupt();
+
+            assertThat(task.get(10, TimeUnit.SECONDS), is("done"));
+            assertThat(permits.availablePermits(), is(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
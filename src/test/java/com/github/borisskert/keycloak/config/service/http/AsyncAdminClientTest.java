@@ -0,0 +1,241 @@
+package com.github.borisskert.keycloak.config.service.http;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.borisskert.keycloak.config.KeycloakImportProperties;
+import com.github.borisskert.keycloak.config.exception.KeycloakRepositoryException;
+import com.github.borisskert.keycloak.config.service.KeycloakProvider;
+import com.github.borisskert.keycloak.config.service.trace.Tracer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+public class AsyncAdminClientTest {
+
+    @TempDir
+    Path traceDirectory;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    private RequestStatistics requestStatistics;
+    private KeycloakProvider keycloakProvider;
+    private Tracer tracer;
+    private AsyncAdminClient asyncAdminClient;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        KeycloakImportProperties properties = new KeycloakImportProperties();
+        properties.setUrl("http://localhost:" + server.getAddress().getPort());
+
+        keycloakProvider = Mockito.mock(KeycloakProvider.class, Mockito.RETURNS_DEEP_STUBS);
+        when(keycloakProvider.get().tokenManager().getAccessTokenString()).thenReturn("my-token");
+
+        requestStatistics = new RequestStatistics();
+        KeycloakNodes keycloakNodes = new KeycloakNodes(properties);
+        ReflectionTestUtils.setField(keycloakNodes, "failureThreshold", 3);
+        ReflectionTestUtils.setField(keycloakNodes, "openMillis", 30000L);
+
+        tracer = new Tracer();
+        asyncAdminClient = new AsyncAdminClient(keycloakNodes, keycloakProvider, requestStatistics, tracer, new ObjectMapper());
+        ReflectionTestUtils.setField(asyncAdminClient, "threads", 2);
+        ReflectionTestUtils.setField(asyncAdminClient, "maxInFlight", 2);
+    }
+
+    @AfterEach
+    public void cleanup() throws Exception {
+        asyncAdminClient.destroy();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void shouldGetUsers() throws Exception {
+        server.createContext("/auth/admin/realms/my realm/users", exchange -> {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            respond(exchange, 200, "[{\"username\": \"" + authorization + "\", \"unknownProperty\": true}]");
+        });
+
+        List<UserRepresentation> users = asyncAdminClient.get(
+                "/realms/" + AsyncAdminClient.encode("my realm") + "/users?first=0&max=10",
+                new TypeReference<List<UserRepresentation>>() {
+                }
+        ).get();
+
+        assertThat(users.size(), is(1));
+        assertThat(users.get(0).getUsername(), is("Bearer my-token"));
+        assertThat(requestStatistics.getCount("GET", "/auth/admin/realms/my%20realm/users"), is(1L));
+    }
+
+    @Test
+    public void shouldFailOnErrorStatus() throws Exception {
+        server.createContext("/auth/admin/realms/moped/users", exchange -> respond(exchange, 404, "{\"error\": \"not found\"}"));
+
+        try {
+            asyncAdminClient.delete("/realms/moped/users/unknown").get();
+            throw new AssertionError("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(KeycloakRepositoryException.class)));
+            assertThat(e.getCause().getMessage(), containsString("failed with HTTP status 404"));
+        }
+    }
+
+    @Test
+    public void shouldLimitRequestsInFlight() throws Exception {
+        AtomicInteger requestsInFlight = new AtomicInteger();
+        AtomicInteger maxRequestsInFlight = new AtomicInteger();
+
+        server.createContext("/auth/admin/realms/moped/users", exchange -> {
+            maxRequestsInFlight.accumulateAndGet(requestsInFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            requestsInFlight.decrementAndGet();
+
+            respond(exchange, 204, null);
+        });
+
+        List<CompletableFuture<Void>> deletions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            deletions.add(asyncAdminClient.delete("/realms/moped/users/" + i));
+        }
+
+        CompletableFuture.allOf(deletions.toArray(new CompletableFuture[0])).get();
+
+        assertThat(maxRequestsInFlight.get(), is(lessThanOrEqualTo(2)));
+        assertThat(requestStatistics.getCount(), is(10L));
+    }
+
+    @Test
+    public void shouldTakeTokenOnDispatcherThreadWhenRequestIsSent() throws Exception {
+        Set<String> tokenThreads = Collections.synchronizedSet(new HashSet<>());
+        when(keycloakProvider.get().tokenManager().getAccessTokenString()).thenAnswer(invocation -> {
+            tokenThreads.add(Thread.currentThread().getName());
+            return "my-token";
+        });
+
+        server.createContext("/auth/admin/realms/moped/users", exchange -> respond(exchange, 204, null));
+
+        List<CompletableFuture<Void>> deletions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            deletions.add(asyncAdminClient.delete("/realms/moped/users/" + i));
+        }
+
+        CompletableFuture.allOf(deletions.toArray(new CompletableFuture[0])).get();
+
+        // neither the calling thread nor the response threads, which start the queued requests
+        assertThat(tokenThreads, contains("async-admin-client-dispatcher"));
+    }
+
+    @Test
+    public void shouldReleaseSlotOfRequestWhichCannotBeSent() throws Exception {
+        when(keycloakProvider.get().tokenManager().getAccessTokenString())
+                .thenThrow(new IllegalStateException("cannot refresh token"))
+                .thenThrow(new IllegalStateException("cannot refresh token"))
+                .thenReturn("my-token");
+
+        server.createContext("/auth/admin/realms/moped/users", exchange -> respond(exchange, 204, null));
+
+        List<CompletableFuture<Void>> deletions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            deletions.add(asyncAdminClient.delete("/realms/moped/users/" + i));
+        }
+
+        int failedDeletions = 0;
+        for (CompletableFuture<Void> deletion : deletions) {
+            try {
+                deletion.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), is(instanceOf(KeycloakRepositoryException.class)));
+                failedDeletions++;
+            }
+        }
+
+        assertThat(failedDeletions, is(2));
+        assertThat(requestStatistics.getCount(), is(3L));
+    }
+
+    @Test
+    public void shouldCloseSpanOfRequestWhichCannotBeSent() throws Exception {
+        Path traceFile = traceDirectory.resolve("trace.json");
+        ReflectionTestUtils.setField(tracer, "traceFile", traceFile.toString());
+
+        HttpClient httpClient = Mockito.mock(HttpClient.class);
+        when(httpClient.sendAsync(any(), any())).thenThrow(new IllegalArgumentException("cannot send request"));
+        ReflectionTestUtils.setField(asyncAdminClient, "httpClient", httpClient);
+
+        try {
+            asyncAdminClient.delete("/realms/moped/users/unknown").get(5, TimeUnit.SECONDS);
+            throw new AssertionError("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(KeycloakRepositoryException.class)));
+        }
+
+        tracer.destroy();
+
+        JsonNode events = new ObjectMapper().readTree(Files.readAllBytes(traceFile));
+
+        assertThat(events.size(), is(1));
+        assertThat(events.path(0).path("name").asText(), is("DELETE /auth/admin/realms/moped/users/unknown"));
+        assertThat(events.path(0).path("args").path("error").asText(), containsString("cannot send request"));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+}
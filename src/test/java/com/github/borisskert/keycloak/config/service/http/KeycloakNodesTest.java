@@ -0,0 +1,100 @@
+package com.github.borisskert.keycloak.config.service.http;
+
+import com.github.borisskert.keycloak.config.KeycloakImportProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+
+class KeycloakNodesTest {
+
+    @Test
+    public void shouldUseSingleNode() throws Exception {
+        KeycloakNodes keycloakNodes = createKeycloakNodes("http://localhost:8080", null);
+
+        assertThat(keycloakNodes.isBalanced(), is(false));
+        assertThat(keycloakNodes.getUrl(), is("http://localhost:8080"));
+    }
+
+    @Test
+    public void shouldChooseNodeWithFewestOutstandingRequests() throws Exception {
+        KeycloakNodes keycloakNodes = createKeycloakNodes("http://keycloak-1:8080, http://keycloak-2:8080", null);
+
+        KeycloakNodes.Node first = keycloakNodes.acquire("POST");
+        KeycloakNodes.Node second = keycloakNodes.acquire("POST");
+
+        assertThat(keycloakNodes.isBalanced(), is(true));
+        assertThat(second.getUrl(), is(not(first.getUrl())));
+
+        keycloakNodes.release(first, true);
+
+        assertThat(keycloakNodes.acquire("PUT").getUrl(), is(first.getUrl()));
+        assertThat(first.getOutstandingRequests(), is(1));
+        assertThat(second.getOutstandingRequests(), is(1));
+    }
+
+    @Test
+    public void shouldSendReadRequestsToReadNodes() throws Exception {
+        KeycloakNodes keycloakNodes = createKeycloakNodes("http://keycloak:8080", "http://replica:8080");
+
+        assertThat(keycloakNodes.isBalanced(), is(true));
+        assertThat(keycloakNodes.acquire("GET").getUrl(), is("http://replica:8080"));
+        assertThat(keycloakNodes.acquire("DELETE").getUrl(), is("http://keycloak:8080"));
+    }
+
+    @Test
+    public void shouldEjectFailingNode() throws Exception {
+        KeycloakNodes keycloakNodes = createKeycloakNodes("http://keycloak-1:8080,http://keycloak-2:8080", null);
+
+        KeycloakNodes.Node failingNode = keycloakNodes.acquire("POST");
+        keycloakNodes.release(failingNode, false);
+        keycloakNodes.release(keycloakNodes.acquire("POST"), true);
+
+        keycloakNodes.acquire("POST");
+        keycloakNodes.release(failingNode, false);
+
+        for (int request = 0; request < 4; request++) {
+            KeycloakNodes.Node node = keycloakNodes.acquire("POST");
+            assertThat(node.getUrl(), is(not(failingNode.getUrl())));
+            keycloakNodes.release(node, true);
+        }
+    }
+
+    @Test
+    public void shouldUseNodeComingBackFirstIfAllNodesAreEjected() throws Exception {
+        KeycloakNodes keycloakNodes = createKeycloakNodes("http://keycloak-1:8080,http://keycloak-2:8080", null);
+        ReflectionTestUtils.setField(keycloakNodes, "failureThreshold", 1);
+
+        KeycloakNodes.Node firstEjected = keycloakNodes.acquire("POST");
+        keycloakNodes.release(firstEjected, false);
+        keycloakNodes.release(keycloakNodes.acquire("POST"), false);
+
+        assertThat(keycloakNodes.acquire("POST").getUrl(), is(firstEjected.getUrl()));
+    }
+
+    @Test
+    public void shouldRouteRequestToNode() throws Exception {
+        KeycloakNodes keycloakNodes = createKeycloakNodes("http://keycloak-1:8080/auth,https://keycloak-2", null);
+
+        KeycloakNodes.Node node = keycloakNodes.acquire("POST");
+        URI routedUri = keycloakNodes.route(URI.create("http://keycloak-1:8080/auth/admin/realms/my%20realm/users?first=0&max=10"), node);
+
+        assertThat(routedUri.toString(), is(node.getUrl() + "/auth/admin/realms/my%20realm/users?first=0&max=10"));
+    }
+
+    private KeycloakNodes createKeycloakNodes(String url, String readUrl) {
+        KeycloakImportProperties properties = new KeycloakImportProperties();
+        properties.setUrl(url);
+        properties.setReadUrl(readUrl);
+
+        KeycloakNodes keycloakNodes = new KeycloakNodes(properties);
+        ReflectionTestUtils.setField(keycloakNodes, "failureThreshold", 2);
+        ReflectionTestUtils.setField(keycloakNodes, "openMillis", 30000L);
+
+        return keycloakNodes;
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.borisskert.keycloak.config.service.http;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientResponseContext;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RequestCountingFilterTest {
+
+    private RequestStatistics requestStatistics;
+    private RequestCountingFilter requestCountingFilter;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        requestStatistics = new RequestStatistics();
+        requestCountingFilter = new RequestCountingFilter(requestStatistics);
+    }
+
+    @Test
+    public void shouldCountBytesOfResponseWithoutContentLength() throws Exception {
+        byte[] body = "{\"realm\": \"moped\"}".getBytes(StandardCharsets.UTF_8);
+
+        ClientResponseContext responseContext = Mockito.mock(ClientResponseContext.class);
+        when(responseContext.getLength()).thenReturn(-1);
+        when(responseContext.getEntityStream()).thenReturn(new ByteArrayInputStream(body));
+
+        requestCountingFilter.filter(Mockito.mock(ClientRequestContext.class), responseContext);
+
+        ArgumentCaptor<InputStream> entityStream = ArgumentCaptor.forClass(InputStream.class);
+        verify(responseContext).setEntityStream(entityStream.capture());
+
+        try (InputStream stream = entityStream.getValue()) {
+            assertThat(stream.read(), is((int) '{'));
+            assertThat(stream.read(new byte[4], 0, 4), is(4));
+            assertThat(stream.read(new byte[64]), is(body.length - 5));
+            assertThat(stream.read(new byte[64]), is(-1));
+        }
+
+        assertThat(requestStatistics.getResponseBytes(), is((long) body.length));
+    }
+
+    @Test
+    public void shouldIgnoreResponseWithoutEntity() throws Exception {
+        ClientResponseContext responseContext = Mockito.mock(ClientResponseContext.class);
+
+        requestCountingFilter.filter(Mockito.mock(ClientRequestContext.class), responseContext);
+
+        verify(responseContext, never()).setEntityStream(Mockito.any());
+        assertThat(requestStatistics.getResponseBytes(), is(0L));
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.borisskert.keycloak.config.service.http;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+
+public class RequestStatisticsTest {
+
+    private RequestStatistics requestStatistics;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        requestStatistics = new RequestStatistics();
+    }
+
+    @Test
+    public void shouldCountRequestsPerMethodAndEndpoint() throws Exception {
+        requestStatistics.record("GET", "/auth/admin/realms/moped");
+        requestStatistics.record("GET", "/auth/admin/realms/moped");
+        requestStatistics.record("PUT", "/auth/admin/realms/moped");
+
+        assertThat(requestStatistics.getCount(), is(3L));
+        assertThat(requestStatistics.getCount("GET", "/auth/admin/realms/moped"), is(2L));
+        assertThat(requestStatistics.getCount("PUT", "/auth/admin/realms/moped"), is(1L));
+        assertThat(requestStatistics.getCount("DELETE", "/auth/admin/realms/moped"), is(0L));
+    }
+
+    @Test
+    public void shouldCountRequestsForDifferentIdsAsOneEndpoint() throws Exception {
+        requestStatistics.record("GET", "/auth/admin/realms/moped/users/0b4f4a4e-6f5e-4d8f-9a4c-6b7c2d4e1f00");
+        requestStatistics.record("GET", "/auth/admin/realms/moped/users/1D2C3B4A-5E6F-4A8B-9C0D-1E2F3A4B5C6D/groups");
+        requestStatistics.record("GET", "/auth/admin/realms/moped/users/2a2b2c2d-2e2f-4a2b-8c2d-2e2f2a2b2c2d/groups");
+
+        assertThat(new ArrayList<>(requestStatistics.getCounts().keySet()), contains(
+                "GET /auth/admin/realms/moped/users/{id}",
+                "GET /auth/admin/realms/moped/users/{id}/groups"
+        ));
+        assertThat(requestStatistics.getCount("GET", "/auth/admin/realms/moped/users/{id}/groups"), is(2L));
+    }
+
+    @Test
+    public void shouldReset() throws Exception {
+        requestStatistics.record("GET", "/auth/admin/realms/moped");
+
+        requestStatistics.reset();
+
+        assertThat(requestStatistics.getCount(), is(0L));
+        assertThat(requestStatistics.getCounts().isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.borisskert.keycloak.config.service.journal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class RealmJournalTest {
+
+    @TempDir
+    Path tempDirectory;
+
+    private Path journalFile;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        journalFile = tempDirectory.resolve("realm.journal");
+    }
+
+    @Test
+    public void shouldNotHaveCompletedEntriesInNewJournal() throws Exception {
+        RealmJournal journal = RealmJournal.open(journalFile, "checksum");
+
+        assertThat(journal.isCompleted("users", "my-user"), is(false));
+
+        journal.close();
+    }
+
+    @Test
+    public void shouldHaveCompletedEntry() throws Exception {
+        RealmJournal journal = RealmJournal.open(journalFile, "checksum");
+
+        journal.complete("users", "my-user");
+
+        assertThat(journal.isCompleted("users", "my-user"), is(true));
+        assertThat(journal.isCompleted("groups", "my-user"), is(false));
+
+        journal.close();
+    }
+
+    @Test
+    public void shouldResumeJournalWithSameChecksum() throws Exception {
+        RealmJournal journal = RealmJournal.open(journalFile, "checksum");
+        journal.complete("users", "my-user");
+        journal.complete("users", "my\tother\nuser");
+        journal.close();
+
+        RealmJournal resumedJournal = RealmJournal.open(journalFile, "checksum");
+
+        assertThat(resumedJournal.isCompleted("users", "my-user"), is(true));
+        assertThat(resumedJournal.isCompleted("users", "my\tother\nuser"), is(true));
+        assertThat(resumedJournal.isCompleted("users", "my"), is(false));
+
+        resumedJournal.close();
+    }
+
+    @Test
+    public void shouldStartFromScratchWithOtherChecksum() throws Exception {
+        RealmJournal journal = RealmJournal.open(journalFile, "checksum");
+        journal.complete("users", "my-user");
+        journal.close();
+
+        RealmJournal otherJournal = RealmJournal.open(journalFile, "other checksum");
+
+        assertThat(otherJournal.isCompleted("users", "my-user"), is(false));
+
+        otherJournal.close();
+    }
+
+    @Test
+    public void shouldIgnoreIncompleteLastEntry() throws Exception {
+        RealmJournal journal = RealmJournal.open(journalFile, "checksum");
+        journal.complete("users", "my-user");
+        journal.close();
+
+        Files.write(journalFile, "users\tincomplete-us".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        RealmJournal resumedJournal = RealmJournal.open(journalFile, "checksum");
+        resumedJournal.complete("users", "other-user");
+        resumedJournal.close();
+
+        RealmJournal reopenedJournal = RealmJournal.open(journalFile, "checksum");
+
+        assertThat(reopenedJournal.isCompleted("users", "my-user"), is(true));
+        assertThat(reopenedJournal.isCompleted("users", "other-user"), is(true));
+        assertThat(reopenedJournal.isCompleted("users", "incomplete-us"), is(false));
+
+        reopenedJournal.close();
+    }
+
+    @Test
+    public void shouldDeleteJournalFile() throws Exception {
+        RealmJournal journal = RealmJournal.open(journalFile, "checksum");
+        journal.complete("users", "my-user");
+
+        journal.delete();
+
+        assertThat(Files.exists(journalFile), is(false));
+    }
+
+    @Test
+    public void shouldNotCompleteAnythingInDisabledJournal() throws Exception {
+        RealmJournal journal = RealmJournal.disabled();
+
+        journal.complete("users", "my-user");
+
+        assertThat(journal.isCompleted("users", "my-user"), is(false));
+    }
+}
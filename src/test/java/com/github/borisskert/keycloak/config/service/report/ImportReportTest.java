@@ -0,0 +1,149 @@
+package com.github.borisskert.keycloak.config.service.report;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.borisskert.keycloak.config.service.http.RequestStatistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ImportReportTest {
+
+    @TempDir
+    Path reportDirectory;
+
+    private Path reportFile;
+
+    private RequestStatistics requestStatistics;
+
+    private ImportReport importReport;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        reportFile = reportDirectory.resolve("report.json");
+        requestStatistics = new RequestStatistics();
+        importReport = new ImportReport(requestStatistics);
+
+        ReflectionTestUtils.setField(importReport, "reportFile", reportFile.toString());
+    }
+
+    @Test
+    public void shouldReportRealmsAndSections() throws Exception {
+        requestStatistics.record("GET", "/auth/admin/realms/before-run");
+
+        importReport.startRun();
+        importReport.setLoadTimeMillis(42);
+
+        try (RealmReport realmReport = importReport.startRealm("moped")) {
+            realmReport.setAction(RealmReport.ACTION_UPDATED);
+
+            try (SectionReport ignored = importReport.startSection("clients")) {
+                requestStatistics.record("GET", "/auth/admin/realms/moped/clients");
+                requestStatistics.recordResponseBytes(100);
+
+                importReport.created();
+                importReport.updated();
+                importReport.unchanged();
+                importReport.unchanged();
+            }
+
+            try (SectionReport ignored = importReport.startSection("prune users")) {
+                importReport.deleted();
+            }
+        }
+
+        try (RealmReport realmReport = importReport.startRealm("other")) {
+            realmReport.setAction(RealmReport.ACTION_SKIPPED);
+        }
+
+        importReport.finishRun(null);
+
+        JsonNode report = new ObjectMapper().readTree(Files.readAllBytes(reportFile));
+
+        assertThat(report.path("successful").asBoolean(), is(true));
+        assertThat(report.path("loadTimeMillis").asLong(), is(42L));
+        assertThat(report.path("requests").asLong(), is(1L));
+        assertThat(report.path("responseBytes").asLong(), is(100L));
+
+        JsonNode moped = report.path("realms").path(0);
+        assertThat(moped.path("realm").asText(), is("moped"));
+        assertThat(moped.path("action").asText(), is("updated"));
+        assertThat(moped.path("checksumUnchanged").asBoolean(), is(false));
+
+        JsonNode clients = moped.path("sections").path(0);
+        assertThat(clients.path("name").asText(), is("clients"));
+        assertThat(clients.path("created").asLong(), is(1L));
+        assertThat(clients.path("updated").asLong(), is(1L));
+        assertThat(clients.path("unchanged").asLong(), is(2L));
+        assertThat(clients.path("deleted").asLong(), is(0L));
+        assertThat(clients.path("requests").asLong(), is(1L));
+        assertThat(clients.path("responseBytes").asLong(), is(100L));
+
+        assertThat(moped.path("sections").path(1).path("deleted").asLong(), is(1L));
+
+        JsonNode other = report.path("realms").path(1);
+        assertThat(other.path("checksumUnchanged").asBoolean(), is(true));
+        assertThat(other.path("sections").size(), is(0));
+    }
+
+    @Test
+    public void shouldCountEntitiesOfOtherThreadsIntoPassedSection() throws Exception {
+        importReport.startRun();
+
+        try (RealmReport ignored = importReport.startRealm("moped")) {
+            try (SectionReport ignoredSection = importReport.startSection("users")) {
+                SectionReport section = importReport.currentSection();
+
+                Thread worker = new Thread(() -> {
+                    section.created();
+                    section.updated();
+
+                    // the worker thread has no current section of its own
+                    importReport.created();
+                });
+                worker.start();
+                worker.join();
+            }
+
+            assertThat(importReport.currentSection(), is(SectionReport.NOOP));
+        }
+
+        importReport.finishRun(null);
+
+        JsonNode users = new ObjectMapper().readTree(Files.readAllBytes(reportFile)).path("realms").path(0).path("sections").path(0);
+
+        assertThat(users.path("name").asText(), is("users"));
+        assertThat(users.path("created").asLong(), is(1L));
+        assertThat(users.path("updated").asLong(), is(1L));
+    }
+
+    @Test
+    public void shouldReportFailedRun() throws Exception {
+        importReport.startRun();
+        importReport.finishRun(new IllegalStateException("my error"));
+
+        JsonNode report = new ObjectMapper().readTree(Files.readAllBytes(reportFile));
+
+        assertThat(report.path("successful").asBoolean(), is(false));
+        assertThat(report.path("error").asText(), is("my error"));
+    }
+
+    @Test
+    public void shouldNotReportRealmsOutsideOfRun() throws Exception {
+        try (RealmReport ignored = importReport.startRealm("moped");
+             SectionReport ignoredSection = importReport.startSection("users")) {
+            importReport.created();
+        }
+
+        importReport.finishRun(null);
+
+        assertThat(Files.exists(reportFile), is(false));
+    }
+}
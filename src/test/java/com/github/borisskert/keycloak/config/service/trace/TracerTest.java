@@ -0,0 +1,108 @@
+package com.github.borisskert.keycloak.config.service.trace;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TracerTest {
+
+    @TempDir
+    Path traceDirectory;
+
+    private Path traceFile;
+
+    private Tracer tracer;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        traceFile = traceDirectory.resolve("trace.json");
+
+        tracer = new Tracer();
+        ReflectionTestUtils.setField(tracer, "traceFile", traceFile.toString());
+    }
+
+    @Test
+    public void shouldWriteCompleteEventsBeforeShutdown() throws Exception {
+        tracer.startSpan("first").close();
+        tracer.startSpan("second").setAttribute("realm", "moped").close();
+
+        // no shutdown, like after a crash: the missing closing bracket is accepted by trace viewers
+        String trace = new String(Files.readAllBytes(traceFile), StandardCharsets.UTF_8);
+        JsonNode events = new ObjectMapper().readTree(trace + "\n]");
+
+        assertThat(events.size(), is(2));
+        assertThat(events.get(0).get("name").asText(), is("first"));
+        assertThat(events.get(1).get("args").get("realm").asText(), is("moped"));
+
+        tracer.destroy();
+    }
+
+    @Test
+    public void shouldWriteNestedSpansAsChromeTraceEvents() throws Exception {
+        try (Span realm = tracer.startSpan("import realm").setAttribute("realm", "moped")) {
+            try (Span user = tracer.startSpan("user").setAttribute("user", "myuser")) {
+                tracer.startDetachedSpan("GET /auth/admin/realms/moped/users").close();
+            }
+
+            tracer.startDetachedSpan("PUT /auth/admin/realms/moped").close();
+        }
+
+        tracer.destroy();
+
+        JsonNode events = new ObjectMapper().readTree(traceFile.toFile());
+
+        assertThat(events.size(), is(4));
+        assertThat(events.get(0).get("name").asText(), is("GET /auth/admin/realms/moped/users"));
+        assertThat(events.get(0).get("ph").asText(), is("X"));
+        assertThat(events.get(0).get("args").get("parent.id"), is(events.get(1).get("args").get("span.id")));
+        assertThat(events.get(1).get("name").asText(), is("user"));
+        assertThat(events.get(1).get("args").get("user").asText(), is("myuser"));
+        assertThat(events.get(1).get("args").get("parent.id"), is(events.get(3).get("args").get("span.id")));
+        assertThat(events.get(2).get("args").get("parent.id"), is(events.get(3).get("args").get("span.id")));
+        assertThat(events.get(3).get("name").asText(), is("import realm"));
+        assertThat(events.get(3).get("args").has("parent.id"), is(false));
+    }
+
+    @Test
+    public void shouldPassParentToOtherThread() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try (Span phase = tracer.startSpan("clients")) {
+            Span parent = tracer.currentSpan();
+
+            executor.submit(() -> tracer.startSpan("client", parent).close()).get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        tracer.destroy();
+
+        JsonNode events = new ObjectMapper().readTree(traceFile.toFile());
+
+        assertThat(events.get(0).get("name").asText(), is("client"));
+        assertThat(events.get(0).get("args").get("parent.id"), is(events.get(1).get("args").get("span.id")));
+    }
+
+    @Test
+    public void shouldNotWriteAnythingIfDisabled() throws Exception {
+        ReflectionTestUtils.setField(tracer, "traceFile", null);
+
+        tracer.startSpan("import realm").close();
+        tracer.destroy();
+
+        assertThat(tracer.currentSpan(), is(Span.NOOP));
+        assertThat(Files.exists(traceFile), is(false));
+    }
+}
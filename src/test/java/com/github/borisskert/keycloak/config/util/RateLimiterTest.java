@@ -0,0 +1,48 @@
+package com.github.borisskert.keycloak.config.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+
+class RateLimiterTest {
+
+    @Test
+    public void shouldThrowOnNonPositiveRate() throws Exception {
+        IllegalArgumentException caughtException = null;
+
+        try {
+            new RateLimiter(0);
+        } catch (IllegalArgumentException e) {
+            caughtException = e;
+        }
+
+        assertThat(caughtException, instanceOf(IllegalArgumentException.class));
+    }
+
+    @Test
+    public void shouldPermitFirstCallImmediately() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(1);
+
+        long startTime = System.nanoTime();
+        rateLimiter.acquire();
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), lessThan(500L));
+    }
+
+    @Test
+    public void shouldSpreadCallsOverTime() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(50);
+
+        long startTime = System.nanoTime();
+        for (int index = 0; index < 11; index++) {
+            rateLimiter.acquire();
+        }
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), greaterThanOrEqualTo(190L));
+    }
+}
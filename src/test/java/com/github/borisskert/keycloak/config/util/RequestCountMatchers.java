@@ -0,0 +1,61 @@
+package com.github.borisskert.keycloak.config.util;
+
+import com.github.borisskert.keycloak.config.service.http.RequestStatistics;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.TypeSafeMatcher;
+
+/**
+ * Matchers to state request budgets within tests, like
+ * `assertThat(requestStatistics, hasRequestCountAtMost(3))`.
+ */
+public final class RequestCountMatchers {
+
+    private RequestCountMatchers() {
+    }
+
+    public static Matcher<RequestStatistics> hasRequestCountAtMost(long maximum) {
+        return new TypeSafeMatcher<RequestStatistics>() {
+            @Override
+            protected boolean matchesSafely(RequestStatistics requestStatistics) {
+                return requestStatistics.getCount() <= maximum;
+            }
+
+            @Override
+            public void describeTo(Description description) {
+                description.appendText("at most ").appendValue(maximum).appendText(" requests");
+            }
+
+            @Override
+            protected void describeMismatchSafely(RequestStatistics requestStatistics, Description mismatchDescription) {
+                describeCounts(requestStatistics, mismatchDescription);
+            }
+        };
+    }
+
+    public static Matcher<RequestStatistics> hasRequestCountAtMost(String method, String endpoint, long maximum) {
+        return new TypeSafeMatcher<RequestStatistics>() {
+            @Override
+            protected boolean matchesSafely(RequestStatistics requestStatistics) {
+                return requestStatistics.getCount(method, endpoint) <= maximum;
+            }
+
+            @Override
+            public void describeTo(Description description) {
+                description.appendText("at most ").appendValue(maximum)
+                        .appendText(" requests ").appendText(method).appendText(" ").appendText(endpoint);
+            }
+
+            @Override
+            protected void describeMismatchSafely(RequestStatistics requestStatistics, Description mismatchDescription) {
+                describeCounts(requestStatistics, mismatchDescription);
+            }
+        };
+    }
+
+    private static void describeCounts(RequestStatistics requestStatistics, Description description) {
+        description.appendText("was ").appendValue(requestStatistics.getCount()).appendText(" requests:");
+        requestStatistics.getCounts()
+                .forEach((endpoint, count) -> description.appendText("\n  ").appendText(endpoint).appendText(": ").appendValue(count));
+    }
+}
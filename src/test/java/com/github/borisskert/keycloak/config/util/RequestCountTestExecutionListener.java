@@ -0,0 +1,68 @@
+package com.github.borisskert.keycloak.config.util;
+
+import com.github.borisskert.keycloak.config.service.http.RequestStatistics;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resets the request statistics before every test method and writes the counted requests of the test method into
+ * `target/request-counts/<test class>/<test method>.txt`, so changes of the request volume are visible in reviews.
+ */
+public class RequestCountTestExecutionListener extends AbstractTestExecutionListener {
+
+    private static final Path REQUEST_COUNTS_DIRECTORY = Paths.get("target", "request-counts");
+
+    @Override
+    public void beforeTestMethod(TestContext testContext) {
+        RequestStatistics requestStatistics = getRequestStatistics(testContext);
+
+        if (requestStatistics != null) {
+            requestStatistics.reset();
+        }
+    }
+
+    @Override
+    public void afterTestMethod(TestContext testContext) {
+        RequestStatistics requestStatistics = getRequestStatistics(testContext);
+
+        if (requestStatistics != null) {
+            dump(testContext, requestStatistics);
+        }
+    }
+
+    private static RequestStatistics getRequestStatistics(TestContext testContext) {
+        ApplicationContext applicationContext = testContext.getApplicationContext();
+        return applicationContext.getBeanProvider(RequestStatistics.class).getIfAvailable();
+    }
+
+    private static void dump(TestContext testContext, RequestStatistics requestStatistics) {
+        List<String> lines = new ArrayList<>();
+        lines.add("total: " + requestStatistics.getCount());
+
+        for (Map.Entry<String, Long> count : requestStatistics.getCounts().entrySet()) {
+            lines.add(count.getKey() + ": " + count.getValue());
+        }
+
+        Path file = REQUEST_COUNTS_DIRECTORY
+                .resolve(testContext.getTestClass().getSimpleName())
+                .resolve(testContext.getTestMethod().getName() + ".txt");
+
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.borisskert.keycloak.config.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+
+class StringPoolTest {
+
+    private StringPool stringPool;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        stringPool = new StringPool();
+    }
+
+    @Test
+    public void shouldReturnFirstInstanceOfEqualStrings() throws Exception {
+        String first = new String("my_role");
+        String second = new String("my_role");
+
+        assertThat(stringPool.intern(first), is(sameInstance(first)));
+        assertThat(stringPool.intern(second), is(sameInstance(first)));
+        assertThat(stringPool.size(), is(1));
+    }
+
+    @Test
+    public void shouldInternListValues() throws Exception {
+        String role = new String("my_role");
+        stringPool.intern(role);
+
+        List<String> pooledRoles = stringPool.intern(Arrays.asList(new String("my_role"), "other_role"));
+
+        assertThat(pooledRoles, contains("my_role", "other_role"));
+        assertThat(pooledRoles.get(0), is(sameInstance(role)));
+    }
+
+    @Test
+    public void shouldInternMapKeysAndValuesInOrder() throws Exception {
+        String clientId = new String("my-client");
+        String role = new String("my_role");
+        stringPool.intern(clientId);
+        stringPool.intern(role);
+
+        Map<String, List<String>> clientRoles = new LinkedHashMap<>();
+        clientRoles.put(new String("my-client"), Collections.singletonList(new String("my_role")));
+        clientRoles.put("other-client", Collections.emptyList());
+
+        Map<String, List<String>> pooledClientRoles = stringPool.intern(clientRoles);
+
+        assertThat(new ArrayList<>(pooledClientRoles.keySet()), contains("my-client", "other-client"));
+        assertThat(pooledClientRoles.keySet().iterator().next(), is(sameInstance(clientId)));
+        assertThat(pooledClientRoles.get("my-client").get(0), is(sameInstance(role)));
+    }
+
+    @Test
+    public void shouldKeepNullValues() throws Exception {
+        assertThat(stringPool.intern((String) null), is(nullValue()));
+        assertThat(stringPool.intern((List<String>) null), is(nullValue()));
+        assertThat(stringPool.intern((Map<String, List<String>>) null), is(nullValue()));
+    }
+}